@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.util.NoOpEntityResolver;
+import org.finos.symphony.messageml.messagemlutils.util.NullErrorHandler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Pool of {@link DocumentBuilder}s configured for parsing messages, shared by all threads.
+ * <p>
+ * Builders are costly to create but not thread-safe: a builder is taken from the pool for each parse and given back
+ * afterwards. The pool never blocks, a new builder is created when none is idle, and keeps a bounded number of idle
+ * builders, so that the number of builders depends on the number of concurrent parses and not on the number of threads,
+ * which may be virtual threads.
+ */
+class DocumentBuilderPool {
+  static final int DEFAULT_MAX_IDLE = 2 * Runtime.getRuntime().availableProcessors();
+
+  private final DocumentBuilderFactory factory;
+  private final int maxIdle;
+  private final Queue<DocumentBuilder> idle = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger idleCount = new AtomicInteger();
+
+  DocumentBuilderPool(int maxIdle) {
+    try {
+      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+      // XXE prevention as per https://www.owasp.org/index.php/XML_External_Entity_(XXE)_Prevention_Cheat_Sheet
+      dbFactory.setXIncludeAware(false);
+      dbFactory.setExpandEntityReferences(false);
+      dbFactory.setIgnoringElementContentWhitespace(true);
+      dbFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+      dbFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      this.factory = dbFactory;
+    } catch (ParserConfigurationException e) {
+      throw new RuntimeException(e); //NOSONAR
+    }
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * Take an idle builder from the pool, or create one if none is idle.
+   */
+  DocumentBuilder acquire() throws ParserConfigurationException {
+    DocumentBuilder builder = idle.poll();
+    if (builder != null) {
+      idleCount.decrementAndGet();
+      return builder;
+    }
+
+    // factories are not guaranteed to be thread-safe, builders are only created when the pool is exhausted
+    synchronized (factory) {
+      builder = factory.newDocumentBuilder();
+    }
+    configure(builder);
+    return builder;
+  }
+
+  /**
+   * Give a builder back to the pool once it is done parsing, whether the parse succeeded or not.
+   */
+  void release(DocumentBuilder builder) {
+    if (idleCount.incrementAndGet() > maxIdle) {
+      idleCount.decrementAndGet();
+      return;
+    }
+    builder.reset();
+    configure(builder);
+    idle.offer(builder);
+  }
+
+  int getIdleCount() {
+    return idleCount.get();
+  }
+
+  private static void configure(DocumentBuilder builder) {
+    builder.setErrorHandler(new NullErrorHandler()); // default handler prints to stderr
+    builder.setEntityResolver(new NoOpEntityResolver());
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+
+/**
+ * Creates the MessageML element corresponding to a DOM element of a parsed message, registered by tag in an
+ * {@link ElementFactoryRegistry}.
+ */
+@FunctionalInterface
+public interface ElementFactory {
+
+  /**
+   * Create the element, without its attributes nor children which are built afterwards from the DOM element.
+   * @param parser the parser of the message, giving the format of the message
+   * @param element the DOM element
+   * @param parent the parent of the element to create
+   * @return the element, or null if the DOM element does not correspond to an element of the MessageML document tree
+   * @throws InvalidInputException thrown if the DOM element is not allowed
+   */
+  Element create(MessageMLParser parser, org.w3c.dom.Element element, Element parent) throws InvalidInputException;
+}
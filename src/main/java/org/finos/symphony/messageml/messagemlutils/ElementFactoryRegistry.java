@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Immutable registry of the {@link ElementFactory}s used to create the elements of parsed messages, by tag.
+ * <p>
+ * The default registry holds the factories of all the MessageML and PresentationML tags. Custom element types are
+ * registered with {@link #with(String, ElementFactory)}, which returns a new registry to be set on a
+ * {@link MessageMLContext}. A registry can be shared by any number of parsers and threads.
+ * <p>
+ * Factories of custom tags usually create subclasses of
+ * {@link org.finos.symphony.messageml.messagemlutils.elements.CustomElement}.
+ * <p>
+ * A registry returned by {@link #withCreationCounts()} also counts the elements created for each of its tags, across
+ * all the parsers using it; the default registry does not count.
+ */
+public final class ElementFactoryRegistry {
+  private final Map<String, Registration> registrations;
+  private final boolean counting;
+
+  ElementFactoryRegistry(Map<String, ElementFactory> factories, boolean counting) {
+    Map<String, Registration> map = new HashMap<>();
+    factories.forEach((tag, factory) -> map.put(tag, new Registration(factory, counting)));
+    this.registrations = Collections.unmodifiableMap(map);
+    this.counting = counting;
+  }
+
+  /**
+   * Get the registry of the built-in MessageML and PresentationML elements.
+   */
+  public static ElementFactoryRegistry getDefault() {
+    return MessageMLParser.DEFAULT_ELEMENT_FACTORIES;
+  }
+
+  /**
+   * Return a new registry with the factories of this one and the given factory for the tag, replacing any factory
+   * already registered for it. Creation counts, if kept, start from zero in the new registry.
+   */
+  public ElementFactoryRegistry with(String tag, ElementFactory factory) {
+    if (tag == null || factory == null) {
+      throw new IllegalArgumentException("The tag and factory cannot be null");
+    }
+    Map<String, ElementFactory> factories = getFactories();
+    factories.put(tag, factory);
+    return new ElementFactoryRegistry(factories, counting);
+  }
+
+  /**
+   * Return a new registry with the factories of this one, counting the elements it creates for each tag from zero.
+   * Use a registry per parser, or per group of parsers, whose counts are wanted.
+   */
+  public ElementFactoryRegistry withCreationCounts() {
+    return new ElementFactoryRegistry(getFactories(), true);
+  }
+
+  public boolean isCountingCreations() {
+    return counting;
+  }
+
+  /**
+   * Get the factory registered for the tag, or null if the tag is not allowed.
+   */
+  public ElementFactory get(String tag) {
+    Registration registration = registrations.get(tag);
+    return registration == null ? null : registration.factory;
+  }
+
+  public Set<String> getTags() {
+    return registrations.keySet();
+  }
+
+  /**
+   * Get the number of elements created by the registry for each tag, sorted by tag, or an empty map if the registry
+   * does not count them.
+   */
+  public Map<String, Long> getCreationCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    if (counting) {
+      registrations.forEach((tag, registration) -> counts.put(tag, registration.count.sum()));
+    }
+    return counts;
+  }
+
+  /**
+   * Create the element of the MessageML document tree corresponding to the DOM element with the factory registered
+   * for its tag.
+   * @throws InvalidInputException thrown if no factory is registered for the tag of the DOM element
+   */
+  Element create(MessageMLParser parser, org.w3c.dom.Element element, Element parent) throws InvalidInputException {
+    String tag = element.getNodeName();
+    Registration registration = registrations.get(tag);
+    if (registration == null) {
+      throw new InvalidInputException("Invalid MessageML content at element \"" + tag + "\"");
+    }
+
+    if (registration.count != null) {
+      registration.count.increment();
+    }
+    return registration.factory.create(parser, element, parent);
+  }
+
+  private Map<String, ElementFactory> getFactories() {
+    Map<String, ElementFactory> factories = new HashMap<>();
+    registrations.forEach((tag, registration) -> factories.put(tag, registration.factory));
+    return factories;
+  }
+
+  private static final class Registration {
+    private final ElementFactory factory;
+    private final LongAdder count;
+
+    private Registration(ElementFactory factory, boolean counting) {
+      this.factory = factory;
+      this.count = counting ? new LongAdder() : null;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the values of an EntityJSON payload by field name, built in a single traversal of the payload.
+ * <p>
+ * Lookups give the same results as {@link JsonNode#findValues(String)} and {@link JsonNode#findPath(String)} on the
+ * whole payload, without scanning it for each entity of the message: a value is indexed under its field name unless
+ * it is nested in a value of a field with the same name, and values are kept in document order. The index does not
+ * follow changes made to the payload after it is built.
+ */
+final class EntityJsonIndex {
+  static final EntityJsonIndex EMPTY = new EntityJsonIndex(MissingNode.getInstance());
+
+  private final JsonNode entityJson;
+  private final Map<String, List<JsonNode>> valuesByField = new HashMap<>();
+
+  EntityJsonIndex(JsonNode entityJson) {
+    this.entityJson = entityJson;
+    index(entityJson, new HashMap<>());
+  }
+
+  /**
+   * Get the values of the fields with the given name, in document order.
+   */
+  List<JsonNode> findValues(String fieldName) {
+    List<JsonNode> values = valuesByField.get(fieldName);
+    return values == null ? Collections.emptyList() : values;
+  }
+
+  /**
+   * Get the value of a field with the given name, or a missing node.
+   */
+  JsonNode findPath(String fieldName) {
+    List<JsonNode> values = valuesByField.get(fieldName);
+    if (values == null) {
+      return MissingNode.getInstance();
+    } else if (values.size() == 1) {
+      return values.get(0);
+    }
+    // the value picked among several ones is left to the payload, as it does not follow the document order
+    return entityJson.findPath(fieldName);
+  }
+
+  /**
+   * Index the fields of the node and its descendants, given the number of enclosing fields with each name.
+   */
+  private void index(JsonNode node, Map<String, Integer> enclosingFields) {
+    if (node.isObject()) {
+      Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        String name = field.getKey();
+        if (!enclosingFields.containsKey(name)) {
+          valuesByField.computeIfAbsent(name, k -> new ArrayList<>(1)).add(field.getValue());
+        }
+
+        if (field.getValue().isContainerNode()) {
+          enclosingFields.merge(name, 1, Integer::sum);
+          index(field.getValue(), enclosingFields);
+          enclosingFields.computeIfPresent(name, (k, count) -> count == 1 ? null : count - 1);
+        }
+      }
+    } else if (node.isArray()) {
+      for (JsonNode element : node) {
+        index(element, enclosingFields);
+      }
+    }
+  }
+}
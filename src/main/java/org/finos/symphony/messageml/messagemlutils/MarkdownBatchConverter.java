@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Converts batches of legacy messages in Markdown and JSON entities to PresentationML, as done by
+ * {@link MessageMLContext#parseMarkdown(String, JsonNode, JsonNode)} followed by
+ * {@link MessageMLContext#getPresentationML()}, on an executor.
+ * <p>
+ * Results are handed to a sink in the order of the messages, on the calling thread. A message that cannot be
+ * converted gets a result holding the error, the rest of the batch is still converted. The number of conversions
+ * in flight is bounded, messages are pulled from the batch as results are consumed.
+ * <p>
+ * {@link MessageMLContext}s are reused from one message to the next, as done by {@link MessageMLBatchProcessor}: a
+ * context is taken from a pool by the worker converting a message, reset, and given back once the message is
+ * converted, so that at most one context is created per message in flight. The Markdown parsers are shared by all
+ * threads.
+ */
+public class MarkdownBatchConverter {
+  private final IDataProvider dataProvider;
+  private final OrderedBatchExecutor executor;
+  private final Queue<MessageMLContext> contexts = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Create a converter running on the common {@link ForkJoinPool}, with up to four conversions in flight per thread
+   * of the pool.
+   */
+  public MarkdownBatchConverter(IDataProvider dataProvider) {
+    this(dataProvider, ForkJoinPool.commonPool(), 4 * ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  /**
+   * Create a converter running on the given executor.
+   * @param maxInFlight maximum number of messages submitted to the executor and not consumed by the sink yet
+   */
+  public MarkdownBatchConverter(IDataProvider dataProvider, Executor executor, int maxInFlight) {
+    this.dataProvider = dataProvider;
+    this.executor = new OrderedBatchExecutor(executor, maxInFlight);
+  }
+
+  /**
+   * Convert the messages, returning once the result of the last one has been handed to the sink.
+   * @throws InterruptedException thrown if the calling thread is interrupted while waiting for a conversion
+   */
+  public void convert(Iterable<Message> messages, Consumer<? super Result> sink) throws InterruptedException {
+    executor.run(messages.iterator(), this::convert, sink);
+  }
+
+  /**
+   * Convert the messages, returning once the result of the last one has been handed to the sink.
+   * @throws InterruptedException thrown if the calling thread is interrupted while waiting for a conversion
+   */
+  public void convert(Stream<Message> messages, Consumer<? super Result> sink) throws InterruptedException {
+    executor.run(messages.iterator(), this::convert, sink);
+  }
+
+  private Result convert(long index, Message message) {
+    MessageMLContext context = contexts.poll();
+    if (context == null) {
+      context = new MessageMLContext(dataProvider);
+    } else {
+      context.reset();
+    }
+
+    try {
+      context.parseMarkdown(message.getMarkdown(), message.getEntities(), message.getMedia());
+      return new Result(index, message, context.getPresentationML(), context.getEntityJson(), null);
+    } catch (Exception e) {
+      return new Result(index, message, null, null, e);
+    } finally {
+      contexts.offer(context);
+    }
+  }
+
+  /**
+   * A legacy message: Markdown text, entities and media in JSON.
+   */
+  public static class Message {
+    private final String markdown;
+    private final JsonNode entities;
+    private final JsonNode media;
+
+    public Message(String markdown, JsonNode entities, JsonNode media) {
+      this.markdown = markdown;
+      this.entities = entities;
+      this.media = media;
+    }
+
+    public String getMarkdown() {
+      return markdown;
+    }
+
+    public JsonNode getEntities() {
+      return entities;
+    }
+
+    public JsonNode getMedia() {
+      return media;
+    }
+  }
+
+  /**
+   * The conversion of a message of a batch: either its PresentationML and EntityJSON or the error raised converting it.
+   */
+  public static class Result {
+    private final long index;
+    private final Message message;
+    private final String presentationML;
+    private final ObjectNode entityJson;
+    private final Exception error;
+
+    Result(long index, Message message, String presentationML, ObjectNode entityJson, Exception error) {
+      this.index = index;
+      this.message = message;
+      this.presentationML = presentationML;
+      this.entityJson = entityJson;
+      this.error = error;
+    }
+
+    /**
+     * Get the position of the message in the batch.
+     */
+    public long getIndex() {
+      return index;
+    }
+
+    public Message getMessage() {
+      return message;
+    }
+
+    public String getPresentationML() {
+      return presentationML;
+    }
+
+    public ObjectNode getEntityJson() {
+      return entityJson;
+    }
+
+    /**
+     * Get the error raised converting the message, usually an
+     * {@link org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException}, or null if the message
+     * was converted.
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    public boolean isSuccessful() {
+      return error == null;
+    }
+  }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.finos.symphony.messageml.messagemlutils.bi.BiItem;
+import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Parses batches of MessageML messages with their EntityJSON and renders the requested outputs, as done by
+ * {@link MessageMLContext#parseMessageML(String, String, String)} followed by the respective get() methods, on an
+ * executor, by default the work-stealing common {@link ForkJoinPool}.
+ * <p>
+ * Results are handed to a sink in the order of the messages, on the calling thread. A message that cannot be
+ * processed gets a result holding the error, the rest of the batch is still processed. The number of messages in
+ * flight is bounded, messages are pulled from the batch as results are consumed.
+ * <p>
+ * {@link MessageMLContext}s are reused from one message to the next: a context is taken from a pool by the worker
+ * processing a message and given back once the outputs of the message are rendered, so that at most one context is
+ * created per message in flight.
+ */
+public class MessageMLBatchProcessor {
+  private final IDataProvider dataProvider;
+  private final OrderedBatchExecutor executor;
+  private final Set<Output> outputs;
+  private final Queue<MessageMLContext> contexts = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Outputs rendered for each message.
+   */
+  public enum Output {
+    PRESENTATIONML, TEXT, MARKDOWN, ENTITY_JSON, BI
+  }
+
+  /**
+   * Create a processor running on the common {@link ForkJoinPool}, with up to four messages in flight per thread of
+   * the pool.
+   * @param outputs outputs rendered for each message
+   */
+  public MessageMLBatchProcessor(IDataProvider dataProvider, Set<Output> outputs) {
+    this(dataProvider, outputs, ForkJoinPool.commonPool(), 4 * ForkJoinPool.getCommonPoolParallelism());
+  }
+
+  /**
+   * Create a processor running on the given executor.
+   * @param outputs outputs rendered for each message
+   * @param maxInFlight maximum number of messages submitted to the executor and not consumed by the sink yet
+   */
+  public MessageMLBatchProcessor(IDataProvider dataProvider, Set<Output> outputs, Executor executor,
+      int maxInFlight) {
+    this.dataProvider = dataProvider;
+    this.outputs = outputs.isEmpty() ? EnumSet.noneOf(Output.class) : EnumSet.copyOf(outputs);
+    this.executor = new OrderedBatchExecutor(executor, maxInFlight);
+  }
+
+  /**
+   * Process the messages, returning once the result of the last one has been handed to the sink.
+   * @return the metrics of the batch
+   * @throws InterruptedException thrown if the calling thread is interrupted while waiting for a message
+   */
+  public Metrics process(Iterable<Message> messages, Consumer<? super Result> sink) throws InterruptedException {
+    return process(messages.iterator(), sink);
+  }
+
+  /**
+   * Process the messages, returning once the result of the last one has been handed to the sink.
+   * @return the metrics of the batch
+   * @throws InterruptedException thrown if the calling thread is interrupted while waiting for a message
+   */
+  public Metrics process(Stream<Message> messages, Consumer<? super Result> sink) throws InterruptedException {
+    return process(messages.iterator(), sink);
+  }
+
+  private Metrics process(Iterator<Message> messages, Consumer<? super Result> sink)
+      throws InterruptedException {
+    Metrics metrics = new Metrics();
+    long start = System.nanoTime();
+    executor.run(messages, this::process, result -> {
+      metrics.add(result);
+      sink.accept(result);
+    });
+    metrics.elapsedNanos = System.nanoTime() - start;
+    return metrics;
+  }
+
+  private Result process(long index, Message message) {
+    long start = System.nanoTime();
+    MessageMLContext context = contexts.poll();
+    if (context == null) {
+      context = new MessageMLContext(dataProvider);
+      // the trees are discarded once rendered, their storage is reused for the next message of the context
+      context.setStoragePoolEnabled(true);
+    }
+
+    Result result = new Result(index, message);
+    try {
+      context.parseMessageML(message.getMessageML(), message.getEntityJson(), message.getVersion());
+      if (outputs.contains(Output.PRESENTATIONML)) {
+        result.presentationML = context.getPresentationML();
+      }
+      if (outputs.contains(Output.TEXT)) {
+        result.text = context.getText();
+      }
+      if (outputs.contains(Output.MARKDOWN)) {
+        result.markdown = context.getMarkdown();
+      }
+      if (outputs.contains(Output.ENTITY_JSON)) {
+        result.entityJson = context.getEntityJson();
+      }
+      if (outputs.contains(Output.BI)) {
+        result.biItems = context.getBiContext().getItems();
+      }
+    } catch (Exception e) {
+      result = new Result(index, message);
+      result.error = e;
+    } finally {
+      contexts.offer(context);
+    }
+    result.latencyNanos = System.nanoTime() - start;
+    return result;
+  }
+
+  /**
+   * A MessageML message with its EntityJSON, as given to {@link MessageMLContext#parseMessageML}.
+   */
+  public static class Message {
+    private final String messageML;
+    private final String entityJson;
+    private final String version;
+
+    public Message(String messageML, String entityJson, String version) {
+      this.messageML = messageML;
+      this.entityJson = entityJson;
+      this.version = version;
+    }
+
+    public String getMessageML() {
+      return messageML;
+    }
+
+    public String getEntityJson() {
+      return entityJson;
+    }
+
+    public String getVersion() {
+      return version;
+    }
+  }
+
+  /**
+   * The processing of a message of a batch: either its requested outputs, null for the other ones, or the error
+   * raised processing it.
+   */
+  public static class Result {
+    private final long index;
+    private final Message message;
+    private String presentationML;
+    private String text;
+    private String markdown;
+    private ObjectNode entityJson;
+    private List<BiItem> biItems;
+    private Exception error;
+    private long latencyNanos;
+
+    private Result(long index, Message message) {
+      this.index = index;
+      this.message = message;
+    }
+
+    /**
+     * Get the position of the message in the batch.
+     */
+    public long getIndex() {
+      return index;
+    }
+
+    public Message getMessage() {
+      return message;
+    }
+
+    public String getPresentationML() {
+      return presentationML;
+    }
+
+    public String getText() {
+      return text;
+    }
+
+    public String getMarkdown() {
+      return markdown;
+    }
+
+    public ObjectNode getEntityJson() {
+      return entityJson;
+    }
+
+    public List<BiItem> getBiItems() {
+      return biItems;
+    }
+
+    /**
+     * Get the error raised processing the message, usually an
+     * {@link org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException}, or null if the message
+     * was processed.
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    public boolean isSuccessful() {
+      return error == null;
+    }
+
+    /**
+     * Get the time spent parsing the message and rendering its outputs, in nanoseconds.
+     */
+    public long getLatencyNanos() {
+      return latencyNanos;
+    }
+  }
+
+  /**
+   * Throughput and latency of a batch.
+   */
+  public static class Metrics {
+    private long messageCount;
+    private long errorCount;
+    private long elapsedNanos;
+    private long totalLatencyNanos;
+    private long maxLatencyNanos;
+
+    private void add(Result result) {
+      messageCount++;
+      if (!result.isSuccessful()) {
+        errorCount++;
+      }
+      totalLatencyNanos += result.getLatencyNanos();
+      maxLatencyNanos = Math.max(maxLatencyNanos, result.getLatencyNanos());
+    }
+
+    public long getMessageCount() {
+      return messageCount;
+    }
+
+    public long getErrorCount() {
+      return errorCount;
+    }
+
+    /**
+     * Get the wall-clock time spent processing the batch, results handed to the sink included, in nanoseconds.
+     */
+    public long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    /**
+     * Get the number of messages processed per second.
+     */
+    public double getThroughput() {
+      return elapsedNanos == 0 ? 0 : messageCount * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get the mean time spent processing a message, in nanoseconds.
+     */
+    public long getMeanLatencyNanos() {
+      return messageCount == 0 ? 0 : totalLatencyNanos / messageCount;
+    }
+
+    /**
+     * Get the longest time spent processing a message, in nanoseconds.
+     */
+    public long getMaxLatencyNanos() {
+      return maxLatencyNanos;
+    }
+  }
+}
@@ -16,8 +16,12 @@
 
 package org.finos.symphony.messageml.messagemlutils;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.finos.symphony.messageml.messagemlutils.bi.BiContext;
 import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
@@ -26,14 +30,18 @@ import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingExceptio
 import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownParser;
 import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownRenderer;
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+import org.finos.symphony.messageml.messagemlutils.util.PresentationMLSigner;
 import org.finos.symphony.messageml.messagemlutils.util.ShortID;
+import org.finos.symphony.messageml.messagemlutils.util.TextContent;
 import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * The main entry point for parsing string message data in MessageML or Markdown formats and associated JSON entity
@@ -46,6 +54,20 @@ import java.io.IOException;
  */
 public class MessageMLContext {
 
+  /**
+   * Representations of a parsed message, see {@link #setOutputs(Set)}.
+   */
+  public enum Output {
+    PRESENTATIONML,
+    /** The text of the PresentationML, captured while it is rendered. */
+    TEXT,
+    /** The Markdown and the message entities in the legacy JSON format. */
+    MARKDOWN,
+    ENTITY_JSON
+  }
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
   private final MessageMLParser messageMLParser;
   private final MarkdownParser markdownParser;
   private final ShortID shortID;
@@ -53,8 +75,15 @@ public class MessageMLContext {
   private MarkdownRenderer markdownRenderer;
   private MessageML messageML;
   private ObjectNode entityJson;
+  private boolean entityJsonBuilt;
   private BiContext biContext;
   private String presentationML;
+  private TextContent textContent;
+  // revision of the tree when the PresentationML was rendered
+  private int presentationMLRevision;
+  private boolean renderCacheEnabled;
+  private PresentationMLSigner presentationMLSigner;
+  private Set<Output> outputs = EnumSet.of(Output.MARKDOWN, Output.ENTITY_JSON);
 
   public MessageMLContext(IDataProvider dataProvider) {
     this.markdownParser = new MarkdownParser(dataProvider);
@@ -76,11 +105,19 @@ public class MessageMLContext {
    */
   public void parseMessageML(String message, String entityJson, String version) throws InvalidInputException, IOException,
       ProcessingException {
-    this.presentationML = null;
+    clearOutputs();
+    if (messageMLParser.isStoragePoolEnabled()) {
+      // the storage of the previous tree is reused by the parse, even if it fails
+      this.messageML = null;
+    }
     this.messageML = messageMLParser.parse(message, entityJson, version);
-    this.entityJson = messageMLParser.getEntityJson();
     this.biContext = messageMLParser.getBiContext();
-    this.markdownRenderer = new MarkdownRenderer(messageML.asMarkdown());
+    // the entities of the tree are added to the provided EntityJSON along with the other outputs, in a single traversal
+    this.entityJson = messageMLParser.getProvidedEntityJson();
+    render(outputs);
+    if (entityJsonBuilt) {
+      messageMLParser.setEntityJsonCompleted();
+    }
   }
 
   /**
@@ -90,11 +127,106 @@ public class MessageMLContext {
    * @param entities additional entity data in JSON
    */
   public void parseMarkdown(String message, JsonNode entities, JsonNode media) throws InvalidInputException {
-    this.presentationML = null;
+    clearOutputs();
     this.messageML = markdownParser.parse(message, entities, media);
-    this.entityJson = messageML.asEntityJson(this.entityJson);
     this.biContext = new BiContext();
-    this.markdownRenderer = new MarkdownRenderer(messageML.asMarkdown());
+    render(outputs);
+  }
+
+  /**
+   * Forget the message parsed last, so that the context can be reused for an unrelated message: in particular, the
+   * entities of the previous message are not carried over by {@link #parseMarkdown(String, JsonNode, JsonNode)}.
+   */
+  void reset() {
+    this.messageML = null;
+    this.entityJson = null;
+    this.biContext = null;
+    clearOutputs();
+  }
+
+  private void clearOutputs() {
+    this.presentationML = null;
+    this.textContent = null;
+    this.markdownRenderer = null;
+    this.entityJsonBuilt = false;
+  }
+
+  /**
+   * Select the representations of the message built when it is parsed, in a single traversal of its document tree.
+   * The other representations are built when they are first retrieved, and errors found while building them are then
+   * reported as {@link IllegalStateException}.
+   * @param outputs the representations to build, {@link Output#MARKDOWN} and {@link Output#ENTITY_JSON} by default
+   */
+  public void setOutputs(Set<Output> outputs) {
+    this.outputs = outputs.isEmpty() ? EnumSet.noneOf(Output.class) : EnumSet.copyOf(outputs);
+  }
+
+  public Set<Output> getOutputs() {
+    return Collections.unmodifiableSet(outputs);
+  }
+
+  /**
+   * Build the given representations of the parsed message which are not built yet, in a single traversal of its tree.
+   */
+  private void render(Set<Output> requested) throws InvalidInputException {
+    boolean renderPresentationML = requested.contains(Output.PRESENTATIONML) && !isPresentationMLRendered();
+    boolean captureText = requested.contains(Output.TEXT) && (textContent == null || !isPresentationMLRendered());
+    boolean renderMarkdown = requested.contains(Output.MARKDOWN) && markdownRenderer == null;
+    boolean buildEntityJson = requested.contains(Output.ENTITY_JSON) && !entityJsonBuilt;
+
+    ByteArrayOutputStream bout = null;
+    XmlPrintStream out = null;
+    if (renderPresentationML || captureText) {
+      // the text alone is captured without keeping the PresentationML, whose generated ids would change
+      bout = renderPresentationML || !isPresentationMLRendered() ? new ByteArrayOutputStream() : null;
+      out = new XmlPrintStream(bout != null ? bout : NullOutputStream.NULL_OUTPUT_STREAM);
+      out.setNoIndent(true);
+      out.setNoNl(true);
+      if (captureText) {
+        out.captureTextContent(1);
+      }
+    }
+    MarkdownRenderer renderer = renderMarkdown ? new MarkdownRenderer() : null;
+    if (buildEntityJson) {
+      if (entityJson == null) {
+        entityJson = new ObjectNode(JsonNodeFactory.instance);
+      }
+      // set first, for the PresentationML signer to get the EntityJSON built along with it
+      entityJsonBuilt = true;
+    }
+    if (out == null && renderer == null && !buildEntityJson) {
+      return;
+    }
+
+    messageML.render(out, this, renderer, buildEntityJson ? entityJson : null);
+
+    if (bout != null) {
+      out.close();
+      presentationML = bout.toString();
+      presentationMLRevision = messageML.getRevision();
+    }
+    if (captureText || bout != null) {
+      textContent = out.getTextContent();
+    }
+    if (renderMarkdown) {
+      markdownRenderer = renderer;
+    }
+  }
+
+  /**
+   * Build a representation of the parsed message when it is first retrieved.
+   */
+  private void renderOnRetrieval(Output output) {
+    try {
+      render(EnumSet.of(output));
+    } catch (InvalidInputException e) {
+      throw new IllegalStateException("Failed to build the " + output + " of the message: " + e.getMessage(), e);
+    }
+  }
+
+  private boolean isPresentationMLRendered() {
+    // with the render cache, the tree may have been changed since it was rendered
+    return presentationML != null && (!renderCacheEnabled || presentationMLRevision == messageML.getRevision());
   }
 
   /**
@@ -114,24 +246,10 @@ public class MessageMLContext {
    * @throws IllegalStateException thrown if the message hasn't been parsed yet
    */
   public String getPresentationML() throws IllegalStateException {
-    if (presentationML != null) {
-      return presentationML;
-    }
     if (messageML == null) {
       throwCallParseFirstException();
     }
-
-    ByteArrayOutputStream bout = new ByteArrayOutputStream();
-    XmlPrintStream out = new XmlPrintStream(bout);
-
-    out.setNoIndent(true);
-    out.setNoNl(true);
-
-    messageML.asPresentationML(out, this);
-
-    out.close();
-
-    presentationML = bout.toString();
+    renderOnRetrieval(Output.PRESENTATIONML);
     return presentationML;
   }
 
@@ -143,6 +261,7 @@ public class MessageMLContext {
       throwCallParseFirstException();
     }
 
+    renderOnRetrieval(Output.ENTITY_JSON);
     return entityJson;
   }
 
@@ -155,6 +274,7 @@ public class MessageMLContext {
       throwCallParseFirstException();
     }
 
+    renderOnRetrieval(Output.MARKDOWN);
     return markdownRenderer.getText();
   }
 
@@ -167,13 +287,33 @@ public class MessageMLContext {
       throwCallParseFirstException();
     }
 
+    renderOnRetrieval(Output.MARKDOWN);
     return markdownRenderer.getJson();
   }
 
+  /**
+   * Write message entities (tags, mentions, urls) in the legacy JSON format, as returned by {@link #getEntities()},
+   * to the output stream without building them as a JSON tree.
+   * @param out the stream to write the entities to, left open
+   * @throws IllegalStateException thrown if the message hasn't been parsed yet
+   */
+  public void writeEntities(OutputStream out) throws IOException, IllegalStateException {
+    if (messageML == null) {
+      throwCallParseFirstException();
+    }
+
+    renderOnRetrieval(Output.MARKDOWN);
+    try (JsonGenerator generator = MAPPER.getFactory().createGenerator(out)) {
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      markdownRenderer.writeJson(generator);
+    }
+  }
+
   /**
    * Retrieve a string representation of the message by getting the values of
    * its PresentationML elements.
-   * This method returns {@link Element#getTextContent()} of the top-level document tree.
+   * This method returns the text content of the top-level element of the PresentationML, as captured while it is
+   * rendered.
    * @throws IllegalStateException thrown if the message hasn't been parsed yet
    */
   public String getText() throws InvalidInputException, ProcessingException, IllegalStateException {
@@ -181,14 +321,14 @@ public class MessageMLContext {
       throwCallParseFirstException();
     }
 
-    Element doc = messageMLParser.parseDocument(getPresentationML());
-    return doc.getTextContent();
+    render(EnumSet.of(Output.TEXT));
+    return textContent.getText();
   }
 
   /**
    * Retrieve a string representation of the message by getting the values of
    * its PresentationML elements.
-   * This method returns {@link Element#getTextContent()} of each individual element of the tree,
+   * This method returns the text content of each child node of the top-level element of the PresentationML,
    * separated by a single space
    * @param preserveWhitespace if false, trims the leading and trailing whitespce of each element
    * @throws IllegalStateException thrown if the message hasn't been parsed yet
@@ -200,13 +340,11 @@ public class MessageMLContext {
 
     StringBuilder sb = new StringBuilder();
 
-    Element doc = messageMLParser.parseDocument(getPresentationML());
-
-    NodeList nodes = doc.getChildNodes();
+    render(EnumSet.of(Output.TEXT));
+    List<String> nodes = textContent.getNodeTexts();
 
-    for (int i = 0; i < nodes.getLength(); i++) {
-      Node node = nodes.item(i);
-      String text = (preserveWhitespace) ? node.getTextContent() : node.getTextContent().trim();
+    for (int i = 0; i < nodes.size(); i++) {
+      String text = (preserveWhitespace) ? nodes.get(i) : nodes.get(i).trim();
 
       // Prepend space unless we're at the first node or we trim whitespace and current text is blank
       if (i > 0 && StringUtils.isNotEmpty(text)) {
@@ -219,6 +357,109 @@ public class MessageMLContext {
     return sb.toString();
   }
 
+  /**
+   * Enable or disable the PresentationML render cache. When enabled, the PresentationML fragments of the subtrees of
+   * the document that do not depend on generated ids are kept on their elements, so that rendering the same tree again,
+   * e.g. after a small change made through the MessageML document tree, only prints the modified subtrees.
+   * <p>
+   * Changes made to the tree are picked up by {@link #getPresentationML()} while the cache is enabled.
+   * @param renderCacheEnabled true to enable the render cache, disabled by default
+   */
+  public void setRenderCacheEnabled(boolean renderCacheEnabled) {
+    this.renderCacheEnabled = renderCacheEnabled;
+  }
+
+  public boolean isRenderCacheEnabled() {
+    return renderCacheEnabled;
+  }
+
+  /**
+   * Set the limits on the size and complexity of the messages parsed with
+   * {@link #parseMessageML(String, String, String)}. Messages exceeding them are rejected with an
+   * {@link InvalidInputException} as soon as a limit is found to be exceeded, at the latest while the document tree
+   * is built.
+   * @param limits the limits, {@link MessageMLLimits#NONE} by default
+   */
+  public void setLimits(MessageMLLimits limits) {
+    messageMLParser.setLimits(limits);
+  }
+
+  public MessageMLLimits getLimits() {
+    return messageMLParser.getLimits();
+  }
+
+  /**
+   * Enable or disable the fast path for plain text messages: MessageML messages with only text in the root element and
+   * Markdown messages made of a single line of text without Markdown syntax nor entities. Their document tree is then
+   * built directly, without parsing, and produces the same outputs.
+   * @param plainTextFastPathEnabled true to enable the fast path, enabled by default
+   */
+  public void setPlainTextFastPathEnabled(boolean plainTextFastPathEnabled) {
+    messageMLParser.setPlainTextFastPathEnabled(plainTextFastPathEnabled);
+    markdownParser.setPlainTextFastPathEnabled(plainTextFastPathEnabled);
+  }
+
+  public boolean isPlainTextFastPathEnabled() {
+    return messageMLParser.isPlainTextFastPathEnabled();
+  }
+
+  /**
+   * Set the registry of the factories creating the elements of parsed messages by tag, to support custom elements.
+   * Tags without a factory in the registry are rejected with an {@link InvalidInputException}.
+   * @param elementFactories the registry, {@link ElementFactoryRegistry#getDefault()} by default
+   */
+  public void setElementFactoryRegistry(ElementFactoryRegistry elementFactories) {
+    messageMLParser.setElementFactoryRegistry(elementFactories);
+  }
+
+  public ElementFactoryRegistry getElementFactoryRegistry() {
+    return messageMLParser.getElementFactoryRegistry();
+  }
+
+  /**
+   * Enable or disable the storage pool of the parser: the attribute arrays and child lists of the elements of the
+   * messages parsed with {@link #parseMessageML(String, String, String)} are then reused from one message to the next
+   * rather than allocated for each message. The elements themselves are still allocated for each message. The tree of a message, as returned by {@link #getMessageML()}, must not be used once
+   * the next message is parsed, which suits contexts reused for messages rendered right after they are parsed: its
+   * elements then throw an {@link IllegalStateException} when their attributes or children are accessed, rather than
+   * showing those of the next message.
+   * @param storagePoolEnabled true to enable the storage pool, disabled by default
+   */
+  public void setStoragePoolEnabled(boolean storagePoolEnabled) {
+    messageMLParser.setStoragePoolEnabled(storagePoolEnabled);
+  }
+
+  public boolean isStoragePoolEnabled() {
+    return messageMLParser.isStoragePoolEnabled();
+  }
+
+  /**
+   * Set the signer of the PresentationML shared with trusted parties. The PresentationML generated by the context is
+   * then signed in a <i>data-signature</i> attribute of its root element, along with its EntityJSON. PresentationML
+   * parsed with a valid signature for the given EntityJSON is built without checking its text and entities again, nor
+   * validating the elements whose validation has no other effect. The whole tree is still built, so that all the
+   * outputs of the message are available. PresentationML signed with another key, or whose root element or
+   * EntityJSON was modified after being signed, is parsed and validated as usual.
+   * @param presentationMLSigner the signer, or null to neither sign nor trust PresentationML, by default
+   */
+  public void setPresentationMLSigner(PresentationMLSigner presentationMLSigner) {
+    this.presentationMLSigner = presentationMLSigner;
+    this.presentationML = null;
+    messageMLParser.setPresentationMLSigner(presentationMLSigner);
+  }
+
+  public PresentationMLSigner getPresentationMLSigner() {
+    return presentationMLSigner;
+  }
+
+  /**
+   * Whether the last message parsed with {@link #parseMessageML(String, String, String)} was PresentationML with a
+   * valid signature, built without being validated again.
+   */
+  public boolean isTrustedPresentationML() {
+    return messageMLParser.isTrustedPresentationML();
+  }
+
   public String generateShortId(){
     return shortID.generate();
   }
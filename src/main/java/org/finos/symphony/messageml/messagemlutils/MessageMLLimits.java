@@ -0,0 +1,230 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+
+/**
+ * Limits on the size and complexity of the messages accepted by a parser, checked as soon as possible so that oversized
+ * messages are rejected early: the sizes before anything is parsed, the number of entities once the EntityJSON is
+ * read, and the number of elements, their nesting depth and their number of attributes as the document tree is built.
+ * <p>
+ * Limits are immutable, each {@code with} method returns a copy with one limit changed. All the limits are disabled in
+ * {@link #NONE}.
+ */
+public final class MessageMLLimits {
+  private static final int UNLIMITED = Integer.MAX_VALUE;
+
+  public static final MessageMLLimits NONE =
+      new MessageMLLimits(UNLIMITED, UNLIMITED, UNLIMITED, UNLIMITED, UNLIMITED, UNLIMITED);
+
+  private final int maxMessageBytes;
+  private final int maxEntityJsonBytes;
+  private final int maxEntities;
+  private final int maxElements;
+  private final int maxDepth;
+  private final int maxAttributesPerElement;
+
+  private MessageMLLimits(int maxMessageBytes, int maxEntityJsonBytes, int maxEntities, int maxElements, int maxDepth,
+      int maxAttributesPerElement) {
+    this.maxMessageBytes = maxMessageBytes;
+    this.maxEntityJsonBytes = maxEntityJsonBytes;
+    this.maxEntities = maxEntities;
+    this.maxElements = maxElements;
+    this.maxDepth = maxDepth;
+    this.maxAttributesPerElement = maxAttributesPerElement;
+  }
+
+  /**
+   * Limit the size of the message, and of the message once its templates are expanded, in UTF-8 bytes.
+   */
+  public MessageMLLimits withMaxMessageBytes(int maxMessageBytes) {
+    return new MessageMLLimits(checkPositive(maxMessageBytes), maxEntityJsonBytes, maxEntities, maxElements, maxDepth,
+        maxAttributesPerElement);
+  }
+
+  /**
+   * Limit the size of the EntityJSON, in UTF-8 bytes.
+   */
+  public MessageMLLimits withMaxEntityJsonBytes(int maxEntityJsonBytes) {
+    return new MessageMLLimits(maxMessageBytes, checkPositive(maxEntityJsonBytes), maxEntities, maxElements, maxDepth,
+        maxAttributesPerElement);
+  }
+
+  /**
+   * Limit the number of entities of the EntityJSON, i.e. of its objects with a type.
+   */
+  public MessageMLLimits withMaxEntities(int maxEntities) {
+    return new MessageMLLimits(maxMessageBytes, maxEntityJsonBytes, checkPositive(maxEntities), maxElements, maxDepth,
+        maxAttributesPerElement);
+  }
+
+  /**
+   * Limit the number of elements of the document tree of the message, the root element included.
+   */
+  public MessageMLLimits withMaxElements(int maxElements) {
+    return new MessageMLLimits(maxMessageBytes, maxEntityJsonBytes, maxEntities, checkPositive(maxElements), maxDepth,
+        maxAttributesPerElement);
+  }
+
+  /**
+   * Limit the nesting depth of the elements of the document tree of the message, the root element excluded.
+   */
+  public MessageMLLimits withMaxDepth(int maxDepth) {
+    return new MessageMLLimits(maxMessageBytes, maxEntityJsonBytes, maxEntities, maxElements, checkPositive(maxDepth),
+        maxAttributesPerElement);
+  }
+
+  /**
+   * Limit the number of attributes of each element of the message.
+   */
+  public MessageMLLimits withMaxAttributesPerElement(int maxAttributesPerElement) {
+    return new MessageMLLimits(maxMessageBytes, maxEntityJsonBytes, maxEntities, maxElements, maxDepth,
+        checkPositive(maxAttributesPerElement));
+  }
+
+  public int getMaxMessageBytes() {
+    return maxMessageBytes;
+  }
+
+  public int getMaxEntityJsonBytes() {
+    return maxEntityJsonBytes;
+  }
+
+  public int getMaxEntities() {
+    return maxEntities;
+  }
+
+  public int getMaxElements() {
+    return maxElements;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  public int getMaxAttributesPerElement() {
+    return maxAttributesPerElement;
+  }
+
+  /**
+   * Check the length of the message, a lower bound of its size in UTF-8, so that a message much too large is rejected
+   * before it is scanned.
+   * @throws InvalidInputException if the message is longer than the maximum size
+   */
+  void checkMessageLength(String message) throws InvalidInputException {
+    if (message.length() > maxMessageBytes) {
+      throw messageTooLarge();
+    }
+  }
+
+  /**
+   * Check the size of the message in UTF-8, as counted by its scan.
+   * @throws InvalidInputException if the message is larger than the maximum size
+   */
+  void checkMessageSize(MessageScan scan) throws InvalidInputException {
+    if (scan.getBytes() > maxMessageBytes) {
+      throw messageTooLarge();
+    }
+  }
+
+  private InvalidInputException messageTooLarge() {
+    return new InvalidInputException(String.format(
+        "Error parsing message: the message exceeds the maximum size of %d bytes", maxMessageBytes));
+  }
+
+  /**
+   * @throws InvalidInputException if the EntityJSON is larger than the maximum size
+   */
+  void checkEntityJsonSize(String entityJson) throws InvalidInputException {
+    if (exceedsBytes(entityJson, maxEntityJsonBytes)) {
+      throw new InvalidInputException(String.format(
+          "Error parsing EntityJSON: the EntityJSON exceeds the maximum size of %d bytes", maxEntityJsonBytes));
+    }
+  }
+
+  /**
+   * @throws InvalidInputException if the EntityJSON has more entities than the maximum
+   */
+  void checkEntities(int entities) throws InvalidInputException {
+    if (entities > maxEntities) {
+      throw new InvalidInputException(String.format(
+          "Error parsing EntityJSON: the EntityJSON exceeds the maximum number of %d entities", maxEntities));
+    }
+  }
+
+  /**
+   * @throws InvalidInputException if the document tree has more elements than the maximum
+   */
+  void checkElements(int elements) throws InvalidInputException {
+    if (elements > maxElements) {
+      throw new InvalidInputException(String.format(
+          "Error parsing message: the message exceeds the maximum number of %d elements", maxElements));
+    }
+  }
+
+  /**
+   * @throws InvalidInputException if an element is nested deeper than the maximum
+   */
+  void checkDepth(int depth) throws InvalidInputException {
+    if (depth > maxDepth) {
+      throw new InvalidInputException(String.format(
+          "Error parsing message: the message exceeds the maximum nesting depth of %d elements", maxDepth));
+    }
+  }
+
+  /**
+   * @throws InvalidInputException if an element has more attributes than the maximum
+   */
+  void checkAttributes(int attributes) throws InvalidInputException {
+    if (attributes > maxAttributesPerElement) {
+      throw new InvalidInputException(String.format(
+          "Error parsing message: an element exceeds the maximum number of %d attributes", maxAttributesPerElement));
+    }
+  }
+
+  /**
+   * Whether the UTF-8 encoding of the string is larger than the maximum, counting the bytes only when needed.
+   */
+  static boolean exceedsBytes(String s, int maxBytes) {
+    int length = s.length();
+    if (length > maxBytes) {
+      return true;
+    }
+    if ((long) length * 3 <= maxBytes) {
+      return false;
+    }
+
+    long bytes = 0;
+    for (int i = 0; i < length; i++) {
+      char c = s.charAt(i);
+      // a surrogate pair is encoded in 4 bytes
+      bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+      if (bytes > maxBytes) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int checkPositive(int limit) {
+    if (limit < 1) {
+      throw new IllegalArgumentException("Limits must be positive");
+    }
+    return limit;
+  }
+}
@@ -12,7 +12,6 @@ import freemarker.template.Configuration;
 import freemarker.template.Template;
 import freemarker.template.TemplateException;
 import freemarker.template.TemplateExceptionHandler;
-import org.apache.commons.io.input.ReaderInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.finos.symphony.messageml.messagemlutils.bi.BiContext;
@@ -34,6 +33,7 @@ import org.finos.symphony.messageml.messagemlutils.elements.Dialog;
 import org.finos.symphony.messageml.messagemlutils.elements.DialogChild;
 import org.finos.symphony.messageml.messagemlutils.elements.Div;
 import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.elements.ElementStoragePool;
 import org.finos.symphony.messageml.messagemlutils.elements.Emoji;
 import org.finos.symphony.messageml.messagemlutils.elements.Entity;
 import org.finos.symphony.messageml.messagemlutils.elements.ExpandableCard;
@@ -76,26 +76,27 @@ import org.finos.symphony.messageml.messagemlutils.elements.TableHeaderCell;
 import org.finos.symphony.messageml.messagemlutils.elements.TableRow;
 import org.finos.symphony.messageml.messagemlutils.elements.TextArea;
 import org.finos.symphony.messageml.messagemlutils.elements.TextField;
+import org.finos.symphony.messageml.messagemlutils.elements.TextNode;
 import org.finos.symphony.messageml.messagemlutils.elements.DateTime;
 import org.finos.symphony.messageml.messagemlutils.elements.TimePicker;
 import org.finos.symphony.messageml.messagemlutils.elements.TimezonePicker;
 import org.finos.symphony.messageml.messagemlutils.elements.TooltipableElement;
 import org.finos.symphony.messageml.messagemlutils.elements.UIAction;
+import org.finos.symphony.messageml.messagemlutils.SplittableComponents.Slot;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
 import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingException;
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
-import org.finos.symphony.messageml.messagemlutils.util.NoOpEntityResolver;
-import org.finos.symphony.messageml.messagemlutils.util.NullErrorHandler;
+import org.finos.symphony.messageml.messagemlutils.util.PresentationMLSigner;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -104,56 +105,70 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.function.BiFunction;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 /**
  * Converts a string representation of the message and optional entity data into a MessageMLV2 document tree.
  */
 public class MessageMLParser {
+  private static final String SIGNED_PRESENTATIONML_START = "<" + MessageML.PRESENTATIONML_TAG + " ";
+  private static final String SIGNED_PRESENTATIONML_END = "</" + MessageML.PRESENTATIONML_TAG + ">";
+  private static final String SIGNATURE_ATTR_START = " " + MessageML.ATTR_SIGNATURE + "=\"";
   private static final ObjectMapper MAPPER = new ObjectMapper();
   private static final Configuration FREEMARKER = new Configuration(Configuration.VERSION_2_3_30);
 
-  // Store XML factories as thread locals as they are costly to create.
-  // Sonar warnings are ignored, we favor speed over memory usage, factories will stay in active threads
-  @SuppressWarnings("java:S5164")
-  private static final ThreadLocal<XPathFactory> X_PATH_FACTORY = ThreadLocal.withInitial(XPathFactory::newInstance);
-
-  @SuppressWarnings("java:S5164")
-  private static final ThreadLocal<DocumentBuilderFactory> DB_FACTORY = ThreadLocal.withInitial(() -> {
-    try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      // XXE prevention as per https://www.owasp.org/index.php/XML_External_Entity_(XXE)_Prevention_Cheat_Sheet
-      dbFactory.setXIncludeAware(false);
-      dbFactory.setExpandEntityReferences(false);
-      dbFactory.setIgnoringElementContentWhitespace(true);
-      dbFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-      dbFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
-      return dbFactory;
-    } catch (ParserConfigurationException e) {
-      throw new RuntimeException(e); //NOSONAR
-    }
-  });
+  // Builders are pooled rather than kept in thread locals, so that virtual threads do not each create their own
+  private static final DocumentBuilderPool DOCUMENT_BUILDERS =
+      new DocumentBuilderPool(DocumentBuilderPool.DEFAULT_MAX_IDLE);
 
   private final IDataProvider dataProvider;
 
   private BiContext biContext;
   private FormatEnum messageFormat;
   private ObjectNode entityJson;
+  // the document tree of the last message, whose entities are added to the EntityJSON on demand
+  private MessageML messageML;
+  private boolean entityJsonCompleted;
+  private EntityJsonIndex entityJsonIndex = EntityJsonIndex.EMPTY;
 
   private int index;
+  private int elements;
+  private int depth;
+  private MessageMLLimits limits = MessageMLLimits.NONE;
+  private boolean plainTextFastPathEnabled = true;
+  private ElementFactoryRegistry elementFactories = DEFAULT_ELEMENT_FACTORIES;
+  private PresentationMLSigner presentationMLSigner;
+  private ElementStoragePool storagePool;
+  private boolean trustedPresentationML;
 
   private Set<String> elementIds;
-  // Map for storing SplittableElements components. The key is the id, the value the data holder of attributes
-  private Map<String, SplittableData> splittableComponents;
+  // Labels and tooltips of SplittableElements found in PresentationML, by id of their element
+  private SplittableComponents splittableComponents;
+
+  // Factories of the elements by tag, built once and shared by all the parsers unless replaced on a parser
+  static final ElementFactoryRegistry DEFAULT_ELEMENT_FACTORIES = createDefaultElementFactories();
+
+  // Classes of the PresentationML divs converted to MessageML elements, by decreasing priority when a div has several
+  private static final Map<String, DivConversion> DIV_CONVERSIONS = new HashMap<>();
+
+  static {
+    addDivConversion(Card.PRESENTATIONML_CLASS, Card::new);
+    addDivConversion(CardBody.PRESENTATIONML_CLASS, CardBody::new);
+    addDivConversion(CardHeader.PRESENTATIONML_CLASS, CardHeader::new);
+    addDivConversion(ExpandableCard.PRESENTATIONML_CLASS, ExpandableCard::new);
+    addDivConversion(ExpandableCardBody.PRESENTATIONML_CLASS, ExpandableCardBody::new);
+    addDivConversion(ExpandableCardHeader.PRESENTATIONML_CLASS, ExpandableCardHeader::new);
+    addDivConversion(PersonSelector.MESSAGEML_TAG, PersonSelector::new);
+    addDivConversion(RoomSelector.MESSAGEML_TAG, RoomSelector::new);
+    addDivConversion(DateSelector.MESSAGEML_TAG, DateSelector::new);
+    addDivConversion(Checkbox.PRESENTATIONML_DIV_CLASS, Checkbox::new);
+    addDivConversion(Radio.PRESENTATIONML_DIV_CLASS, Radio::new);
+    addDivConversion(UIAction.PRESENTATIONML_CLASS, UIAction::new);
+    addDivConversion(TimezonePicker.PRESENTATIONML_CLASS, TimezonePicker::new);
+  }
 
   static {
     FREEMARKER.setDefaultEncoding("UTF-8");
@@ -179,27 +194,49 @@ public class MessageMLParser {
   MessageML parse(String message, String entityJson, String version) throws InvalidInputException, ProcessingException {
     clearBiContext();
     this.index = 0;
+    this.elements = 0;
+    this.depth = 0;
+    this.trustedPresentationML = false;
+    this.messageML = null;
+    this.entityJsonCompleted = false;
+    if (storagePool != null) {
+      storagePool.reset();
+    }
     this.elementIds = new HashSet<>();
-    this.splittableComponents = new HashMap<>();
+    this.splittableComponents = new SplittableComponents();
     String expandedMessage;
 
     if (StringUtils.isBlank(message)) {
       throw new InvalidInputException("Error parsing message: the message cannot be null or empty");
     }
+    limits.checkMessageLength(message);
+    // a single pass over the message tells which of the following checks and stages can be skipped
+    MessageScan scan = MessageScan.of(message);
+    limits.checkMessageSize(scan);
 
     parseEntityJson(entityJson);
 
+    if (plainTextFastPathEnabled && scan.isPlainText()) {
+      this.messageML = parsePlainText(message, version);
+      this.biContext.addItemWithValue(BiFields.MESSAGE_LENGTH.getValue(), message.length());
+      return messageML;
+    }
+
     try {
-      expandedMessage = expandTemplates(message, this.entityJson);
+      expandedMessage = scan.hasFreemarkerTags() ? expandTemplates(message, this.entityJson) : message;
     } catch (IOException e) {
       throw new InvalidInputException("Error parsing EntityJSON: " + e.getMessage());
     } catch (TemplateException e) {
       throw new InvalidInputException(String.format("Error parsing Freemarker template: invalid input at line %s, "
           + "column %s", e.getLineNumber(), e.getColumnNumber()));
     }
+    if (expandedMessage != message) {
+      limits.checkMessageLength(expandedMessage);
+      scan = MessageScan.of(expandedMessage);
+      limits.checkMessageSize(scan);
+    }
 
-    MessageML messageML = parseMessageML(expandedMessage, version);
-    this.entityJson = messageML.asEntityJson(this.entityJson);
+    this.messageML = parseMessageML(expandedMessage, scan, version);
     this.biContext.addItemWithValue(BiFields.MESSAGE_LENGTH.getValue(), message.length());
     return messageML;
   }
@@ -207,6 +244,7 @@ public class MessageMLParser {
   private void parseEntityJson(String entityJson) throws InvalidInputException {
     if (StringUtils.isNotBlank(entityJson)) {
       this.biContext.addItemWithValue(BiFields.ENTITY_JSON_SIZE.getValue(), entityJson.length());
+      limits.checkEntityJsonSize(entityJson);
       try {
         JsonNode jsonNode = MAPPER.readTree(entityJson);
         if (jsonNode.isObject()) {
@@ -222,12 +260,15 @@ public class MessageMLParser {
         } else {
           throw new InvalidInputException("Error parsing EntityJSON: provided content is not a JSON object");
         }
-        addCustomEntitiesToBiContext(jsonNode);
+        this.entityJsonIndex = new EntityJsonIndex(this.entityJson);
+        limits.checkEntities(entityJsonIndex.findValues(Entity.TYPE_FIELD).size());
+        addCustomEntitiesToBiContext();
       } catch (JsonProcessingException e) {
         throw new InvalidInputException("Error parsing EntityJSON: " + e.getMessage());
       }
     } else {
       this.entityJson = new ObjectNode(JsonNodeFactory.instance);
+      this.entityJsonIndex = EntityJsonIndex.EMPTY;
     }
   }
 
@@ -236,8 +277,8 @@ public class MessageMLParser {
    * - create a BiItem containing the type of entity found
    * - increase the total count of entities found in the message
    */
-  private void addCustomEntitiesToBiContext(JsonNode entityNode) {
-    entityNode.findValues(Entity.TYPE_FIELD).forEach(entityType -> {
+  private void addCustomEntitiesToBiContext() {
+    entityJsonIndex.findValues(Entity.TYPE_FIELD).forEach(entityType -> {
       biContext.updateItemCount(BiFields.ENTITIES.getValue());
       biContext.addItem(new BiItem(BiFields.ENTITY.getValue(),
               Collections.singletonMap(BiFields.ENTITY_TYPE.getValue(), entityType.asText())));
@@ -245,56 +286,78 @@ public class MessageMLParser {
   }
 
   /**
-   * Retrieve a JSON representation of entity data (EntityJSON).
+   * Retrieve a JSON representation of entity data (EntityJSON): the entity data provided with the message, completed
+   * with the entities of the MessageML document tree.
    */
   ObjectNode getEntityJson() {
+    if (!entityJsonCompleted && messageML != null) {
+      messageML.asEntityJson(entityJson);
+      entityJsonCompleted = true;
+    }
     return entityJson;
   }
 
   /**
-   * Check the input message text for null value and restricted characters.
+   * Retrieve the entity data provided with the message, for callers adding the entities of the document tree
+   * themselves in the same traversal as the Markdown, which then call {@link #setEntityJsonCompleted()} so that
+   * {@link #getEntityJson()} does not add them again.
    */
-  private static void validateMessageText(String messageML) throws InvalidInputException {
-    if (messageML == null) { throw new InvalidInputException("Message input is NULL"); }
+  ObjectNode getProvidedEntityJson() {
+    return entityJson;
+  }
 
-    for (char ch : messageML.toCharArray()) {
-      if (ch != '\n' && ch != '\r' && ch != '\t' && (ch < ' ')) {
-        throw new InvalidInputException("Invalid control characters in message");
-      }
+  void setEntityJsonCompleted() {
+    this.entityJsonCompleted = true;
+  }
+
+  /**
+   * Check the input message text for restricted characters.
+   */
+  private static void validateMessageText(MessageScan scan) throws InvalidInputException {
+    if (scan.hasControlCharacters()) {
+      throw new InvalidInputException("Invalid control characters in message");
     }
   }
 
   /**
    * Check whether <i>data-entity-id</i> attributes in the message match EntityJSON entities.
    */
-  private static void validateEntities(String messageML, org.w3c.dom.Element document, JsonNode entityJson)
-      throws InvalidInputException, ProcessingException {
-    // quick bypass to avoid xpath evaluation if possible
-    if (!messageML.contains("data-entity-id")) {
+  private static void validateEntities(MessageScan scan, org.w3c.dom.Element document, EntityJsonIndex entityJson)
+      throws InvalidInputException {
+    // quick bypass to avoid walking the document if possible
+    if (!scan.hasEntityIds()) {
       return;
     }
 
-    XPath xpath = X_PATH_FACTORY.get().newXPath();
-    NodeList nodes;
-    try {
-      XPathExpression expr = xpath.compile("//@data-entity-id");
-      nodes = (NodeList) expr.evaluate(document, XPathConstants.NODESET);
-    } catch (XPathExpressionException e) {
-      throw new ProcessingException("Internal error processing document tree: " + e.getMessage());
-    }
-
-    for (int i = 0; i < nodes.getLength(); i++) {
-      Node node = nodes.item(i);
-      String entityId = ((org.w3c.dom.Attr) node).getValue();
-
-      JsonNode entityNode = entityJson.findPath(entityId);
-      if (entityNode.isMissingNode()) {
-        throw new InvalidInputException("Error processing EntityJSON: "
-            + "no entity data provided for \"data-entity-id\"=\"" + entityId + "\"");
-      } else if (!entityNode.isObject()) {
-        throw new InvalidInputException("Error processing EntityJSON: "
-            + "the node \"" + entityId + "\" has to be an object");
+    // walk the elements in document order, without recursion as the nesting depth is not checked yet
+    Node node = document;
+    while (node != null) {
+      if (node.getNodeType() == Node.ELEMENT_NODE) {
+        org.w3c.dom.Attr attribute = ((org.w3c.dom.Element) node).getAttributeNode("data-entity-id");
+        if (attribute != null) {
+          validateEntity(attribute.getValue(), entityJson);
+        }
       }
+
+      if (node.getFirstChild() != null) {
+        node = node.getFirstChild();
+      } else {
+        while (node != document && node.getNextSibling() == null) {
+          node = node.getParentNode();
+        }
+        node = node == document ? null : node.getNextSibling();
+      }
+    }
+  }
+
+  private static void validateEntity(String entityId, EntityJsonIndex entityJson) throws InvalidInputException {
+    JsonNode entityNode = entityJson.findPath(entityId);
+    if (entityNode.isMissingNode()) {
+      throw new InvalidInputException("Error processing EntityJSON: "
+          + "no entity data provided for \"data-entity-id\"=\"" + entityId + "\"");
+    } else if (!entityNode.isObject()) {
+      throw new InvalidInputException("Error processing EntityJSON: "
+          + "the node \"" + entityId + "\" has to be an object");
     }
   }
 
@@ -311,11 +374,6 @@ public class MessageMLParser {
    * Expand Freemarker templates.
    */
   private String expandTemplates(String message, JsonNode entityJson) throws IOException, TemplateException {
-    // quick bypass to avoid creating the templating engine if possible
-    if (!containsFreemarkerTags(message)) {
-      return message;
-    }
-
     // Read entityJSON data
     Map<String, Object> data = new HashMap<>();
     data.put("data", MAPPER.convertValue(entityJson, Map.class));
@@ -334,21 +392,21 @@ public class MessageMLParser {
     return sw.toString();
   }
 
-  private boolean containsFreemarkerTags(String message) {
-    // Based https://freemarker.apache.org/docs/dgui_template_directives.html
-    // We consider that directives cannot be customized (to use [ or without #)
-    return message.contains("<#") || message.contains("<@") || message.contains("${") || message.contains("#{");
-  }
-
   /**
    * Parse the message string into its MessageML representation.
    */
-  private MessageML parseMessageML(String messageML, String version) throws InvalidInputException, ProcessingException {
-    validateMessageText(messageML);
+  private MessageML parseMessageML(String messageML, MessageScan scan, String version)
+      throws InvalidInputException, ProcessingException {
+    this.trustedPresentationML = isSignedPresentationML(messageML, scan);
+    if (!trustedPresentationML) {
+      validateMessageText(scan);
+    }
 
     org.w3c.dom.Element docElement = parseDocument(messageML);
 
-    validateEntities(messageML, docElement, entityJson);
+    if (!trustedPresentationML) {
+      validateEntities(scan, docElement, entityJsonIndex);
+    }
 
     switch (docElement.getTagName()) {
       case MessageML.MESSAGEML_TAG:
@@ -367,17 +425,66 @@ public class MessageMLParser {
             + " or <" + MessageML.PRESENTATIONML_TAG + ">");
     }
 
-    MessageML result = new MessageML(messageFormat, version);
+    enterRoot(docElement);
+    MessageML result = new MessageML(messageFormat, version, storagePool);
     result.buildAll(this, docElement);
     result.enhanceFinancialTags(result, dataProvider);
     result.validate();
     return result;
   }
 
+  /**
+   * Whether the message is PresentationML signed with the key of the parser, i.e. generated by this library from a
+   * valid message along with its EntityJSON. The signature covers the start tag and content of the root element as
+   * printed, and the EntityJSON, so that it is checked before parsing the message.
+   */
+  private boolean isSignedPresentationML(String messageML, MessageScan scan) {
+    if (presentationMLSigner == null || !messageML.startsWith(SIGNED_PRESENTATIONML_START)
+        || !messageML.endsWith(SIGNED_PRESENTATIONML_END)) {
+      return false;
+    }
+
+    int contentStart = scan.getRootStartTagEnd();
+    int contentEnd = messageML.length() - SIGNED_PRESENTATIONML_END.length();
+    int signatureStart = messageML.lastIndexOf(SIGNATURE_ATTR_START, contentStart);
+    if (contentStart < 0 || contentStart > contentEnd || signatureStart < 0) {
+      return false;
+    }
+
+    int valueStart = signatureStart + SIGNATURE_ATTR_START.length();
+    int signatureEnd = messageML.indexOf('"', valueStart);
+    if (signatureEnd < 0 || signatureEnd >= contentStart) {
+      return false;
+    }
+
+    String startTag = messageML.substring(0, signatureStart) + messageML.substring(signatureEnd + 1, contentStart);
+    return presentationMLSigner.verify(startTag, messageML.substring(contentStart, contentEnd), entityJson,
+        messageML.substring(valueStart, signatureEnd));
+  }
+
+  /**
+   * Build the document tree of a message accepted by {@link MessageScan#isPlainText()}, as it would be built from its
+   * DOM tree. The text is taken out of the message once, without decoding.
+   */
+  private MessageML parsePlainText(String message, String version) throws InvalidInputException {
+    this.messageFormat = FormatEnum.MESSAGEML;
+    if (StringUtils.isBlank(version)) {
+      version = MessageML.MESSAGEML_VERSION;
+    }
+    MessageML result = new MessageML(messageFormat, version, storagePool);
+    int start = MessageScan.PLAIN_TEXT_START.length();
+    int end = message.length() - MessageScan.PLAIN_TEXT_END.length();
+    if (end > start) {
+      result.addChild(new TextNode(result, message.substring(start, end)));
+    }
+    result.validate();
+    return result;
+  }
+
   /**
    * Parse the message string into a DOM element tree.
    * <br>
-   * CWE-611 on <code> dBuilder.parse(ris) </code> :  There are ambiguities between what was
+   * CWE-611 on <code> dBuilder.parse(source) </code> :  There are ambiguities between what was
    * recommended
    * <a href="https://sg.run/gLbR">https://sg.run/gLbR</a> and the documentation
    * <a href="https://cheatsheetseries.owasp.org/cheatsheets/XML_External_Entity_Prevention_Cheat_Sheet.html">XML External Entity Prevention Cheat Sheet</a>,
@@ -385,15 +492,14 @@ public class MessageMLParser {
    * </br>
    */
   org.w3c.dom.Element parseDocument(String messageML) throws InvalidInputException, ProcessingException {
+    DocumentBuilder dBuilder = null;
     try {
-      DocumentBuilder dBuilder = DB_FACTORY.get().newDocumentBuilder();
-      dBuilder.setErrorHandler(new NullErrorHandler()); // default handler prints to stderr
-      dBuilder.setEntityResolver(new NoOpEntityResolver());
+      dBuilder = DOCUMENT_BUILDERS.acquire();
 
-      StringReader sr = new StringReader(messageML);
-      ReaderInputStream ris = new ReaderInputStream(sr, StandardCharsets.UTF_8);
+      // read as characters, decoding bytes makes the parser keep a byte buffer per thread
+      InputSource source = new InputSource(new StringReader(messageML));
 
-      Document doc = dBuilder.parse(ris); // nosemgrep owasp.java.xxe.javax.xml.parsers.DocumentBuilderFactory
+      Document doc = dBuilder.parse(source); // nosemgrep owasp.java.xxe.javax.xml.parsers.DocumentBuilderFactory
 
       doc.getDocumentElement().normalize();
 
@@ -403,27 +509,85 @@ public class MessageMLParser {
       throw new InvalidInputException("Invalid messageML: " + e.getMessage(), e);
     } catch (ParserConfigurationException | IOException e) {
       throw new ProcessingException("Failed to parse messageML", e);
+    } finally {
+      if (dBuilder != null) {
+        DOCUMENT_BUILDERS.release(dBuilder);
+      }
     }
   }
 
-  private boolean containsAttribute(String input, String attribute) {
-    String[] splitInput = input.split("\\s+");
+  /**
+   * Whether the whitespace separated list of values of an attribute contains the value, without splitting the list.
+   */
+  private static boolean containsAttribute(String input, String attribute) {
+    int from = input.indexOf(attribute);
+    while (from >= 0) {
+      int end = from + attribute.length();
+      if ((from == 0 || isAttributeSeparator(input.charAt(from - 1)))
+          && (end == input.length() || isAttributeSeparator(input.charAt(end)))) {
+        return true;
+      }
+      from = input.indexOf(attribute, from + 1);
+    }
+    return false;
+  }
 
-    return Arrays.asList(splitInput).contains(attribute);
+  /**
+   * Split the whitespace separated list of values of an attribute, ignoring empty values.
+   */
+  private static List<String> splitAttribute(String input) {
+    List<String> values = new ArrayList<>(2);
+    int start = -1;
+    for (int i = 0; i <= input.length(); i++) {
+      if (i == input.length() || isAttributeSeparator(input.charAt(i))) {
+        if (start >= 0) {
+          values.add(input.substring(start, i));
+          start = -1;
+        }
+      } else if (start < 0) {
+        start = i;
+      }
+    }
+    return values;
+  }
+
+  private static boolean isAttributeSeparator(char c) {
+    // the whitespace characters of the \s regular expression class
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
   }
 
   private void removeAttribute(org.w3c.dom.Element element, String input, String attribute) {
     if (element.hasAttribute(input)) {
-      String newAttribute = Arrays.stream(element.getAttribute(input).split("\\s+"))
-          .filter(it -> !it.equalsIgnoreCase(attribute))
-          .collect(Collectors.joining(" "));
+      String value = element.getAttribute(input);
+      removeAttribute(element, input, value, splitAttribute(value), attribute);
+    }
+  }
 
-      if (StringUtils.isNotBlank(newAttribute)) {
-        element.setAttribute(input, newAttribute);
-      } else {
-        element.removeAttribute(input);
+  /**
+   * Remove a value, ignoring case, from an attribute already split in values. Other values are joined with single
+   * spaces, the attribute is removed if no value is left.
+   */
+  private static void removeAttribute(org.w3c.dom.Element element, String input, String value, List<String> values,
+      String attribute) {
+    boolean leadingSeparator = !value.isEmpty() && isAttributeSeparator(value.charAt(0));
+    StringBuilder newAttribute = null;
+    for (String it : values) {
+      if (!it.equalsIgnoreCase(attribute)) {
+        if (newAttribute == null) {
+          newAttribute = new StringBuilder(value.length());
+        }
+        if (newAttribute.length() > 0 || leadingSeparator) {
+          newAttribute.append(' ');
+        }
+        newAttribute.append(it);
       }
     }
+
+    if (newAttribute != null) {
+      element.setAttribute(input, newAttribute.toString());
+    } else {
+      element.removeAttribute(input);
+    }
   }
 
   /**
@@ -435,214 +599,136 @@ public class MessageMLParser {
    */
   public Element createElement(org.w3c.dom.Element element, Element parent) throws
       InvalidInputException {
-    String tag = element.getNodeName();
-
-    if (Header.isHeaderElement(tag)) {
-      return new Header(parent, tag);
-    }
-
-    String elementClass = element.getAttribute(CLASS_ATTR);
-    switch (tag) {
-      case Chime.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new Chime(parent, FormatEnum.MESSAGEML);
-
-      case Chime.PRESENTATIONML_TAG:
-        return new Chime(parent, FormatEnum.PRESENTATIONML);
-
-      case Paragraph.MESSAGEML_TAG:
-        return new Paragraph(parent);
-
-      case LineBreak.MESSAGEML_TAG:
-        return new LineBreak(parent);
-
-      case HorizontalRule.MESSAGEML_TAG:
-        return new HorizontalRule(parent);
-
-      case Span.MESSAGEML_TAG:
-        if (TooltipableElement.isTooltipNode(element)) {
-          String id = getAttribute(element, TooltipableElement.DATA_TARGET_ID);
-          createSplittable(id, TooltipableElement.class, null);
-          String title = getAttribute(element, TooltipableElement.DATA_TITLE);
-          addSplittableData(id, TooltipableElement.class, TooltipableElement.TITLE, title);
-          return null;
-        } else if (containsAttribute(elementClass, Entity.PRESENTATIONML_CLASS)) {
-          return createEntity(element, parent);
-        } else {
-          return new Span(parent);
-        }
-
-      case Div.MESSAGEML_TAG:
-        return createElementFromDiv(element, parent);
-
-      case FormElement.INPUT_TAG:
-        return createElementFromInput(element, parent);
-
-      case Bold.MESSAGEML_TAG:
-        return new Bold(parent);
-
-      case Italic.MESSAGEML_TAG:
-        return new Italic(parent);
-
-      case Preformatted.MESSAGEML_TAG:
-        return new Preformatted(parent);
-
-      case HashTag.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new HashTag(parent, ++index);
-
-      case CashTag.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new CashTag(parent, ++index);
-
-      case Mention.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new Mention(parent, ++index, dataProvider);
-
-      case Link.MESSAGEML_TAG:
-        return new Link(parent, dataProvider);
-
-      case Image.MESSAGEML_TAG:
-        return new Image(parent);
-
-      case BulletList.MESSAGEML_TAG:
-        return new BulletList(parent);
-
-      case OrderedList.MESSAGEML_TAG:
-        return new OrderedList(parent);
-
-      case ListItem.MESSAGEML_TAG:
-        return new ListItem(parent);
-
-      case Table.MESSAGEML_TAG:
-        return new Table(parent);
-
-      case TableHeader.MESSAGEML_TAG:
-        return new TableHeader(parent);
-
-      case TableBody.MESSAGEML_TAG:
-        return new TableBody(parent);
-
-      case TableFooter.MESSAGEML_TAG:
-        return new TableFooter(parent);
-
-      case TableRow.MESSAGEML_TAG:
-        return new TableRow(parent);
-
-      case TableHeaderCell.MESSAGEML_TAG:
-        return new TableHeaderCell(parent);
-
-      case TableCell.MESSAGEML_TAG:
-        return new TableCell(parent);
-
-      case Card.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new Card(parent, messageFormat);
-
-      case ExpandableCard.MESSAGEML_TAG:
-        validateFormat(tag);
-        return new ExpandableCard(parent, messageFormat);
-
-      case Code.MESSAGEML_TAG:
-        return new Code(parent);
-
-      case CardHeader.MESSAGEML_TAG:
-        validateFormat(tag);
-        if (parent instanceof ExpandableCard) {
-          return new ExpandableCardHeader(parent, messageFormat);
-        } else {
-          return new CardHeader(parent, messageFormat);
-        }
-
-      case CardBody.MESSAGEML_TAG:
-        validateFormat(tag);
-        if (parent instanceof Dialog || parent.getParent() instanceof Dialog) {
-          return new DialogChild.Body(parent, messageFormat);
-        } else if (parent instanceof ExpandableCard) {
-          return new ExpandableCardBody(parent, messageFormat);
-        } else {
-          return new CardBody(parent, messageFormat);
-        }
-
-      case Emoji.MESSAGEML_TAG:
-        return new Emoji(parent, ++index);
-
-      case Form.MESSAGEML_TAG:
-        return new Form(parent, messageFormat);
-
-      case Select.MESSAGEML_TAG:
-        return new Select(parent);
-
-      case Option.MESSAGEML_TAG:
-        return new Option(parent);
-
-      case Button.MESSAGEML_TAG:
-        return new Button(parent, messageFormat);
-
-      case TextField.MESSAGEML_TAG:
-        return new TextField(parent, messageFormat);
-
-      case Checkbox.MESSAGEML_TAG:
-        return new Checkbox(parent, messageFormat);
-
-      case Radio.MESSAGEML_TAG:
-        return new Radio(parent, messageFormat);
-
-      case PersonSelector.MESSAGEML_TAG:
-        return new PersonSelector(parent, messageFormat);
-
-      case RoomSelector.MESSAGEML_TAG:
-        return new RoomSelector(parent, messageFormat);
-
-      case DateSelector.MESSAGEML_TAG:
-        return new DateSelector(parent, messageFormat);
-
-      case DatePicker.MESSAGEML_TAG:
-        return new DatePicker(parent, messageFormat);
-
-      case TimePicker.MESSAGEML_TAG:
-        return new TimePicker(parent, messageFormat);
-
-      case TimezonePicker.MESSAGEML_TAG:
-        return new TimezonePicker(parent, messageFormat);
-
-      case TextArea.MESSAGEML_TAG:
-        return new TextArea(parent, messageFormat);
-
-      case UIAction.MESSAGEML_TAG:
-        return new UIAction(parent, messageFormat);
-
-      case Dialog.MESSAGEML_TAG:
-        return new Dialog(parent, messageFormat);
-
-      case DialogChild.Title.MESSAGEML_TAG:
-        return new DialogChild.Title(parent, messageFormat);
-
-      case DialogChild.Footer.MESSAGEML_TAG:
-        return new DialogChild.Footer(parent, messageFormat);
-
-      case LabelableElement.LABEL:
-        String id = getAttribute(element, LabelableElement.LABEL_FOR);
-        createSplittable(id, LabelableElement.class, Pair.of(LabelableElement.LABEL, element.getTextContent()));
-        return null;
-
-      case Subscript.MESSAGEML_TAG:
-        return new Subscript(parent);
-
-      case Superscript.MESSAGEML_TAG:
-        return new Superscript(parent);
+    return elementFactories.create(this, element, parent);
+  }
 
-      case Tag.MESSAGEML_TAG:
-        return new Tag(parent, ++index);
+  /**
+   * Register the factories of the MessageML and PresentationML elements by tag.
+   */
+  private static ElementFactoryRegistry createDefaultElementFactories() {
+    Map<String, ElementFactory> factories = new HashMap<>();
 
-      case RichTextArea.MESSAGEML_TAG:
-        return new RichTextArea(parent, messageFormat);
+    for (int level = 1; level <= 6; level++) {
+      String tag = Header.MESSAGEML_TAG + level;
+      factories.put(tag, (parser, element, parent) -> new Header(parent, tag));
+    }
 
-      case DateTime.MESSAGEML_TAG:
-        return new DateTime(parent, ++index);
+    factories.put(Chime.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(Chime.MESSAGEML_TAG);
+      return new Chime(parent, FormatEnum.MESSAGEML);
+    });
+    factories.put(Chime.PRESENTATIONML_TAG, (parser, element, parent) -> new Chime(parent, FormatEnum.PRESENTATIONML));
+    factories.put(Paragraph.MESSAGEML_TAG, (parser, element, parent) -> new Paragraph(parent));
+    factories.put(LineBreak.MESSAGEML_TAG, (parser, element, parent) -> new LineBreak(parent));
+    factories.put(HorizontalRule.MESSAGEML_TAG, (parser, element, parent) -> new HorizontalRule(parent));
+    factories.put(Span.MESSAGEML_TAG, MessageMLParser::createElementFromSpan);
+    factories.put(Div.MESSAGEML_TAG, (parser, element, parent) -> parser.createElementFromDiv(element, parent));
+    factories.put(FormElement.INPUT_TAG, (parser, element, parent) -> parser.createElementFromInput(element, parent));
+    factories.put(Bold.MESSAGEML_TAG, (parser, element, parent) -> new Bold(parent));
+    factories.put(Italic.MESSAGEML_TAG, (parser, element, parent) -> new Italic(parent));
+    factories.put(Preformatted.MESSAGEML_TAG, (parser, element, parent) -> new Preformatted(parent));
+    factories.put(HashTag.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(HashTag.MESSAGEML_TAG);
+      return new HashTag(parent, ++parser.index);
+    });
+    factories.put(CashTag.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(CashTag.MESSAGEML_TAG);
+      return new CashTag(parent, ++parser.index);
+    });
+    factories.put(Mention.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(Mention.MESSAGEML_TAG);
+      return new Mention(parent, ++parser.index, parser.dataProvider);
+    });
+    factories.put(Link.MESSAGEML_TAG, (parser, element, parent) -> new Link(parent, parser.dataProvider));
+    factories.put(Image.MESSAGEML_TAG, (parser, element, parent) -> new Image(parent));
+    factories.put(BulletList.MESSAGEML_TAG, (parser, element, parent) -> new BulletList(parent));
+    factories.put(OrderedList.MESSAGEML_TAG, (parser, element, parent) -> new OrderedList(parent));
+    factories.put(ListItem.MESSAGEML_TAG, (parser, element, parent) -> new ListItem(parent));
+    factories.put(Table.MESSAGEML_TAG, (parser, element, parent) -> new Table(parent));
+    factories.put(TableHeader.MESSAGEML_TAG, (parser, element, parent) -> new TableHeader(parent));
+    factories.put(TableBody.MESSAGEML_TAG, (parser, element, parent) -> new TableBody(parent));
+    factories.put(TableFooter.MESSAGEML_TAG, (parser, element, parent) -> new TableFooter(parent));
+    factories.put(TableRow.MESSAGEML_TAG, (parser, element, parent) -> new TableRow(parent));
+    factories.put(TableHeaderCell.MESSAGEML_TAG, (parser, element, parent) -> new TableHeaderCell(parent));
+    factories.put(TableCell.MESSAGEML_TAG, (parser, element, parent) -> new TableCell(parent));
+    factories.put(Card.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(Card.MESSAGEML_TAG);
+      return new Card(parent, parser.messageFormat);
+    });
+    factories.put(ExpandableCard.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(ExpandableCard.MESSAGEML_TAG);
+      return new ExpandableCard(parent, parser.messageFormat);
+    });
+    factories.put(Code.MESSAGEML_TAG, (parser, element, parent) -> new Code(parent));
+    factories.put(CardHeader.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(CardHeader.MESSAGEML_TAG);
+      if (parent instanceof ExpandableCard) {
+        return new ExpandableCardHeader(parent, parser.messageFormat);
+      } else {
+        return new CardHeader(parent, parser.messageFormat);
+      }
+    });
+    factories.put(CardBody.MESSAGEML_TAG, (parser, element, parent) -> {
+      parser.validateFormat(CardBody.MESSAGEML_TAG);
+      if (parent instanceof Dialog || parent.getParent() instanceof Dialog) {
+        return new DialogChild.Body(parent, parser.messageFormat);
+      } else if (parent instanceof ExpandableCard) {
+        return new ExpandableCardBody(parent, parser.messageFormat);
+      } else {
+        return new CardBody(parent, parser.messageFormat);
+      }
+    });
+    factories.put(Emoji.MESSAGEML_TAG, (parser, element, parent) -> new Emoji(parent, ++parser.index));
+    factories.put(Form.MESSAGEML_TAG, (parser, element, parent) -> new Form(parent, parser.messageFormat));
+    factories.put(Select.MESSAGEML_TAG, (parser, element, parent) -> new Select(parent));
+    factories.put(Option.MESSAGEML_TAG, (parser, element, parent) -> new Option(parent));
+    factories.put(Button.MESSAGEML_TAG, (parser, element, parent) -> new Button(parent, parser.messageFormat));
+    factories.put(TextField.MESSAGEML_TAG, (parser, element, parent) -> new TextField(parent, parser.messageFormat));
+    factories.put(Checkbox.MESSAGEML_TAG, (parser, element, parent) -> new Checkbox(parent, parser.messageFormat));
+    factories.put(Radio.MESSAGEML_TAG, (parser, element, parent) -> new Radio(parent, parser.messageFormat));
+    factories.put(PersonSelector.MESSAGEML_TAG,
+        (parser, element, parent) -> new PersonSelector(parent, parser.messageFormat));
+    factories.put(RoomSelector.MESSAGEML_TAG,
+        (parser, element, parent) -> new RoomSelector(parent, parser.messageFormat));
+    factories.put(DateSelector.MESSAGEML_TAG,
+        (parser, element, parent) -> new DateSelector(parent, parser.messageFormat));
+    factories.put(DatePicker.MESSAGEML_TAG, (parser, element, parent) -> new DatePicker(parent, parser.messageFormat));
+    factories.put(TimePicker.MESSAGEML_TAG, (parser, element, parent) -> new TimePicker(parent, parser.messageFormat));
+    factories.put(TimezonePicker.MESSAGEML_TAG,
+        (parser, element, parent) -> new TimezonePicker(parent, parser.messageFormat));
+    factories.put(TextArea.MESSAGEML_TAG, (parser, element, parent) -> new TextArea(parent, parser.messageFormat));
+    factories.put(UIAction.MESSAGEML_TAG, (parser, element, parent) -> new UIAction(parent, parser.messageFormat));
+    factories.put(Dialog.MESSAGEML_TAG, (parser, element, parent) -> new Dialog(parent, parser.messageFormat));
+    factories.put(DialogChild.Title.MESSAGEML_TAG,
+        (parser, element, parent) -> new DialogChild.Title(parent, parser.messageFormat));
+    factories.put(DialogChild.Footer.MESSAGEML_TAG,
+        (parser, element, parent) -> new DialogChild.Footer(parent, parser.messageFormat));
+    factories.put(LabelableElement.LABEL, (parser, element, parent) -> {
+      String id = parser.getAttribute(element, LabelableElement.LABEL_FOR);
+      parser.splittableComponents.create(id, Slot.LABEL, element.getTextContent());
+      return null;
+    });
+    factories.put(Subscript.MESSAGEML_TAG, (parser, element, parent) -> new Subscript(parent));
+    factories.put(Superscript.MESSAGEML_TAG, (parser, element, parent) -> new Superscript(parent));
+    factories.put(Tag.MESSAGEML_TAG, (parser, element, parent) -> new Tag(parent, ++parser.index));
+    factories.put(RichTextArea.MESSAGEML_TAG,
+        (parser, element, parent) -> new RichTextArea(parent, parser.messageFormat));
+    factories.put(DateTime.MESSAGEML_TAG, (parser, element, parent) -> new DateTime(parent, ++parser.index));
+
+    return new ElementFactoryRegistry(factories, false);
+  }
 
-      default:
-        throw new InvalidInputException("Invalid MessageML content at element \"" + tag + "\"");
+  private Element createElementFromSpan(org.w3c.dom.Element element, Element parent) throws InvalidInputException {
+    if (TooltipableElement.isTooltipNode(element)) {
+      String id = getAttribute(element, TooltipableElement.DATA_TARGET_ID);
+      splittableComponents.create(id, Slot.TOOLTIP, null);
+      String title = getAttribute(element, TooltipableElement.DATA_TITLE);
+      splittableComponents.addAttribute(id, Slot.TOOLTIP, TooltipableElement.TITLE, title);
+      return null;
+    } else if (containsAttribute(element.getAttribute(CLASS_ATTR), Entity.PRESENTATIONML_CLASS)) {
+      return createEntity(element, parent);
+    } else {
+      return new Span(parent);
     }
   }
 
@@ -654,7 +740,7 @@ public class MessageMLParser {
           String.format("Invalid MessageML content at element \"%s\": 'data-target-id' attribute missing or empty",
               key));
     }
-    if (splittableContains(value, TooltipableElement.class)) {
+    if (splittableComponents.contains(value, Slot.TOOLTIP)) {
       throw new InvalidInputException(
           String.format("Invalid MessageML content at element \"%s\": 'data-target-id' value already existing", key));
     }
@@ -680,11 +766,13 @@ public class MessageMLParser {
    */
   public Optional<Map<String, String>> getSplittableAttributes(String id, Class<? extends SplittableElement> clazz)
       throws InvalidInputException {
-    SplittableData data = splittableComponents.get(id);
-    if (data == null) {
+    Slot slot = Slot.of(clazz);
+    if (!splittableComponents.isCreated(id, slot)) {
       return Optional.empty();
     }
-    return data.getAttributes(clazz);
+    Map<String, String> attributes = new LinkedHashMap<>();
+    splittableComponents.fillAttributes(id, slot, attributes);
+    return Optional.of(attributes);
   }
 
   /**
@@ -693,11 +781,18 @@ public class MessageMLParser {
    */
   public Optional<Map<Class<? extends SplittableElement>, Map<String, String>>> getAllSplittableAttributes(String id)
       throws InvalidInputException {
-    SplittableData data = splittableComponents.get(id);
-    if (data == null) {
+    if (!splittableComponents.contains(id)) {
       return Optional.empty();
     }
-    return Optional.of(data.getAllAttributes());
+    Map<Class<? extends SplittableElement>, Map<String, String>> attributesBySplittable = new LinkedHashMap<>();
+    for (Slot slot : Slot.values()) {
+      if (splittableComponents.isCreated(id, slot)) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        splittableComponents.fillAttributes(id, slot, attributes);
+        attributesBySplittable.put(slot.getSplittable(), attributes);
+      }
+    }
+    return Optional.of(attributesBySplittable);
   }
 
   /**
@@ -706,45 +801,25 @@ public class MessageMLParser {
    */
   public Optional<Map<Class<? extends SplittableElement>, Pair<String, String>>> getAllSplittableValues(String id)
       throws InvalidInputException {
-    SplittableData data = splittableComponents.get(id);
-    if (data == null) {
+    if (!splittableComponents.contains(id)) {
       return Optional.empty();
     }
-    return Optional.of(data.getAllValues());
-  }
-
-  private void createSplittable(String id, Class<? extends SplittableElement> clazz, Pair<String, String> value)
-      throws InvalidInputException {
-    SplittableData data = splittableComponents.get(id);
-    if (data == null) {
-      data = new SplittableData();
-      splittableComponents.put(id, data);
-    }
-    data.create(clazz, value);
-  }
-
-  /**
-   * Add a splittable element value in the map
-   */
-  private void addSplittableData(String id, Class<? extends SplittableElement> clazz, String attributeName,
-      String attributeValue) {
-    SplittableData data = splittableComponents.get(id);
-    if (data == null) {
-      data = new SplittableData();
-      splittableComponents.put(id, data);
+    Map<Class<? extends SplittableElement>, Pair<String, String>> valuesBySplittable = new LinkedHashMap<>();
+    for (Slot slot : Slot.values()) {
+      String value = splittableComponents.getValue(id, slot);
+      if (value != null) {
+        valuesBySplittable.put(slot.getSplittable(), Pair.of(slot.getValueName(), value));
+      }
     }
-    data.addAttribute(clazz, attributeName, attributeValue);
+    return Optional.of(valuesBySplittable);
   }
 
   /**
-   * Checks if the splittable map contains the element
+   * Put the attributes and values of the splittable components corresponding to the id in the map
+   * (used internally during parsing)
    */
-  private boolean splittableContains(String id, Class<? extends SplittableElement> clazz) {
-    SplittableData data = splittableComponents.get(id);
-    if (data != null) {
-      return data.exists(clazz);
-    }
-    return false;
+  public void fillSplittableAttributes(String id, Map<String, String> attributes) {
+    splittableComponents.fillAttributes(id, attributes);
   }
 
   private Element createElementFromInput(org.w3c.dom.Element element, Element parent) throws InvalidInputException {
@@ -780,57 +855,31 @@ public class MessageMLParser {
       return null;
     }
 
+    // the class is split once, entities then take precedence over the other conversions
     String elementClass = element.getAttribute(CLASS_ATTR);
-    if (containsAttribute(elementClass, Entity.PRESENTATIONML_CLASS)) {
-      return createEntity(element, parent);
-    } else if (containsAttribute(elementClass, Card.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, Card.PRESENTATIONML_CLASS);
-      return new Card(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, CardBody.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, CardBody.PRESENTATIONML_CLASS);
-      return new CardBody(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, CardHeader.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, CardHeader.PRESENTATIONML_CLASS);
-      return new CardHeader(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, ExpandableCard.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, ExpandableCard.PRESENTATIONML_CLASS);
-      return new ExpandableCard(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, ExpandableCardBody.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, ExpandableCardBody.PRESENTATIONML_CLASS);
-      return new ExpandableCardBody(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, ExpandableCardHeader.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, ExpandableCardHeader.PRESENTATIONML_CLASS);
-      return new ExpandableCardHeader(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, PersonSelector.MESSAGEML_TAG)) {
-      removeAttribute(element, CLASS_ATTR, PersonSelector.MESSAGEML_TAG);
-      return new PersonSelector(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, RoomSelector.MESSAGEML_TAG)) {
-      removeAttribute(element, CLASS_ATTR, RoomSelector.MESSAGEML_TAG);
-      return new RoomSelector(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, DateSelector.MESSAGEML_TAG)) {
-      removeAttribute(element, CLASS_ATTR, DateSelector.MESSAGEML_TAG);
-      return new DateSelector(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, Checkbox.PRESENTATIONML_DIV_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, Checkbox.PRESENTATIONML_DIV_CLASS);
-      return new Checkbox(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, Radio.PRESENTATIONML_DIV_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, Radio.PRESENTATIONML_DIV_CLASS);
-      return new Radio(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, UIAction.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, UIAction.PRESENTATIONML_CLASS);
-      return new UIAction(parent, FormatEnum.PRESENTATIONML);
-    } else if (containsAttribute(elementClass, TimezonePicker.PRESENTATIONML_CLASS)) {
-      removeAttribute(element, CLASS_ATTR, TimezonePicker.PRESENTATIONML_CLASS);
-      return new TimezonePicker(parent, FormatEnum.PRESENTATIONML);
-    } else {
+    List<String> classes = splitAttribute(elementClass);
+    DivConversion conversion = null;
+    for (String className : classes) {
+      if (Entity.PRESENTATIONML_CLASS.equals(className)) {
+        return createEntity(element, parent);
+      }
+      DivConversion candidate = DIV_CONVERSIONS.get(className);
+      if (candidate != null && (conversion == null || candidate.priority < conversion.priority)) {
+        conversion = candidate;
+      }
+    }
+
+    if (conversion == null) {
       return new Div(parent);
     }
+    removeAttribute(element, CLASS_ATTR, elementClass, classes, conversion.className);
+    return conversion.factory.apply(parent, FormatEnum.PRESENTATIONML);
   }
 
   private Element createEntity(org.w3c.dom.Element element, Element parent) throws InvalidInputException {
     String entityId = element.getAttribute(Entity.ENTITY_ID_ATTR);
     String tag = element.getNodeName();
-    List<JsonNode> entityList = entityJson.findValues(entityId);
+    List<JsonNode> entityList = entityJsonIndex.findValues(entityId);
 
     if (entityList.isEmpty()) {
       throw new InvalidInputException("The attribute \"data-entity-id\" is required");
@@ -864,10 +913,86 @@ public class MessageMLParser {
     }
   }
 
+  /**
+   * Record that the root element of the document tree is being built.
+   * @throws InvalidInputException if the message exceeds the limits of the parser
+   */
+  private void enterRoot(org.w3c.dom.Element element) throws InvalidInputException {
+    limits.checkElements(++elements);
+    limits.checkAttributes(element.getAttributes().getLength());
+  }
+
+  /**
+   * Record that an element of the document tree is being built from the DOM element, one level deeper than its parent.
+   * @throws InvalidInputException if the message exceeds the limits of the parser
+   */
+  public void enterElement(org.w3c.dom.Element element) throws InvalidInputException {
+    limits.checkElements(++elements);
+    limits.checkDepth(++depth);
+    limits.checkAttributes(element.getAttributes().getLength());
+  }
+
+  /**
+   * Record that an element and its children have been built.
+   */
+  public void leaveElement() {
+    depth--;
+  }
+
+  void setLimits(MessageMLLimits limits) {
+    this.limits = limits == null ? MessageMLLimits.NONE : limits;
+  }
+
+  MessageMLLimits getLimits() {
+    return limits;
+  }
+
+  void setPlainTextFastPathEnabled(boolean plainTextFastPathEnabled) {
+    this.plainTextFastPathEnabled = plainTextFastPathEnabled;
+  }
+
+  boolean isPlainTextFastPathEnabled() {
+    return plainTextFastPathEnabled;
+  }
+
+  void setElementFactoryRegistry(ElementFactoryRegistry elementFactories) {
+    if (elementFactories == null) {
+      throw new IllegalArgumentException("The element factory registry cannot be null");
+    }
+    this.elementFactories = elementFactories;
+  }
+
+  ElementFactoryRegistry getElementFactoryRegistry() {
+    return elementFactories;
+  }
+
+  void setStoragePoolEnabled(boolean storagePoolEnabled) {
+    this.storagePool = storagePoolEnabled ? new ElementStoragePool() : null;
+  }
+
+  boolean isStoragePoolEnabled() {
+    return storagePool != null;
+  }
+
+  void setPresentationMLSigner(PresentationMLSigner presentationMLSigner) {
+    this.presentationMLSigner = presentationMLSigner;
+  }
+
+  /**
+   * Whether the message being parsed, or last parsed, is signed PresentationML whose elements are not validated.
+   */
+  public boolean isTrustedPresentationML() {
+    return trustedPresentationML;
+  }
+
   public FormatEnum getMessageFormat() {
     return messageFormat;
   }
 
+  public IDataProvider getDataProvider() {
+    return dataProvider;
+  }
+
   public BiContext getBiContext() {
     return this.biContext;
   }
@@ -876,55 +1001,22 @@ public class MessageMLParser {
     this.biContext = new BiContext();
   }
 
+  private static void addDivConversion(String className, BiFunction<Element, FormatEnum, Element> factory) {
+    DIV_CONVERSIONS.putIfAbsent(className, new DivConversion(className, DIV_CONVERSIONS.size(), factory));
+  }
+
   /**
-   * Internal class for storing data about splittable elements during parse
+   * Conversion of a PresentationML div with a given class to a MessageML element, the class being removed.
    */
-  static final class SplittableData {
-
-    private final Map<Class<? extends SplittableElement>, Pair<String, String>> valuesBySplittable =
-        new LinkedHashMap<>();
-    private final Map<Class<? extends SplittableElement>, Map<String, String>> attributesBySplittable =
-        new LinkedHashMap<>();
-
-    public void create(Class<? extends SplittableElement> splittable, Pair<String, String> value)
-        throws InvalidInputException {
-      if (valuesBySplittable.containsKey(splittable)) {
-        throw new InvalidInputException(
-            "Invalid MessageML content, multiple splittable elements with the same id created");
-      }
-      if (value != null) {
-        valuesBySplittable.put(splittable, value);
-      }
-      attributesBySplittable.put(splittable, new LinkedHashMap<>());
-    }
-
-    public boolean exists(Class<? extends SplittableElement> splittable) {
-      return valuesBySplittable.containsKey(splittable);
-    }
-
-    public Map<Class<? extends SplittableElement>, Pair<String, String>> getAllValues() {
-      return new LinkedHashMap<>(valuesBySplittable);
-    }
-
-    public void addAttribute(Class<? extends SplittableElement> splittable, String attributeName,
-        String attributeValue) {
-      Map<String, String> attributes = attributesBySplittable.get(splittable);
-      if (attributes == null) {
-        throw new UnsupportedOperationException("Create new SplittableData before adding attributes");
-      }
-      attributes.put(attributeName, attributeValue);
-    }
-
-    public Optional<Map<String, String>> getAttributes(Class<? extends SplittableElement> splittable) {
-      Map<String, String> attributes = attributesBySplittable.get(splittable);
-      if (attributes == null) {
-        return Optional.empty();
-      }
-      return Optional.of(new LinkedHashMap<>(attributes));
-    }
-
-    public Map<Class<? extends SplittableElement>, Map<String, String>> getAllAttributes() {
-      return new LinkedHashMap<>(attributesBySplittable);
+  private static final class DivConversion {
+    private final String className;
+    private final int priority;
+    private final BiFunction<Element, FormatEnum, Element> factory;
+
+    private DivConversion(String className, int priority, BiFunction<Element, FormatEnum, Element> factory) {
+      this.className = className;
+      this.priority = priority;
+      this.factory = factory;
     }
   }
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Entity;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+
+/**
+ * What the stages of parsing need to know about the text of a message before parsing it, found in a single pass over
+ * its characters: its size in UTF-8, whether it is plain text, whether it has control characters, Freemarker tags or
+ * entity ids, and where the start tag of its root element ends.
+ */
+final class MessageScan {
+  static final String PLAIN_TEXT_START = "<" + MessageML.MESSAGEML_TAG + ">";
+  static final String PLAIN_TEXT_END = "</" + MessageML.MESSAGEML_TAG + ">";
+
+  // where the scanner is in the markup
+  private static final int TEXT = 0;
+  private static final int START_TAG = 1;
+  // end tags and declarations, up to the next '>'
+  private static final int END_TAG = 2;
+  private static final int COMMENT = 3;
+  private static final int CHARACTER_DATA = 4;
+  private static final int PROCESSING_INSTRUCTION = 5;
+
+  private final long bytes;
+  private final boolean plainText;
+  private final boolean controlCharacters;
+  private final boolean freemarkerTags;
+  private final boolean entityIds;
+  private final int rootStartTagEnd;
+
+  private MessageScan(long bytes, boolean plainText, boolean controlCharacters, boolean freemarkerTags,
+      boolean entityIds, int rootStartTagEnd) {
+    this.bytes = bytes;
+    this.plainText = plainText;
+    this.controlCharacters = controlCharacters;
+    this.freemarkerTags = freemarkerTags;
+    this.entityIds = entityIds;
+    this.rootStartTagEnd = rootStartTagEnd;
+  }
+
+  static MessageScan of(String message) {
+    int length = message.length();
+    // the text between the start and end tags of a plain text message
+    int textStart = PLAIN_TEXT_START.length();
+    int textEnd = length - PLAIN_TEXT_END.length();
+
+    long bytes = 0;
+    boolean plainText = textEnd >= textStart && message.startsWith(PLAIN_TEXT_START)
+        && message.endsWith(PLAIN_TEXT_END);
+    boolean controlCharacters = false;
+    boolean freemarkerTags = false;
+    boolean entityIds = false;
+    int rootStartTagEnd = -1;
+    boolean rootStartTag = false;
+
+    int state = TEXT;
+    int markupStart = 0;
+    char quote = 0;
+    char previous = 0;
+    for (int i = 0; i < length; i++) {
+      char c = message.charAt(i);
+      // a surrogate pair is encoded in 4 bytes
+      bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+      if (plainText && i >= textStart && i < textEnd) {
+        plainText = isPlainText(message, i, c, previous, textStart);
+      }
+      if (c < ' ') {
+        controlCharacters |= c != '\n' && c != '\r' && c != '\t';
+      } else if (c == '{') {
+        // Based https://freemarker.apache.org/docs/dgui_template_directives.html
+        // We consider that directives cannot be customized (to use [ or without #)
+        freemarkerTags |= previous == '$' || previous == '#';
+      } else if (c == '#' || c == '@') {
+        freemarkerTags |= previous == '<';
+      } else if (c == 'd' && !entityIds) {
+        entityIds = message.startsWith(Entity.ENTITY_ID_ATTR, i);
+      }
+      previous = c;
+
+      switch (state) {
+        case TEXT:
+          if (c == '<' && i + 1 < length) {
+            markupStart = i;
+            state = markupAt(message, i);
+            if (state == START_TAG) {
+              rootStartTag = rootStartTagEnd < 0;
+              quote = 0;
+            }
+          }
+          break;
+        case START_TAG:
+          // the end of the tag is the first '>' outside of the quoted values
+          if (quote != 0) {
+            if (c == quote) {
+              quote = 0;
+            }
+          } else if (c == '"' || c == '\'') {
+            quote = c;
+          } else if (c == '>') {
+            if (rootStartTag) {
+              rootStartTagEnd = i + 1;
+              rootStartTag = false;
+            }
+            state = TEXT;
+          }
+          break;
+        case END_TAG:
+          if (c == '>') {
+            state = TEXT;
+          }
+          break;
+        case COMMENT:
+          if (c == '>' && i >= markupStart + 6 && message.startsWith("--", i - 2)) {
+            state = TEXT;
+          }
+          break;
+        case CHARACTER_DATA:
+          if (c == '>' && i >= markupStart + 11 && message.startsWith("]]", i - 2)) {
+            state = TEXT;
+          }
+          break;
+        default:
+          if (c == '>' && i >= markupStart + 3 && message.charAt(i - 1) == '?') {
+            state = TEXT;
+          }
+      }
+    }
+    return new MessageScan(bytes, plainText, controlCharacters, freemarkerTags, entityIds, rootStartTagEnd);
+  }
+
+  /**
+   * Whether the character of the text of a plain text message needs neither template expansion nor XML decoding.
+   */
+  private static boolean isPlainText(String message, int i, char c, char previous, int textStart) {
+    return (c >= ' ' || c == '\n' || c == '\t') && c != '<' && c != '&' && !Character.isSurrogate(c)
+        && c != '\uFFFE' && c != '\uFFFF'
+        && !(c == '{' && (previous == '$' || previous == '#'))
+        && !(c == '>' && i >= textStart + 2 && message.startsWith("]]", i - 2));
+  }
+
+  private static int markupAt(String message, int i) {
+    char next = message.charAt(i + 1);
+    if (message.startsWith("<!--", i)) {
+      return COMMENT;
+    } else if (message.startsWith("<![CDATA[", i)) {
+      return CHARACTER_DATA;
+    } else if (next == '?') {
+      return PROCESSING_INSTRUCTION;
+    } else if (next == '!' || next == '/') {
+      return END_TAG;
+    }
+    return START_TAG;
+  }
+
+  /**
+   * The size of the message encoded in UTF-8.
+   */
+  long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Whether the message is made of a MessageML root element containing only text which needs neither template
+   * expansion nor XML decoding.
+   */
+  boolean isPlainText() {
+    return plainText;
+  }
+
+  /**
+   * Whether the message has control characters other than newlines and tabulations, which are not allowed.
+   */
+  boolean hasControlCharacters() {
+    return controlCharacters;
+  }
+
+  /**
+   * Whether the message may have Freemarker directives or interpolations to expand.
+   */
+  boolean hasFreemarkerTags() {
+    return freemarkerTags;
+  }
+
+  /**
+   * Whether the message may have <i>data-entity-id</i> attributes.
+   */
+  boolean hasEntityIds() {
+    return entityIds;
+  }
+
+  /**
+   * The index following the start tag of the root element, or -1 if the message has no complete start tag.
+   */
+  int getRootStartTagEnd() {
+    return rootStartTagEnd;
+  }
+}
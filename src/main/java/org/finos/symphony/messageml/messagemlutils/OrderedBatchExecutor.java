@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Runs the conversions of a batch of inputs on an executor and hands their results to a sink, in the order of the
+ * inputs, on the calling thread.
+ * <p>
+ * At most a given number of conversions are in flight: inputs are only pulled from the batch when the result of the
+ * oldest conversion has been handed to the sink, so that a slow sink or a large batch never queues more work than the
+ * executor can handle.
+ */
+final class OrderedBatchExecutor {
+  private final Executor executor;
+  private final int maxInFlight;
+
+  /**
+   * Conversion of an input of the batch, given with its position in the batch.
+   */
+  interface Conversion<I, R> {
+    R convert(long index, I input);
+  }
+
+  OrderedBatchExecutor(Executor executor, int maxInFlight) {
+    if (executor == null) {
+      throw new IllegalArgumentException("The executor cannot be null");
+    }
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("The maximum number of conversions in flight must be positive");
+    }
+    this.executor = executor;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Convert all the inputs, waiting for the last result to be handed to the sink.
+   * @throws InterruptedException thrown if the calling thread is interrupted while waiting for a result, in which
+   * case the conversions not started yet are cancelled
+   */
+  <I, R> void run(Iterator<I> inputs, Conversion<? super I, ? extends R> conversion, Consumer<? super R> sink)
+      throws InterruptedException {
+    Deque<CompletableFuture<? extends R>> inFlight = new ArrayDeque<>(maxInFlight);
+    long index = 0;
+    try {
+      while (inputs.hasNext()) {
+        if (inFlight.size() == maxInFlight) {
+          sink.accept(await(inFlight.removeFirst()));
+        }
+        I input = inputs.next();
+        long inputIndex = index++;
+        inFlight.addLast(CompletableFuture.supplyAsync(() -> conversion.convert(inputIndex, input), executor));
+      }
+      while (!inFlight.isEmpty()) {
+        sink.accept(await(inFlight.removeFirst()));
+      }
+    } finally {
+      for (CompletableFuture<? extends R> future : inFlight) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  private static <R> R await(CompletableFuture<R> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      // conversions report their own errors in their results, anything else is unexpected
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.elements.LabelableElement;
+import org.finos.symphony.messageml.messagemlutils.elements.SplittableElement;
+import org.finos.symphony.messageml.messagemlutils.elements.TooltipableElement;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+
+import java.util.Map;
+
+/**
+ * Components of the splittable elements found while parsing PresentationML (labels and tooltips), by id of the
+ * element they belong to, to be put back as attributes of the element once it is built.
+ * <p>
+ * The components of an id are kept in a single array with one cell per value and attribute of each {@link Slot}, and
+ * the arrays are stored by id in an open-addressing table, as forms may have hundreds of labelled fields.
+ */
+final class SplittableComponents {
+  private static final int INITIAL_CAPACITY = 8;
+
+  // the table is only allocated for messages with splittable elements
+  private String[] ids = new String[0];
+  private String[][] cells = new String[0][];
+  private int[] created = new int[0];
+  private int size;
+
+  /**
+   * The kinds of splittable components, with the attributes they give to their element.
+   */
+  enum Slot {
+    LABEL(LabelableElement.class, LabelableElement.LABEL),
+    TOOLTIP(TooltipableElement.class, null, TooltipableElement.TITLE);
+
+    private static final Slot[] SLOTS = values();
+    private static final int CELL_COUNT;
+
+    static {
+      int offset = 0;
+      for (Slot slot : SLOTS) {
+        slot.offset = offset;
+        offset += 1 + slot.attributeNames.length;
+      }
+      CELL_COUNT = offset;
+    }
+
+    private final Class<? extends SplittableElement> splittable;
+    private final String valueName;
+    private final String[] attributeNames;
+    private int offset;
+
+    Slot(Class<? extends SplittableElement> splittable, String valueName, String... attributeNames) {
+      this.splittable = splittable;
+      this.valueName = valueName;
+      this.attributeNames = attributeNames;
+    }
+
+    Class<? extends SplittableElement> getSplittable() {
+      return splittable;
+    }
+
+    String getValueName() {
+      return valueName;
+    }
+
+    static Slot of(Class<? extends SplittableElement> splittable) {
+      for (Slot slot : SLOTS) {
+        if (slot.splittable == splittable) {
+          return slot;
+        }
+      }
+      throw new IllegalArgumentException("Unknown splittable element " + splittable.getName());
+    }
+
+    private int attributeCell(String attributeName) {
+      for (int i = 0; i < attributeNames.length; i++) {
+        if (attributeNames[i].equals(attributeName)) {
+          return offset + 1 + i;
+        }
+      }
+      throw new IllegalArgumentException("Unknown attribute " + attributeName + " of " + this);
+    }
+  }
+
+  /**
+   * Create the component of an element, with its value if any.
+   * @throws InvalidInputException thrown if the element already has a component with a value in the slot
+   */
+  void create(String id, Slot slot, String value) throws InvalidInputException {
+    int index = indexOf(id, true);
+    String[] values = cells[index];
+    if (values[slot.offset] != null) {
+      throw new InvalidInputException(
+          "Invalid MessageML content, multiple splittable elements with the same id created");
+    }
+
+    values[slot.offset] = slot.valueName == null ? null : value;
+    for (int i = 1; i <= slot.attributeNames.length; i++) {
+      values[slot.offset + i] = null;
+    }
+    created[index] |= 1 << slot.ordinal();
+  }
+
+  /**
+   * Set an attribute of a component created beforehand.
+   */
+  void addAttribute(String id, Slot slot, String attributeName, String attributeValue) {
+    int index = indexOf(id, false);
+    if (index < 0 || (created[index] & 1 << slot.ordinal()) == 0) {
+      throw new UnsupportedOperationException("Create new SplittableData before adding attributes");
+    }
+    cells[index][slot.attributeCell(attributeName)] = attributeValue;
+  }
+
+  /**
+   * Whether the element has a component with a value in the slot.
+   */
+  boolean contains(String id, Slot slot) {
+    int index = indexOf(id, false);
+    return index >= 0 && cells[index][slot.offset] != null;
+  }
+
+  /**
+   * Whether the element has a component in the slot.
+   */
+  boolean isCreated(String id, Slot slot) {
+    int index = indexOf(id, false);
+    return index >= 0 && (created[index] & 1 << slot.ordinal()) != 0;
+  }
+
+  /**
+   * Whether the element has any component.
+   */
+  boolean contains(String id) {
+    return indexOf(id, false) >= 0;
+  }
+
+  /**
+   * Put the attributes of the components of an element in the map, followed by their values.
+   */
+  void fillAttributes(String id, Map<String, String> attributes) {
+    int index = indexOf(id, false);
+    if (index < 0) {
+      return;
+    }
+
+    String[] values = cells[index];
+    for (Slot slot : Slot.SLOTS) {
+      for (int i = 0; i < slot.attributeNames.length; i++) {
+        String value = values[slot.offset + 1 + i];
+        if (value != null) {
+          attributes.put(slot.attributeNames[i], value);
+        }
+      }
+    }
+    for (Slot slot : Slot.SLOTS) {
+      if (values[slot.offset] != null) {
+        attributes.put(slot.valueName, values[slot.offset]);
+      }
+    }
+  }
+
+  /**
+   * Put the attributes of the component of an element in the map.
+   */
+  void fillAttributes(String id, Slot slot, Map<String, String> attributes) {
+    int index = indexOf(id, false);
+    if (index < 0) {
+      return;
+    }
+    for (int i = 0; i < slot.attributeNames.length; i++) {
+      String value = cells[index][slot.offset + 1 + i];
+      if (value != null) {
+        attributes.put(slot.attributeNames[i], value);
+      }
+    }
+  }
+
+  /**
+   * Get the value of the component of an element, or null.
+   */
+  String getValue(String id, Slot slot) {
+    int index = indexOf(id, false);
+    return index < 0 ? null : cells[index][slot.offset];
+  }
+
+  /**
+   * Find the index of the id in the table with linear probing, adding it if requested.
+   * @return the index, or -1 if the id is not in the table and not added
+   */
+  private int indexOf(String id, boolean add) {
+    if (ids.length == 0) {
+      if (!add) {
+        return -1;
+      }
+      grow();
+    }
+
+    int mask = ids.length - 1;
+    int index = mix(id.hashCode()) & mask;
+    while (ids[index] != null) {
+      if (ids[index].equals(id)) {
+        return index;
+      }
+      index = (index + 1) & mask;
+    }
+    if (!add) {
+      return -1;
+    }
+
+    if (2 * (size + 1) > ids.length) {
+      grow();
+      return indexOf(id, true);
+    }
+    ids[index] = id;
+    cells[index] = new String[Slot.CELL_COUNT];
+    size++;
+    return index;
+  }
+
+  private void grow() {
+    String[] oldIds = ids;
+    String[][] oldCells = cells;
+    int[] oldCreated = created;
+    ids = new String[Math.max(INITIAL_CAPACITY, oldIds.length * 2)];
+    cells = new String[ids.length][];
+    created = new int[ids.length];
+
+    int mask = ids.length - 1;
+    for (int i = 0; i < oldIds.length; i++) {
+      if (oldIds[i] != null) {
+        int index = mix(oldIds[i].hashCode()) & mask;
+        while (ids[index] != null) {
+          index = (index + 1) & mask;
+        }
+        ids[index] = oldIds[i];
+        cells[index] = oldCells[i];
+        created[index] = oldCreated[i];
+      }
+    }
+  }
+
+  private static int mix(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -44,4 +44,9 @@ public class Bold extends Element {
     assertPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
 }
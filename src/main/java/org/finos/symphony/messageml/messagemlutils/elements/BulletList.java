@@ -51,6 +51,11 @@ public class BulletList extends Element {
     assertContainsChildOfType(Collections.<Class<? extends Element>>singleton(ListItem.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
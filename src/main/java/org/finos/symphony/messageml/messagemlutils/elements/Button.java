@@ -107,11 +107,16 @@ public class Button extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     out.openElement(getPresentationMLTag(), getPresentationMLAttributes());
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
     out.closeElement();
   }
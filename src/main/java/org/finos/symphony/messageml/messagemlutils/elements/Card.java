@@ -64,6 +64,11 @@ public class Card extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, String> presentationAttrs = new LinkedHashMap<>();
@@ -82,7 +87,7 @@ public class Card extends Element {
     out.openElement(PRESENTATIONML_TAG, presentationAttrs);
 
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
 
     out.closeElement();
@@ -47,13 +47,18 @@ public class CardHeader extends Element {
     throwInvalidInputException(item);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
     out.openElement(PRESENTATIONML_TAG, Collections.singletonMap(CLASS_ATTR, PRESENTATIONML_CLASS));
 
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
 
     out.closeElement();
@@ -70,6 +75,11 @@ public class CardHeader extends Element {
     assertParent(Collections.singleton(Card.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public String getPresentationMLTag() {
     return PRESENTATIONML_TAG;
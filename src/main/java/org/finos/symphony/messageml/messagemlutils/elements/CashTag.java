@@ -53,6 +53,11 @@ public class CashTag extends Keyword {
     this.tag = value;
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "$" + getTag();
@@ -64,6 +64,11 @@ public class Chime extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -71,6 +76,11 @@ public class Chime extends Element {
         ATTR_AUTOPLAY, "true");
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "";
@@ -70,6 +70,11 @@ public class Code extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     final Map<String, Object> attrs = new HashMap<>();
@@ -85,7 +90,7 @@ public class Code extends Element {
     out.openElement(MESSAGEML_TAG, attrs);
 
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
 
     out.closeElement();
@@ -121,6 +126,11 @@ public class Code extends Element {
     assertPreformattedOrPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public String getPresentationMLTag() {
     return super.getPresentationMLTag();
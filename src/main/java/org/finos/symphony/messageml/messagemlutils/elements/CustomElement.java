@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import org.finos.symphony.messageml.messagemlutils.MessageMLParser;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+
+/**
+ * Base class of the elements of custom tags, created by the
+ * {@link org.finos.symphony.messageml.messagemlutils.ElementFactory} registered for the tag in an
+ * {@link org.finos.symphony.messageml.messagemlutils.ElementFactoryRegistry}.
+ * <p>
+ * A custom element is translated to PresentationML as its {@link #getPresentationMLTag()}, with its attributes and
+ * children. Besides "class" and "style", it only accepts the attributes allowed by {@link #isAllowedAttribute(String)},
+ * and checks its contents in {@link #validateContent()}.
+ */
+public abstract class CustomElement extends Element {
+
+  protected CustomElement(Element parent, String messageMLTag) {
+    super(parent, messageMLTag);
+  }
+
+  /**
+   * Return true if the element accepts the attribute, kept as is. By default custom elements accept no attribute
+   * other than "class" and "style".
+   */
+  protected boolean isAllowedAttribute(String name) {
+    return false;
+  }
+
+  /**
+   * Check the syntax and contents of the element, once its attributes and children are built.
+   * @throws InvalidInputException thrown if the element is not valid
+   */
+  protected void validateContent() throws InvalidInputException {
+  }
+
+  /**
+   * Custom elements may override {@link #buildAll} outside of this package, so it is always called.
+   */
+  @Override
+  final boolean overridesBuildAll() {
+    return true;
+  }
+
+  /**
+   * Custom elements may override {@link #asText()} outside of this package, so it is always called.
+   */
+  @Override
+  final boolean overridesAsText() {
+    return true;
+  }
+
+  @Override
+  final void buildAttribute(MessageMLParser parser, org.w3c.dom.Node item) throws InvalidInputException {
+    if (isAllowedAttribute(item.getNodeName())) {
+      getAttributes().put(item.getNodeName(), getStringAttribute(item));
+    } else {
+      super.buildAttribute(parser, item);
+    }
+  }
+
+  @Override
+  final void validate() throws InvalidInputException {
+    super.validate();
+    validateContent();
+  }
+}
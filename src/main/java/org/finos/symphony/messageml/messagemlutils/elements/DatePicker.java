@@ -139,6 +139,11 @@ public class DatePicker extends FormElement implements LabelableElement, Tooltip
     assertAttributeMaxLength(LABEL, DEFAULT_MAX_LENGTH);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, Object> presentationAttrs = buildDataPickerInputAttributes();
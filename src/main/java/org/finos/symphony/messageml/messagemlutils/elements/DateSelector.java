@@ -41,6 +41,11 @@ public class DateSelector extends FormElement {
     super(parent, MESSAGEML_TAG, messageFormat);
   }
 
+  @Override
+  boolean overridesBuildAll() {
+    return true;
+  }
+
   @Override
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element) throws InvalidInputException, ProcessingException {
     switch (getFormat()) {
@@ -69,6 +74,11 @@ public class DateSelector extends FormElement {
     assertNoContent();
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -112,6 +112,11 @@ public class DateTime extends Entity {
   }
 
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, String> attributes = new HashMap<>();
@@ -92,11 +92,16 @@ public class Dialog extends Element {
     validateChildrenTypes();
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     out.openElement(getPresentationMLTag(), getPresentationMLAttributes());
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
     out.closeElement();
   }
@@ -99,6 +99,11 @@ public class Div extends Element {
     verifyClassSpecificAttribute(ATTR_DATA_VARIANT, classes, ExpandableCardBody.PRESENTATIONML_CLASS);
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   private void verifyClassSpecificAttribute(String attr, String[] classes, String element)
       throws InvalidInputException {
     if (getAttribute(attr) != null) {
@@ -32,6 +32,8 @@ import org.finos.symphony.messageml.messagemlutils.bi.BiContext;
 import org.finos.symphony.messageml.messagemlutils.bi.BiFields;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
 import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingException;
+import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownRenderer;
+import org.finos.symphony.messageml.messagemlutils.util.TextContent;
 import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.NodeList;
@@ -43,16 +45,17 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -90,10 +93,37 @@ public abstract class Element {
   }};
 
   protected FormatEnum format;
-  private final Map<String, String> attributes = new LinkedHashMap<>();
-  private final List<Element> children = new ArrayList<>();
+  private final Map<String, String> attributes;
+  // shared empty list until the first child is added, as most elements are leaves
+  private List<Element> children = Collections.emptyList();
   private final Element parent;
+  private final Element root;
+  // index of the tree, only kept by its root
+  private final ElementIndex index;
+  private final int ordinal;
+  private final int ancestorTypes;
+  // true if the storage of the element comes from a pool, which may release it
+  private final boolean pooled;
+  private boolean indexed;
+  // number of descendants of each of the COUNTED_TYPES, null until counted and once the subtree changes
+  private int[] descendantCounts;
   private final String messageMLTag;
+  private String presentationMLFragment;
+  private TextContent presentationMLFragmentText;
+  private boolean presentationMLFragmentRemoveNl;
+  private Boolean renderCacheable;
+  // number of changes made to the tree, only kept by its root
+  private int revision;
+
+  // element types counted in the subtree of each element as children are attached, action buttons are counted last
+  private static final List<Class<? extends Element>> COUNTED_TYPES =
+      Arrays.asList(Checkbox.class, Radio.class, TableRow.class, TableCell.class, Option.class);
+  private static final int ACTION_BUTTON_COUNT = COUNTED_TYPES.size();
+  // counts shared by the elements without counted descendants, never modified
+  private static final int[] NO_COUNTS = new int[COUNTED_TYPES.size() + 1];
+
+  // element types checked as ancestors by validation, tracked with a bit per type
+  private static final List<Class<? extends Element>> TRACKED_ANCESTOR_TYPES = Arrays.asList(Form.class, UIAction.class);
 
   private static final Set<String> VALID_BOOLEAN_VALUES = new HashSet<>(Arrays.asList("true", "false"));
   public static final ObjectMapper MAPPER = new ObjectMapper();
@@ -107,9 +137,29 @@ public abstract class Element {
   }
 
   Element(Element parent, String messageMLTag, FormatEnum format) {
+    this(parent, messageMLTag, format, null);
+  }
+
+  /**
+   * @param storagePool the pool providing the storage of the elements of the tree, only given to its root
+   */
+  Element(Element parent, String messageMLTag, FormatEnum format, ElementStoragePool storagePool) {
     this.messageMLTag = messageMLTag;
     this.parent = parent;
     this.format = format;
+    if (parent == null) {
+      this.root = this;
+      this.index = new ElementIndex(storagePool);
+      this.ordinal = 0;
+      this.ancestorTypes = 0;
+    } else {
+      this.root = parent.root;
+      this.index = null;
+      this.ordinal = root.index.nextOrdinal();
+      this.ancestorTypes = parent.ancestorTypes | typeBit(TRACKED_ANCESTOR_TYPES, parent.getClass());
+    }
+    this.pooled = root.index.getStoragePool() != null;
+    this.attributes = new ElementAttributes(this, root.index.getStoragePool());
   }
 
   /**
@@ -122,21 +172,32 @@ public abstract class Element {
   }
 
   /**
-   * Process a DOM element, descending into its children, and construct the output MessageML tree.
+   * Process a DOM element, descending into its children, and construct the output MessageML tree. Elements overriding
+   * this method must also override {@link #overridesBuildAll()}.
    */
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element) throws InvalidInputException,
       ProcessingException {
+    buildAttributes(parser, element);
+    buildNodes(parser, element.getFirstChild(), false);
+    completeBuild(parser);
+  }
+
+  /**
+   * Return true if the element overrides {@link #buildAll}, in which case the tree is built by calling it. Otherwise
+   * the attributes and children of the element are built by the traversal of the document.
+   */
+  boolean overridesBuildAll() {
+    return false;
+  }
+
+  private void buildAttributes(MessageMLParser parser, org.w3c.dom.Element element) throws InvalidInputException {
     NamedNodeMap attr = element.getAttributes();
     for (int i = 0; i < attr.getLength(); i++) {
       buildAttribute(parser, attr.item(i));
     }
+  }
 
-    NodeList children = element.getChildNodes();
-
-    for (int i = 0; i < children.getLength(); i++) {
-      buildNode(parser, children.item(i));
-    }
-
+  private void completeBuild(MessageMLParser parser) {
     if (!MessageML.MESSAGEML_TAG.equals(getMessageMLTag())) {
       updateBiContext(parser.getBiContext());
     }
@@ -263,52 +324,85 @@ public abstract class Element {
    */
   protected void buildNode(MessageMLParser context, org.w3c.dom.Node node)
       throws InvalidInputException, ProcessingException {
-    switch (node.getNodeType()) {
-      case org.w3c.dom.Node.TEXT_NODE:
-        buildText((Text) node);
-        break;
-
-      case org.w3c.dom.Node.ELEMENT_NODE:
-        buildElement(context, (org.w3c.dom.Element) node);
-        break;
+    buildNodes(context, node, true);
+  }
 
-      default:
-        throw new InvalidInputException("Invalid element \"" + node.getNodeName() + "\"");
+  /**
+   * Build the MessageML subtrees of a DOM node, or of the node and its following siblings, with an explicit stack
+   * instead of recursion. Elements overriding {@link #buildAll} are built by their override, the rest of the tree
+   * is built here without growing the call stack, whatever the nesting depth of the message.
+   */
+  private void buildNodes(MessageMLParser context, org.w3c.dom.Node first, boolean single)
+      throws InvalidInputException, ProcessingException {
+    Deque<BuildFrame> stack = new ArrayDeque<>();
+    stack.push(new BuildFrame(this, first, single, false));
 
+    while (!stack.isEmpty()) {
+      BuildFrame frame = stack.peek();
+      org.w3c.dom.Node node = frame.next;
+
+      if (node == null) {
+        stack.pop();
+        if (frame.owned) {
+          frame.element.completeBuild(context);
+          context.leaveElement();
+          stack.peek().element.addBuiltChild(context, frame.element);
+        }
+        continue;
+      }
+      frame.next = frame.single ? null : node.getNextSibling();
+
+      switch (node.getNodeType()) {
+        case org.w3c.dom.Node.TEXT_NODE:
+          frame.element.buildText((Text) node);
+          break;
+
+        case org.w3c.dom.Node.ELEMENT_NODE:
+          org.w3c.dom.Element element = (org.w3c.dom.Element) node;
+          Element child = context.createElement(element, frame.element);
+          if (child != null) {
+            context.enterElement(element);
+            if (!child.overridesBuildAll()) {
+              child.buildAttributes(context, element);
+              stack.push(new BuildFrame(child, element.getFirstChild(), false, true));
+            } else {
+              child.buildAll(context, element);
+              context.leaveElement();
+              frame.element.addBuiltChild(context, child);
+            }
+          } else if (element.getNodeName().equals(Div.MESSAGEML_TAG)) {
+            /*
+            When converting from PresentationML -> MessageML tree object some elements are not converted
+            like the div generated by SplittableElement (context.createElement(element, this) returns null).
+            However, children of this div must not be lost and they must be attached to the current element
+             */
+            stack.push(new BuildFrame(frame.element, element.getFirstChild(), false, false));
+          }
+          break;
+
+        default:
+          throw new InvalidInputException("Invalid element \"" + node.getNodeName() + "\"");
+      }
     }
   }
 
   /**
-   * Build a MessageML element based on the provided DOM element and descend into its children.
+   * Validate a child element once it has been built with its own children and attach it to this element.
    */
-  private void buildElement(MessageMLParser context, org.w3c.dom.Element element) throws InvalidInputException,
-      ProcessingException {
-    Element child = context.createElement(element, this);
-    if (child != null) {
-      child.buildAll(context, element);
-      try {
+  private void addBuiltChild(MessageMLParser context, Element child) throws InvalidInputException {
+    try {
+      if (!context.isTrustedPresentationML() || !child.isValidationSkippedWhenTrusted()) {
         child.validate();
-      } catch (InvalidInputException e) {
-        context.clearBiContext();
-        throw e;
-      }
-      if (child.hasIdAttribute()) {
-        context.loadElementId(child.getAttribute(ID_ATTR));
-      }
-
-      addChild(child);
-    } else if (element.getNodeName().equals(Div.MESSAGEML_TAG)) {
-      /*
-      When converting from PresentationML -> MessageML tree object some elements are not converted
-      like the div generated by SplittableElement (context.createElement(element, this) returns null).
-      However, children of this div must not be lost and they must be attached to the current element
-       */
-      org.w3c.dom.Node node = element.getFirstChild();
-      while (node != null) {
-        buildNode(context, node);
-        node = node.getNextSibling();
       }
+    } catch (InvalidInputException e) {
+      context.clearBiContext();
+      throw e;
+    }
+    if (child.hasIdAttribute()) {
+      context.loadElementId(child.getAttribute(ID_ATTR));
     }
+
+    addChild(child);
   }
 
   /**
@@ -322,38 +416,166 @@ public abstract class Element {
    * Traverse the element and its children to construct its representation as a Markdown tree.
    */
   void buildMarkdown(Node parent) throws InvalidInputException {
-    for (Element child : this.children) {
-      Node node = child.asMarkdown();
-
-      if (node != null) {
-        try {
-          parent.appendChild(node);
-        } catch (IllegalArgumentException ex) {
-          // minor issue that appears while parsing Markdown, this fix does not impact Markdown generation
-          logger.trace("{} cannot be appended to {}", node, parent, ex);
+    buildMarkdownAndEntityJson(parent, null);
+  }
+
+  /**
+   * Traverse the element and its children to construct its representation as EntityJSON nodes.
+   */
+  void buildEntityJson(ObjectNode parent) {
+    Deque<TraversalFrame> stack = new ArrayDeque<>();
+    pushChildren(stack, null, parent);
+
+    while (!stack.isEmpty()) {
+      TraversalFrame frame = stack.pop();
+      ObjectNode node = frame.element.asEntityJson(frame.entityJsonParent);
+
+      frame.element.pushChildren(stack, null, node != null ? node : frame.entityJsonParent);
+    }
+  }
+
+  /**
+   * Traverse the element and its children once to construct both its representation as a Markdown tree and as
+   * EntityJSON nodes. Either parent can be null to skip the respective representation.
+   */
+  void buildMarkdownAndEntityJson(Node markdownParent, ObjectNode entityJsonParent) throws InvalidInputException {
+    Deque<TraversalFrame> stack = new ArrayDeque<>();
+    pushChildren(stack, markdownParent, entityJsonParent);
+
+    while (!stack.isEmpty()) {
+      TraversalFrame frame = stack.pop();
+      Element child = frame.element;
+
+      Node node = frame.markdownParent;
+      if (frame.markdownParent != null) {
+        node = markdownOf(child);
+
+        if (node != null) {
+          try {
+            frame.markdownParent.appendChild(node);
+          } catch (IllegalArgumentException ex) {
+            // minor issue that appears while parsing Markdown, this fix does not impact Markdown generation
+            logger.trace("{} cannot be appended to {}", node, frame.markdownParent, ex);
+          }
+        } else {
+          node = frame.markdownParent;
         }
-      } else {
-        node = parent;
       }
-      child.buildMarkdown(node);
+
+      ObjectNode entityJsonNode = frame.entityJsonParent;
+      if (frame.entityJsonParent != null) {
+        entityJsonNode = child.asEntityJson(frame.entityJsonParent);
+
+        if (entityJsonNode == null) {
+          entityJsonNode = frame.entityJsonParent;
+        }
+      }
+
+      child.pushChildren(stack, node, entityJsonNode);
     }
   }
 
   /**
-   * Traverse the element and its children to construct its representation as EntityJSON nodes.
+   * Traverse the children of the element once to produce any of their representations: their PresentationML is printed
+   * to the stream, their Markdown is streamed to the renderer and their EntityJSON nodes are added to the parent. Each
+   * representation is skipped when its target is null.
    */
-  void buildEntityJson(ObjectNode parent) {
-    for (Element child : this.children) {
-      ObjectNode node = child.asEntityJson(parent);
+  void renderChildren(XmlPrintStream out, MessageMLContext context, MarkdownRenderer renderer,
+      ObjectNode entityJsonParent) throws InvalidInputException {
+    Deque<RenderFrame> stack = new ArrayDeque<>();
+    stack.push(new RenderFrame(this, out != null, 0, false, entityJsonParent));
+    render(stack, out, context, renderer);
+  }
 
-      if (node != null) {
-        child.buildEntityJson(node);
-      } else {
-        child.buildEntityJson(parent);
+  private static void render(Deque<RenderFrame> stack, XmlPrintStream out, MessageMLContext context,
+      MarkdownRenderer renderer) throws InvalidInputException {
+    while (!stack.isEmpty()) {
+      RenderFrame frame = stack.peek();
+      if (frame.index == frame.element.children.size()) {
+        stack.pop();
+        if (frame.markdown) {
+          exitMarkdown(renderer);
+        }
+        for (int i = 0; i < frame.openElements; i++) {
+          out.closeElement();
+        }
+        continue;
+      }
+      Element child = frame.element.children.get(frame.index++);
+
+      Node markdownNode = renderer != null ? markdownOf(child) : null;
+      ObjectNode entityJsonNode = frame.entityJsonParent;
+      if (entityJsonNode != null) {
+        ObjectNode node = child.asEntityJson(entityJsonNode);
+        if (node != null) {
+          entityJsonNode = node;
+        }
+      }
+      if (markdownNode != null) {
+        enterMarkdown(renderer, markdownNode);
+      }
+
+      int openElements = 0;
+      if (frame.print) {
+        if (child.printCachedPresentationML(out, context)) {
+          openElements = -1;
+        } else if (child.overridesAsPresentationML()) {
+          child.asPresentationML(out, context);
+          openElements = -1;
+        } else {
+          openElements = child.openPresentationML(out, context);
+        }
+      }
+
+      if (renderer != null || entityJsonNode != null || openElements > 0) {
+        // children already printed with the element are still visited for their other representations
+        stack.push(new RenderFrame(child, openElements > 0, Math.max(openElements, 0), markdownNode != null,
+            entityJsonNode));
       }
     }
   }
 
+  private static void enterMarkdown(MarkdownRenderer renderer, Node node) throws InvalidInputException {
+    try {
+      renderer.enter(node);
+    } catch (IllegalArgumentException e) {
+      throw markdownError(e);
+    }
+  }
+
+  private static void exitMarkdown(MarkdownRenderer renderer) throws InvalidInputException {
+    try {
+      renderer.exit();
+    } catch (IllegalArgumentException e) {
+      throw markdownError(e);
+    }
+  }
+
+  /**
+   * Return the Markdown representation of the element, reporting the Markdown errors as invalid input. Only the
+   * Markdown is guarded: errors raised while building the EntityJSON are propagated as they are.
+   */
+  private static Node markdownOf(Element element) throws InvalidInputException {
+    try {
+      return element.asMarkdown();
+    } catch (IllegalArgumentException e) {
+      throw markdownError(e);
+    }
+  }
+
+  private static InvalidInputException markdownError(IllegalArgumentException e) {
+    return new InvalidInputException("Failed to build Markdown: " + e.getMessage());
+  }
+
+  /**
+   * Push the children of the element on a traversal stack, so that they are popped in document order.
+   */
+  private void pushChildren(Deque<TraversalFrame> stack, Node markdownParent, ObjectNode entityJsonParent) {
+    for (int i = children.size() - 1; i >= 0; i--) {
+      stack.push(new TraversalFrame(children.get(i), markdownParent, entityJsonParent));
+    }
+  }
+
   /**
    * Return Markdown representation of the element as {@link Node}.
    */
@@ -362,9 +584,37 @@ public abstract class Element {
   }
 
   /**
-   * Print a PresentationML representation of the element and its children to the provided PrintStream.
+   * Print a PresentationML representation of the element and its children to the provided PrintStream. Elements
+   * overriding this method must also override {@link #overridesAsPresentationML()}.
    */
   void asPresentationML(XmlPrintStream out, MessageMLContext context) {
+    int openElements = openPresentationML(out, context);
+    if (openElements == 0) {
+      return;
+    }
+    Deque<RenderFrame> stack = new ArrayDeque<>();
+    stack.push(new RenderFrame(this, true, openElements, false, null));
+    try {
+      render(stack, out, context, null);
+    } catch (InvalidInputException e) {
+      // only thrown while rendering Markdown
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Return true if the element overrides {@link #asPresentationML}, in which case it is rendered by calling it.
+   * Otherwise the element and its children are printed by the traversal of the tree.
+   */
+  boolean overridesAsPresentationML() {
+    return false;
+  }
+
+  /**
+   * Print the opening tag of the element, or the whole element if it can not have children. Return the number of
+   * elements left open, to be closed once the children of the element are printed.
+   */
+  private int openPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, String> attributes = new LinkedHashMap<>();
 
     if (this instanceof RegexElement) {
@@ -375,65 +625,227 @@ public abstract class Element {
       attributes.putAll(getAttributes());
     }
 
-    if (this instanceof SplittableElement && ((SplittableElement) this).isSplittable()) {
+    boolean splittable = this instanceof SplittableElement && ((SplittableElement) this).isSplittable();
+    if (splittable) {
       ((SplittableElement) this).splittableRemove().forEach(attributes::remove);
       // open div + adding splittable elements
       String uid = ((SplittableElement) this).splittableAsPresentationML(out, context);
       attributes.put("id", uid);
-      // render element
-      innerAsPresentationML(out, context, attributes);
+    }
+
+    if (areNestedElementsAllowed()) {
+      out.openElement(getPresentationMLTag(), attributes);
+      // element and splittable div are closed after the children
+      return splittable ? 2 : 1;
+    }
+    out.printElement(getPresentationMLTag(), attributes);
+    if (splittable) {
       // close div
       out.closeElement();
-    } else {
-      innerAsPresentationML(out, context, attributes);
     }
+    return 0;
   }
 
-  private void innerAsPresentationML(XmlPrintStream out,
-      MessageMLContext context, Map<String, String> attributes) {
-    if (areNestedElementsAllowed()) {
-      out.openElement(getPresentationMLTag(), attributes);
-      for (Element child : getChildren()) {
-        child.asPresentationML(out, context);
+  /**
+   * Print the PresentationML representation of the element, reusing the fragment printed by a previous render of the
+   * same subtree when the render cache is enabled in the {@link MessageMLContext}.
+   * <p>
+   * Fragments are kept only for compact (not indented) output and only for the topmost subtrees below the document
+   * root whose PresentationML does not depend on ids generated by the context, see {@link #usesGeneratedIds()}.
+   * Elements printing their children should call this method rather than {@link #asPresentationML}.
+   */
+  final void renderPresentationML(XmlPrintStream out, MessageMLContext context) {
+    checkNotReleased();
+    if (!printCachedPresentationML(out, context)) {
+      asPresentationML(out, context);
+    }
+  }
+
+  /**
+   * Print the PresentationML fragment cached for the element, capturing it first if needed. Return false if the
+   * render cache does not apply, in which case nothing is printed.
+   */
+  private boolean printCachedPresentationML(XmlPrintStream out, MessageMLContext context) {
+    if (!context.isRenderCacheEnabled() || out instanceof FragmentPrintStream || !out.isNoIndent()
+        || !out.isNoNl()) {
+      return false;
+    } else if (presentationMLFragment != null && presentationMLFragmentRemoveNl == out.isRemoveNl()) {
+      out.printFragment(presentationMLFragment, presentationMLFragmentText);
+      return true;
+    } else if (isRenderCacheable()) {
+      FragmentPrintStream fragmentOut = FragmentPrintStream.render(this, context, out.isRemoveNl());
+      presentationMLFragment = fragmentOut.getFragment();
+      presentationMLFragmentText = fragmentOut.getTextContent();
+      presentationMLFragmentRemoveNl = out.isRemoveNl();
+      out.printFragment(presentationMLFragment, presentationMLFragmentText);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Return true if the PresentationML of the element depends on ids generated by the {@link MessageMLContext} at
+   * render time, in which case its output can not be reused by the render cache.
+   */
+  boolean usesGeneratedIds() {
+    return this instanceof SplittableElement && ((SplittableElement) this).isSplittable();
+  }
+
+  private boolean isRenderCacheable() {
+    if (renderCacheable == null) {
+      boolean cacheable = !usesGeneratedIds();
+      for (int i = 0; cacheable && i < children.size(); i++) {
+        cacheable = children.get(i).isRenderCacheable();
       }
-      out.closeElement();
-    } else {
-      out.printElement(getPresentationMLTag(), attributes);
+      renderCacheable = cacheable;
     }
+    return renderCacheable;
   }
 
   /**
-   * Return a text representation of the element, descending into its children.
+   * Discard the PresentationML fragments and descendant counts cached for this element and its ancestors. Called
+   * automatically by {@link #addChild(Element)} and {@link #setAttribute(String, String)}, it must be called
+   * explicitly after changing the element through the collections returned by {@link #getAttributes()} or
+   * {@link #getChildren()}, e.g. to remove or replace a child.
+   */
+  public void invalidateRenderCache() {
+    if (indexed || root == this) {
+      // elements not attached to the tree yet, or only used to render it, do not change it
+      root.revision++;
+    }
+    Element element = this;
+    // cache state is only ever computed top-down, so there is nothing to clear above an element without it
+    while (element != null && element.renderCacheable != null) {
+      element.presentationMLFragment = null;
+      element.presentationMLFragmentText = null;
+      element.renderCacheable = null;
+      element = element.getParent();
+    }
+    // counts are computed for whole subtrees, so there is nothing to clear above an element without them either
+    for (element = this; element != null && element.descendantCounts != null; element = element.getParent()) {
+      element.descendantCounts = null;
+    }
+  }
+
+  /**
+   * Return the number of changes made to the tree of the element, as counted by {@link #invalidateRenderCache()}. The
+   * tree is unchanged as long as its revision is the same.
+   */
+  public int getRevision() {
+    return root.revision;
+  }
+
+  /**
+   * Return a text representation of the element, descending into its children. Elements overriding this method must
+   * also override {@link #overridesAsText()}.
    */
   public String asText() {
+    checkNotReleased();
     StringBuilder b = new StringBuilder();
+    Deque<Element> stack = new ArrayDeque<>();
+    pushChildren(stack);
 
-    for (Element child : children) {
-      b.append(child.asText());
+    while (!stack.isEmpty()) {
+      Element element = stack.pop();
+      if (!element.overridesAsText()) {
+        element.pushChildren(stack);
+      } else {
+        element.appendText(b);
+      }
     }
 
     return b.toString();
   }
 
   /**
-   * This method applies a breadth-first traversal of a tree of elements counting the number of elements found which
-   * belong to the class type passed as input
+   * Return true if the element overrides {@link #asText()}, in which case its text is appended with
+   * {@link #appendText(StringBuilder)}. Otherwise the text of its children is appended instead.
+   */
+  boolean overridesAsText() {
+    return false;
+  }
+
+  /**
+   * Append the text representation of the element to the builder.
+   */
+  void appendText(StringBuilder b) {
+    b.append(asText());
+  }
+
+  private void pushChildren(Deque<Element> stack) {
+    for (int i = children.size() - 1; i >= 0; i--) {
+      stack.push(children.get(i));
+    }
+  }
+
+  /**
+   * Count the elements of the tree rooted at this element (included) which belong to the class type passed as input,
+   * using the index of the document tree.
    */
   public Integer countChildrenOfType(Class<? extends Element> type) {
-    Integer count = 0;
-    Stack<Element> stack = new Stack<>();
-    Element current = this;
-    stack.push(current);
-    while (!stack.isEmpty()) {
-      current = stack.pop();
-      if (current.getClass() == type) {
-        count++;
+    int counted = COUNTED_TYPES.indexOf(type);
+    if (counted < 0) {
+      return findElements(type).size();
+    }
+    return countDescendants(counted) + (getClass() == type ? 1 : 0);
+  }
+
+  /**
+   * Return the number of buttons of type "action" in the subtree of the element.
+   */
+  int countActionButtons() {
+    return countDescendants(ACTION_BUTTON_COUNT);
+  }
+
+  /**
+   * Return the number of descendants of one of the counted types. The counts of a subtree are computed once, bottom-up
+   * from the counts of its children, and kept until {@link #invalidateRenderCache()} is called on the subtree. When
+   * parsing, the subtrees counted by the validation of an element are not counted again by its ancestors.
+   */
+  private int countDescendants(int counted) {
+    if (descendantCounts == null) {
+      // the elements whose counts are unknown in pre-order, so that each is counted after its descendants in reverse
+      List<Element> uncounted = new ArrayList<>();
+      Deque<Element> stack = new ArrayDeque<>();
+      stack.push(this);
+      while (!stack.isEmpty()) {
+        Element element = stack.pop();
+        uncounted.add(element);
+        for (Element child : element.children) {
+          if (child.descendantCounts == null) {
+            stack.push(child);
+          }
+        }
       }
-      for (Element child : current.getChildren()) {
-        stack.push(child);
+      for (int i = uncounted.size() - 1; i >= 0; i--) {
+        uncounted.get(i).sumChildCounts();
+      }
+    }
+    return descendantCounts[counted];
+  }
+
+  /**
+   * Count the descendants of the element from the counts of its children, which are already known.
+   */
+  private void sumChildCounts() {
+    int[] counts = NO_COUNTS;
+    for (Element child : children) {
+      int counted = child.getClass() == Button.class
+          && Button.ACTION_TYPE.equals(child.getAttribute(FormElement.TYPE_ATTR))
+          ? ACTION_BUTTON_COUNT : COUNTED_TYPES.indexOf(child.getClass());
+      if (counted >= 0 || child.descendantCounts != NO_COUNTS) {
+        if (counts == NO_COUNTS) {
+          counts = new int[NO_COUNTS.length];
+        }
+        if (counted >= 0) {
+          counts[counted]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+          counts[i] += child.descendantCounts[i];
+        }
       }
     }
-    return count;
+    descendantCounts = counts;
   }
 
   /**
@@ -443,11 +855,10 @@ public abstract class Element {
    */
   public List<Element> getChildrenOfType(Class<? extends Element> type) {
     List<Element> elements = new ArrayList<>();
-    Stack<Element> stack = new Stack<>();
-    Element current = this;
-    stack.push(current);
+    Deque<Element> stack = new ArrayDeque<>();
+    stack.push(this);
     while (!stack.isEmpty()) {
-      current = stack.pop();
+      Element current = stack.pop();
       if (current.getClass() == type) {
         elements.add(current);
       }
@@ -465,6 +876,15 @@ public abstract class Element {
     return null;
   }
 
+  /**
+   * Whether the validation of the element is skipped when it is built from signed PresentationML, whose structure is
+   * known to be valid. Only elements whose {@link #validate()} merely checks the element, without resolving,
+   * completing or registering anything, skip it.
+   */
+  boolean isValidationSkippedWhenTrusted() {
+    return false;
+  }
+
   /**
    * Check the syntax and contents of the element.
    */
@@ -852,7 +1272,7 @@ public abstract class Element {
    */
   void assertChildrenNotExceedingMaxCount(Collection<Class<? extends Element>> elementTypes, int maxCountPerElementType)
       throws InvalidInputException {
-    boolean hasExceeded = elementTypes.stream().anyMatch(type -> findElements(type).size() > maxCountPerElementType);
+    boolean hasExceeded = elementTypes.stream().anyMatch(type -> countChildrenOfType(type) > maxCountPerElementType);
     if (hasExceeded) {
       throw new InvalidInputException(
           String.format("Element \"%s\" cannot have more than %s children of the following elements: [%s].",
@@ -909,6 +1329,7 @@ public abstract class Element {
    * Return a map of the element's attributes.
    */
   public Map<String, String> getAttributes() {
+    checkNotReleased();
     return attributes;
   }
 
@@ -916,6 +1337,7 @@ public abstract class Element {
    * Return the value of the element's attribute "attr".
    */
   public String getAttribute(String attr) {
+    checkNotReleased();
     return attributes.get(attr);
   }
 
@@ -924,12 +1346,23 @@ public abstract class Element {
    */
   void setAttribute(String attr, String value) {
     attributes.put(attr, value);
+    invalidateRenderCache();
+  }
+
+  /**
+   * Keep the index of the document tree up to date with a change of the attributes of the element, however made.
+   */
+  void attributeChanged(String attr, String oldValue, String newValue) {
+    if (indexed) {
+      root.index.updateAttribute(this, attr, oldValue, newValue);
+    }
   }
 
   /**
-   * Return a list of the element's children.
+   * Return a list of the element's children, to be modified through {@link #addChild(Element)}.
    */
   public List<Element> getChildren() {
+    checkNotReleased();
     return children;
   }
 
@@ -937,6 +1370,7 @@ public abstract class Element {
    * Return the nth child of the element.
    */
   public Element getChild(int n) {
+    checkNotReleased();
     return children.get(n);
   }
 
@@ -944,16 +1378,38 @@ public abstract class Element {
    * Append a child to the element.
    */
   public void addChild(Element child) {
+    checkNotReleased();
+    if (children.isEmpty()) {
+      ElementStoragePool storagePool = root.index.getStoragePool();
+      children = storagePool == null ? new ArrayList<>(2) : storagePool.newList();
+    }
     children.add(child);
+    if (child.parent == this && !child.indexed) {
+      root.index.add(child);
+      child.indexed = true;
+    }
+    invalidateRenderCache();
   }
 
   /**
    * Return the number of children of the element.
    */
   public int size() {
+    checkNotReleased();
     return children.size();
   }
 
+  /**
+   * Fail if the storage of the tree of the element was taken back by the storage pool of its parser, rather than
+   * reading the attributes and children of the elements of the next message.
+   */
+  void checkNotReleased() {
+    if (pooled && root.index.isReleased()) {
+      throw new IllegalStateException("The element belongs to a message tree released by the storage pool of its "
+          + "parser, it cannot be used once the next message is parsed");
+    }
+  }
+
   /**
    * Return the parent of the element.
    */
@@ -968,6 +1424,13 @@ public abstract class Element {
     return format;
   }
 
+  /**
+   * Return the rank of the element in the creation order of the elements of its tree.
+   */
+  int getOrdinal() {
+    return ordinal;
+  }
+
   /**
    * Search the MessageML tree (depth-first) for elements of a given type.
    *
@@ -976,15 +1439,16 @@ public abstract class Element {
    */
    List<Element> findElements(Predicate<Element> predicate) {
     List<Element> result = new ArrayList<>();
-    LinkedList<Element> stack = new LinkedList<>(this.getChildren());
+    Deque<Element> stack = new ArrayDeque<>();
 
     if (predicate.test(this)) {
       result.add(this);
     }
 
+    pushChildren(stack);
     while (!stack.isEmpty()) {
       Element child = stack.pop();
-      stack.addAll(0, child.getChildren());
+      child.pushChildren(stack);
       if (predicate.test(child)) {
         result.add(child);
       }
@@ -993,6 +1457,38 @@ public abstract class Element {
     return result;
   }
 
+  /**
+   * Filter elements found in the index of the document tree, keeping those which belong to the tree rooted at this
+   * element and match the predicate.
+   */
+  private List<Element> findIndexedElements(List<Element> candidates, Predicate<Element> predicate) {
+    List<Element> result = new ArrayList<>();
+
+    if (!indexed && predicate.test(this)) {
+      // the element is not in the index until it is attached to its parent
+      result.add(this);
+    }
+
+    for (Element candidate : candidates) {
+      if (predicate.test(candidate) && candidate.isIndexedDescendantOf(this)) {
+        result.add(candidate);
+      }
+    }
+
+    return result;
+  }
+
+  private boolean isIndexedDescendantOf(Element ancestor) {
+    for (Element element = this; element != null; element = element.parent) {
+      if (element == ancestor) {
+        return true;
+      } else if (!element.indexed) {
+        return false;
+      }
+    }
+    return false;
+  }
+
   /**
    * Search the MessageML tree (depth-first) for elements of a given type.
    *
@@ -1000,7 +1496,7 @@ public abstract class Element {
    * @return found elements
    */
   public List<Element> findElements(Class<?> type) {
-    return findElements(element -> element.getClass() == type);
+    return findIndexedElements(root.index.getByClass(type), element -> element.getClass() == type);
   }
 
   /**
@@ -1021,7 +1517,9 @@ public abstract class Element {
    * @return found elements
    */
   public List<Element> findElements(String attribute, String value) {
-    return findElements(element -> value.equals(element.getAttribute(attribute)));
+    List<Element> candidates = ID_ATTR.equals(attribute) ? root.index.getById(value)
+        : root.index.getByAttribute(attribute);
+    return findIndexedElements(candidates, element -> value.equals(element.getAttribute(attribute)));
   }
 
   public Integer countNonTextNodesInNodeList(NodeList nodeList) {
@@ -1053,6 +1551,14 @@ public abstract class Element {
    * @return true if contains; false otherwise.
    */
   private Boolean hasParentAtAnyLevel(Collection<Class<? extends Element>> possibleParents) {
+    if (TRACKED_ANCESTOR_TYPES.containsAll(possibleParents)) {
+      int bits = 0;
+      for (Class<? extends Element> possibleParent : possibleParents) {
+        bits |= typeBit(TRACKED_ANCESTOR_TYPES, possibleParent);
+      }
+      return (ancestorTypes & bits) != 0;
+    }
+
     Element element = this;
     boolean parentFound = false;
 
@@ -1066,6 +1572,11 @@ public abstract class Element {
     return parentFound;
   }
 
+  private static int typeBit(List<Class<? extends Element>> types, Class<?> type) {
+    int i = types.indexOf(type);
+    return i < 0 ? 0 : 1 << i;
+  }
+
   protected void throwInvalidInputException(org.w3c.dom.Node item) throws InvalidInputException {
     throw new InvalidInputException("Attribute \"" + item.getNodeName()
         + "\" is not allowed in \"" + getMessageMLTag() + "\"");
@@ -1086,4 +1597,51 @@ public abstract class Element {
     }
     return value;
   }
+
+  private static final class BuildFrame {
+    private final Element element;
+    private final boolean single;
+    // true if the element has been created for this frame and must be completed once its DOM children are built
+    private final boolean owned;
+    private org.w3c.dom.Node next;
+
+    private BuildFrame(Element element, org.w3c.dom.Node next, boolean single, boolean owned) {
+      this.element = element;
+      this.next = next;
+      this.single = single;
+      this.owned = owned;
+    }
+  }
+
+  private static final class TraversalFrame {
+    private final Element element;
+    private final Node markdownParent;
+    private final ObjectNode entityJsonParent;
+
+    private TraversalFrame(Element element, Node markdownParent, ObjectNode entityJsonParent) {
+      this.element = element;
+      this.markdownParent = markdownParent;
+      this.entityJsonParent = entityJsonParent;
+    }
+  }
+
+  private static final class RenderFrame {
+    private final Element element;
+    // whether the children are printed by the traversal, and how many elements are closed after them
+    private final boolean print;
+    private final int openElements;
+    // whether the Markdown renderer is exited after the children
+    private final boolean markdown;
+    private final ObjectNode entityJsonParent;
+    private int index;
+
+    private RenderFrame(Element element, boolean print, int openElements, boolean markdown,
+        ObjectNode entityJsonParent) {
+      this.element = element;
+      this.print = print;
+      this.openElements = openElements;
+      this.markdown = markdown;
+      this.entityJsonParent = entityJsonParent;
+    }
+  }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Attributes of an {@link Element}, with the semantics of a {@link java.util.LinkedHashMap} in insertion order.
+ * <p>
+ * Elements have few attributes, and most have none: the attributes are kept in a flat array of name and value pairs,
+ * only allocated when the first attribute is set, and looked up by a linear scan. Known attribute names are replaced
+ * by a single shared instance, so that the trees kept in memory do not retain a copy of the names of each document.
+ * The arrays of the elements of a tree parsed with an {@link ElementStoragePool} come from the pool.
+ * <p>
+ * Every change, including those made through {@link #entrySet()}, is reported to the owning element, which keeps the
+ * index of its document tree up to date.
+ */
+final class ElementAttributes extends AbstractMap<String, String> {
+  private static final String[] NO_ENTRIES = new String[0];
+  private static final int INITIAL_CAPACITY = 2;
+
+  private static final Map<String, String> KNOWN_NAMES = new HashMap<>();
+
+  static {
+    for (String name : new String[] {"class", "style", "id", "name", "type", "value", "label", "title", "for",
+        "placeholder", "required", "readonly", "disabled", "checked", "selected", "multiple", "href", "src", "width",
+        "height", "rowspan", "colspan", "pattern", "pattern-error-message", "minlength", "maxlength", "min", "max",
+        "format", "language", "open", "state", "trigger", "action", "icon", "masked", "rows", "cols",
+        "data-entity-id", "data-format", "data-version", "data-title", "data-target-id", "data-generated",
+        "data-placeholder", "data-required", "data-value", "data-name", "data-icon", "data-icon-src",
+        "data-accent-color", "data-pattern-error-message", "data-max", "data-min", "data-state", "data-trigger"}) {
+      KNOWN_NAMES.put(name, name);
+    }
+  }
+
+  private final Element owner;
+  private final ElementStoragePool storagePool;
+  private String[] entries = NO_ENTRIES;
+  private int size;
+
+  ElementAttributes(Element owner, ElementStoragePool storagePool) {
+    this.owner = owner;
+    this.storagePool = storagePool;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return indexOf(name) >= 0;
+  }
+
+  @Override
+  public String get(Object name) {
+    int index = indexOf(name);
+    return index < 0 ? null : entries[index + 1];
+  }
+
+  @Override
+  public String put(String name, String value) {
+    int index = indexOf(name);
+    if (index >= 0) {
+      String oldValue = entries[index + 1];
+      entries[index + 1] = value;
+      owner.attributeChanged(entries[index], oldValue, value);
+      return oldValue;
+    }
+
+    if (2 * size == entries.length) {
+      int capacity = Math.max(2 * INITIAL_CAPACITY, 2 * entries.length);
+      entries = storagePool == null ? Arrays.copyOf(entries, capacity)
+          : storagePool.copyOf(entries, 2 * size, capacity);
+    }
+    entries[2 * size] = name == null ? null : KNOWN_NAMES.getOrDefault(name, name);
+    entries[2 * size + 1] = value;
+    size++;
+    owner.attributeChanged(entries[2 * size - 2], null, value);
+    return null;
+  }
+
+  @Override
+  public String remove(Object name) {
+    int index = indexOf(name);
+    if (index < 0) {
+      return null;
+    }
+    String oldValue = entries[index + 1];
+    removeAt(index);
+    return oldValue;
+  }
+
+  @Override
+  public void clear() {
+    while (size > 0) {
+      removeAt(2 * size - 2);
+    }
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return new AbstractSet<Entry<String, String>>() {
+      @Override
+      public Iterator<Entry<String, String>> iterator() {
+        return new EntryIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private int indexOf(Object name) {
+    for (int i = 0; i < 2 * size; i += 2) {
+      if (Objects.equals(entries[i], name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void removeAt(int index) {
+    String name = entries[index];
+    String oldValue = entries[index + 1];
+    System.arraycopy(entries, index + 2, entries, index, 2 * size - index - 2);
+    size--;
+    entries[2 * size] = null;
+    entries[2 * size + 1] = null;
+    owner.attributeChanged(name, oldValue, null);
+  }
+
+  private class EntryIterator implements Iterator<Entry<String, String>> {
+    private int next;
+    private int last = -1;
+
+    @Override
+    public boolean hasNext() {
+      return next < 2 * size;
+    }
+
+    @Override
+    public Entry<String, String> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next += 2;
+      return new AttributeEntry(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      removeAt(last);
+      next = last;
+      last = -1;
+    }
+  }
+
+  /**
+   * Entry writing its value through to the attributes, as long as no attribute is removed before it.
+   */
+  private class AttributeEntry extends SimpleEntry<String, String> {
+    private final int index;
+
+    private AttributeEntry(int index) {
+      super(entries[index], entries[index + 1]);
+      this.index = index;
+    }
+
+    @Override
+    public String setValue(String value) {
+      entries[index + 1] = value;
+      owner.attributeChanged(getKey(), getValue(), value);
+      return super.setValue(value);
+    }
+  }
+}
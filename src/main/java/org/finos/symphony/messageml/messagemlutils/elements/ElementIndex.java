@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Index of the elements of a MessageML tree, kept by the root element of the tree and maintained by
+ * {@link Element#addChild(Element)} and by every change of the attributes of the elements.
+ * <p>
+ * Elements are indexed by class, by the attributes they have a value for and by the value of their "id" attribute. Lookups return
+ * the elements of the whole tree in document order, as far as elements are created in document order, which is the
+ * case for trees built by the parsers.
+ */
+class ElementIndex {
+  private static final Comparator<Element> DOCUMENT_ORDER = Comparator.comparingInt(Element::getOrdinal);
+
+  private final Map<Class<?>, Bucket> byClass = new HashMap<>();
+  private final Map<String, Bucket> byAttribute = new HashMap<>();
+  private final Map<String, Bucket> byId = new HashMap<>();
+  private final ElementStoragePool storagePool;
+  private int ordinal;
+  private boolean released;
+
+  ElementIndex(ElementStoragePool storagePool) {
+    this.storagePool = storagePool;
+    if (storagePool != null) {
+      storagePool.register(this);
+    }
+  }
+
+  /**
+   * Mark the tree as released by its storage pool, whose storage it must no longer use.
+   */
+  void release() {
+    released = true;
+  }
+
+  boolean isReleased() {
+    return released;
+  }
+
+  /**
+   * Return the storage pool providing the storage of the elements of the tree, or null.
+   */
+  ElementStoragePool getStoragePool() {
+    return storagePool;
+  }
+
+  /**
+   * Return the creation rank of a new element of the tree.
+   */
+  int nextOrdinal() {
+    return ++ordinal;
+  }
+
+  void add(Element element) {
+    add(byClass, element.getClass(), element);
+    for (Map.Entry<String, String> attribute : element.getAttributes().entrySet()) {
+      if (attribute.getValue() != null) {
+        add(byAttribute, attribute.getKey(), element);
+        if (Element.ID_ATTR.equals(attribute.getKey())) {
+          add(byId, attribute.getValue(), element);
+        }
+      }
+    }
+  }
+
+  /**
+   * Update the index after the value of an attribute of an indexed element changed, a null value meaning that the
+   * element has no value for the attribute (anymore or yet).
+   */
+  void updateAttribute(Element element, String attribute, String oldValue, String newValue) {
+    if (oldValue == null && newValue != null) {
+      add(byAttribute, attribute, element);
+    } else if (oldValue != null && newValue == null) {
+      remove(byAttribute, attribute, element);
+    }
+    if (Element.ID_ATTR.equals(attribute) && !Objects.equals(oldValue, newValue)) {
+      if (oldValue != null) {
+        remove(byId, oldValue, element);
+      }
+      if (newValue != null) {
+        add(byId, newValue, element);
+      }
+    }
+  }
+
+  List<Element> getByClass(Class<?> type) {
+    return get(byClass, type);
+  }
+
+  List<Element> getByAttribute(String attribute) {
+    return get(byAttribute, attribute);
+  }
+
+  List<Element> getById(String id) {
+    return get(byId, id);
+  }
+
+  private static <K> void add(Map<K, Bucket> buckets, K key, Element element) {
+    buckets.computeIfAbsent(key, k -> new Bucket()).add(element);
+  }
+
+  private static <K> void remove(Map<K, Bucket> buckets, K key, Element element) {
+    Bucket bucket = buckets.get(key);
+    if (bucket != null) {
+      bucket.elements.remove(element);
+    }
+  }
+
+  private static <K> List<Element> get(Map<K, Bucket> buckets, K key) {
+    Bucket bucket = buckets.get(key);
+    return bucket == null ? Collections.emptyList() : bucket.get();
+  }
+
+  private static final class Bucket {
+    private final List<Element> elements = new ArrayList<>();
+    private boolean sorted = true;
+
+    private void add(Element element) {
+      // children are attached before their parents when parsing, restore document order lazily
+      if (!elements.isEmpty() && elements.get(elements.size() - 1).getOrdinal() > element.getOrdinal()) {
+        sorted = false;
+      }
+      elements.add(element);
+    }
+
+    private List<Element> get() {
+      if (!sorted) {
+        elements.sort(DOCUMENT_ORDER);
+        sorted = true;
+      }
+      return elements;
+    }
+  }
+}
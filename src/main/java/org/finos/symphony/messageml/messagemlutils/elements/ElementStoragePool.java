@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Pool of the attribute arrays and child lists of the elements of short-lived {@link MessageML} trees, reused from one
+ * tree to the next instead of being left to the garbage collector. The elements themselves are not pooled.
+ * <p>
+ * A pool is owned by a single parser: the storage handed to the elements of a tree is taken back by {@link #reset()},
+ * when the next message is parsed, after which the previous tree must no longer be used: its elements then throw an
+ * {@link IllegalStateException} when their attributes or children are accessed. The pool keeps a bounded amount of
+ * storage, so that a single large message does not pin its storage for the life of the parser. Pools are not
+ * thread-safe.
+ */
+public final class ElementStoragePool {
+  // larger attribute arrays and child lists are left to the garbage collector
+  private static final int MAX_ARRAY_CAPACITY = 64;
+  private static final int MAX_LIST_SIZE = 64;
+  // number of attribute arrays of each capacity, and of child lists, kept by a reset
+  private static final int MAX_ARRAYS_PER_CAPACITY = 1024;
+  private static final int MAX_LISTS = 1024;
+
+  // attribute arrays by capacity: the free ones are at the start of each list, the ones in use after them
+  private final List<List<String[]>> entries = new ArrayList<>();
+  private final int[] freeEntries = new int[Integer.SIZE];
+  private final List<ArrayList<Element>> lists = new ArrayList<>();
+  private int freeLists;
+  // indexes of the trees using the storage handed out since the last reset
+  private final List<ElementIndex> trees = new ArrayList<>();
+
+  /**
+   * Take back the storage of the elements of the last tree, which must no longer be used, keeping at most the
+   * maximum number of arrays and lists.
+   */
+  public void reset() {
+    for (ElementIndex tree : trees) {
+      tree.release();
+    }
+    trees.clear();
+    for (int i = 0; i < entries.size(); i++) {
+      List<String[]> arrays = entries.get(i);
+      if (arrays.size() > MAX_ARRAYS_PER_CAPACITY) {
+        arrays.subList(MAX_ARRAYS_PER_CAPACITY, arrays.size()).clear();
+      }
+      for (String[] array : arrays) {
+        Arrays.fill(array, null);
+      }
+      freeEntries[i] = arrays.size();
+    }
+    // lists keep their capacity once cleared, so the ones which grew large are dropped
+    lists.removeIf(list -> list.size() > MAX_LIST_SIZE);
+    if (lists.size() > MAX_LISTS) {
+      lists.subList(MAX_LISTS, lists.size()).clear();
+    }
+    for (ArrayList<Element> list : lists) {
+      list.clear();
+    }
+    freeLists = lists.size();
+  }
+
+  /**
+   * Register a tree using the storage of the pool, released on the next reset.
+   */
+  void register(ElementIndex tree) {
+    trees.add(tree);
+  }
+
+  /**
+   * Return an array of the given capacity, a power of two, holding a copy of the first elements of the array.
+   */
+  String[] copyOf(String[] array, int length, int capacity) {
+    if (capacity > MAX_ARRAY_CAPACITY) {
+      return Arrays.copyOf(array, capacity);
+    }
+    int sizeClass = Integer.numberOfTrailingZeros(capacity);
+    while (entries.size() <= sizeClass) {
+      entries.add(new ArrayList<>());
+    }
+
+    List<String[]> arrays = entries.get(sizeClass);
+    String[] copy;
+    if (freeEntries[sizeClass] > 0) {
+      // the free arrays are taken from the end of the free range so that the list needs no reordering
+      copy = arrays.get(--freeEntries[sizeClass]);
+    } else {
+      copy = new String[capacity];
+      arrays.add(copy);
+    }
+    System.arraycopy(array, 0, copy, 0, length);
+    return copy;
+  }
+
+  /**
+   * Return an empty list of children.
+   */
+  List<Element> newList() {
+    if (freeLists > 0) {
+      return lists.get(--freeLists);
+    }
+    ArrayList<Element> list = new ArrayList<>(2);
+    lists.add(list);
+    return list;
+  }
+}
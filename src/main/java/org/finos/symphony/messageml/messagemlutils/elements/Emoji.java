@@ -80,16 +80,21 @@ public class Emoji extends Entity {
     return size;
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
     out.openElement(presentationMLTag, CLASS_ATTR, Entity.PRESENTATIONML_CLASS, ENTITY_ID_ATTR, entityId);
 
     if (this.getChildren().isEmpty()) {
-      out.append(asDefaultRepresentation());
+      out.printText(asDefaultRepresentation());
     } else {
       for (Element child : getChildren()) {
-        child.asPresentationML(out, context);
+        child.renderPresentationML(out, context);
       }
     }
 
@@ -101,6 +106,11 @@ public class Emoji extends Entity {
     return new EmojiNode(shortcode);
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     StringBuilder b = new StringBuilder();
@@ -163,6 +173,11 @@ public class Emoji extends Entity {
     assertPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public String toString() {
     return "Emoji(" + getShortCode() + ")";
@@ -64,6 +64,11 @@ public class ExpandableCard extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -80,7 +85,7 @@ public class ExpandableCard extends Element {
     out.openElement(PRESENTATIONML_TAG, presentationAttrs);
 
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
 
     out.closeElement();
@@ -60,6 +60,11 @@ public class ExpandableCardBody extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -71,7 +76,7 @@ public class ExpandableCardBody extends Element {
     out.openElement(PRESENTATIONML_TAG, presentationAttrs);
 
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
 
     out.closeElement();
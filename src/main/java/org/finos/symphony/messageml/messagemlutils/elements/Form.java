@@ -1,8 +1,6 @@
 package org.finos.symphony.messageml.messagemlutils.elements;
 
 import static java.lang.String.format;
-import static org.finos.symphony.messageml.messagemlutils.elements.Button.ACTION_TYPE;
-import static org.finos.symphony.messageml.messagemlutils.elements.FormElement.TYPE_ATTR;
 
 import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
 import org.finos.symphony.messageml.messagemlutils.MessageMLParser;
@@ -89,10 +87,7 @@ public class Form extends Element {
   }
 
   private void assertAtLeastOneActionButton() throws InvalidInputException {
-    boolean hasActionButton = findElements(Button.class).stream()
-        .anyMatch(element -> ACTION_TYPE.equals(element.getAttribute(TYPE_ATTR)));
-
-    if (!hasActionButton) {
+    if (countActionButtons() == 0) {
       throw new InvalidInputException(format(ERR_MSG_MISSING_ACTION_BTN, getAttribute(ID_ATTR)));
     }
   }
@@ -106,6 +101,11 @@ public class Form extends Element {
     context.addItem(new BiItem(BiFields.FORM.getValue(), formMap));
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, String> presentationAttrs = new LinkedHashMap<>();
@@ -117,7 +117,7 @@ public class Form extends Element {
     }
     out.openElement(getPresentationMLTag(), presentationAttrs);
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
     out.closeElement();
   }
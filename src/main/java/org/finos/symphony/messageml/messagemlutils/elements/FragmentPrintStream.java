@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
+import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact {@link XmlPrintStream} capturing the PresentationML fragment of a subtree for the render cache, along with
+ * its text content. Elements rendered into this stream are printed as is, since their fragment is part of the one
+ * being captured.
+ */
+class FragmentPrintStream extends XmlPrintStream {
+  private final ByteArrayOutputStream bout;
+
+  private FragmentPrintStream(ByteArrayOutputStream out, boolean removeNl) {
+    super(out);
+    this.bout = out;
+    setNoIndent(true);
+    setNoNl(true);
+    setRemoveNl(removeNl);
+    captureTextContent(0);
+  }
+
+  /**
+   * Render the PresentationML of the given element and its children as a compact fragment.
+   */
+  static FragmentPrintStream render(Element element, MessageMLContext context, boolean removeNl) {
+    FragmentPrintStream out = new FragmentPrintStream(new ByteArrayOutputStream(), removeNl);
+    element.asPresentationML(out, context);
+    out.close();
+    return out;
+  }
+
+  /**
+   * Return the fragment printed to this stream.
+   */
+  String getFragment() {
+    return bout.toString();
+  }
+}
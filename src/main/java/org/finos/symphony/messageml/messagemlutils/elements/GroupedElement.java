@@ -38,6 +38,11 @@ public abstract class GroupedElement extends FormElement {
     super(parent, messageMLTag, format);
   }
 
+  @Override
+  boolean overridesBuildAll() {
+    return true;
+  }
+
   @Override
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element) throws InvalidInputException,
       ProcessingException {
@@ -58,6 +63,11 @@ public abstract class GroupedElement extends FormElement {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -74,7 +84,7 @@ public abstract class GroupedElement extends FormElement {
       presentationLabelForAttr.put(FOR_ATTR, id);
       out.openElement(PRESENTATIONML_LABEL_TAG, presentationLabelForAttr);
       for (Element child : getChildren()) {
-        child.asPresentationML(out, context);
+        child.renderPresentationML(out, context);
       }
       out.closeElement(); // Closing label
 
@@ -82,6 +92,12 @@ public abstract class GroupedElement extends FormElement {
     }
   }
 
+  @Override
+  boolean usesGeneratedIds() {
+    // the generated id links the input to its label
+    return super.usesGeneratedIds() || !getChildren().isEmpty();
+  }
+
   protected void buildElementFromGroupDiv(MessageMLParser parser, org.w3c.dom.Element element)
       throws
       InvalidInputException, ProcessingException {
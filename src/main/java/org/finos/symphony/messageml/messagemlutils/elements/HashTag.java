@@ -69,6 +69,11 @@ public class HashTag extends Keyword {
     return HASHTAG_PATTERN;
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "#" + getTag();
@@ -56,6 +56,11 @@ public class Header extends Element {
     assertPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public void updateBiContext(BiContext context) {
     super.updateBiContext(context);
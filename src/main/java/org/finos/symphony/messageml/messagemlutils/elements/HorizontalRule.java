@@ -41,6 +41,11 @@ public class HorizontalRule extends Element {
     throwInvalidInputException(item);
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "\n";
@@ -59,6 +64,11 @@ public class HorizontalRule extends Element {
     assertNoAttributes();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public boolean areNestedElementsAllowed(){
     return false;
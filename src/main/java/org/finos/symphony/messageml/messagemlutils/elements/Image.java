@@ -57,6 +57,11 @@ public class Image extends Element {
     }
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public boolean areNestedElementsAllowed() {
     return false;
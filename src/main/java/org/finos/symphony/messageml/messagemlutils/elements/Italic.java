@@ -44,4 +44,9 @@ public class Italic extends Element {
     assertPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
 }
@@ -66,6 +66,11 @@ abstract class Keyword extends Entity {
     return ENTITY_ID_PREFIX;
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
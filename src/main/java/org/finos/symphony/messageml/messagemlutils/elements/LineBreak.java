@@ -42,6 +42,11 @@ public class LineBreak extends Element {
     throwInvalidInputException(item);
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "\n";
@@ -58,6 +63,11 @@ public class LineBreak extends Element {
     assertNoAttributes();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public boolean areNestedElementsAllowed() {
     return false;
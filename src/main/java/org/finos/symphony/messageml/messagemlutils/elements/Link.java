@@ -37,7 +37,7 @@ import java.net.URISyntaxException;
  */
 public class Link extends Element {
   public static final String MESSAGEML_TAG = "a";
-  private static final String ATTR_HREF = "href";
+  static final String ATTR_HREF = "href";
   private final IDataProvider dataProvider;
 
   private URI uri;
@@ -74,16 +74,21 @@ public class Link extends Element {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
     out.openElement(getMessageMLTag(), getAttributes());
 
     if (getChildren().isEmpty()) {
-      out.print(out.escape(getUri().toString()));
+      out.printText(getUri().toString());
     } else {
       for (Element child : getChildren()) {
-        child.asPresentationML(out, context);
+        child.renderPresentationML(out, context);
       }
     }
 
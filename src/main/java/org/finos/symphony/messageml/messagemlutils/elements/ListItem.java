@@ -40,6 +40,11 @@ public class ListItem extends Element {
     assertParent(Arrays.asList(OrderedList.class, BulletList.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   public Node asMarkdown() {
     return new org.commonmark.node.ListItem();
@@ -31,6 +31,8 @@ import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
 import org.finos.symphony.messageml.messagemlutils.util.IUserPresentation;
 import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Collections;
 
 /**
@@ -102,6 +104,11 @@ public class Mention extends Entity {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -113,25 +120,27 @@ public class Mention extends Entity {
         out.printElement(presentationMLTag, String.valueOf(uid), CLASS_ATTR, PRESENTATIONML_CLASS,
             ENTITY_ID_ATTR, entityId);
       } else if (prettyName != null) {
-        out.print(prettyName);
+        out.printText(prettyName);
       } else if (email != null) {
+        String mailTo = buildMailTo();
         try {
-          Link link = new Link(getParent(), buildMailTo(), dataProvider);
-
-          for (Element child : getChildren()) {
-            link.addChild(child);
-          }
+          new URI(mailTo);
+        } catch (URISyntaxException e) { // Thrown on unsupported protocol
+          out.printText(email);
+          return;
+        }
 
+        // printed as a link, without changing the tree
+        out.openElement(Link.MESSAGEML_TAG, Collections.singletonMap(Link.ATTR_HREF, mailTo));
+        if (getChildren().isEmpty()) {
           // If there's no pretty text, adds only the email as the tag text
-          if(link.getChildren().isEmpty()) {
-            TextNode child = new TextNode(link, email);
-            link.addChild(child);
+          out.printlnEscaped(email, 0, email.length(), out.isRemoveNl());
+        } else {
+          for (Element child : getChildren()) {
+            child.renderPresentationML(out, context);
           }
-
-          link.asPresentationML(out, context);
-        } catch (InvalidInputException e) { // Thrown on unsupported protocol
-          out.print(email);
         }
+        out.closeElement();
       }
     }
   }
@@ -163,6 +172,11 @@ public class Mention extends Entity {
     }
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return StringUtils.isNotBlank(userPresentation.getPrettyName()) ? "@" + userPresentation.getPrettyName() : "";
@@ -32,7 +32,9 @@ import org.commonmark.node.Document;
 import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
 import org.finos.symphony.messageml.messagemlutils.MessageMLParser;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownRenderer;
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+import org.finos.symphony.messageml.messagemlutils.util.PresentationMLSigner;
 import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
 import org.finos.symphony.messageml.messagemlutils.util.instrument.resolver.InstrumentKind;
 import org.finos.symphony.messageml.messagemlutils.util.instrument.resolver.InstrumentResolution;
@@ -40,6 +42,7 @@ import org.finos.symphony.messageml.messagemlutils.util.instrument.resolver.Mark
 import org.finos.symphony.messageml.messagemlutils.util.instrument.resolver.ResolutionResults;
 import org.w3c.dom.Node;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -62,6 +65,7 @@ public class MessageML extends Element {
   public static final String PRESENTATIONML_TAG = "div";
   private static final String ATTR_FORMAT = "data-format";
   private static final String ATTR_VERSION = "data-version";
+  public static final String ATTR_SIGNATURE = "data-signature";
   private static final String ATTR_XMLNS = "xmlns";
   private static final String PRESENTATIONML_FORMAT = "PresentationML";
 
@@ -70,7 +74,14 @@ public class MessageML extends Element {
   private String xmlns;
 
   public MessageML(FormatEnum format, String version) {
-    super(null, MESSAGEML_TAG, format);
+    this(format, version, null);
+  }
+
+  /**
+   * Create a message whose elements get their attributes and child lists from the storage pool, until it is reset.
+   */
+  public MessageML(FormatEnum format, String version, ElementStoragePool storagePool) {
+    super(null, MESSAGEML_TAG, format, storagePool);
     this.version = version;
   }
 
@@ -86,6 +97,10 @@ public class MessageML extends Element {
           this.version = getStringAttribute(item);
           break;
 
+        case ATTR_SIGNATURE:
+          // checked by the parser, and computed again when the message is rendered
+          break;
+
         default:
           super.buildAttribute(parser, item);
       }
@@ -112,19 +127,88 @@ public class MessageML extends Element {
     return root;
   }
 
-  @Override
-  public void asPresentationML(XmlPrintStream out,
-      MessageMLContext context) {
+  /**
+   * Build the Markdown and the EntityJSON representations of the message with a single traversal of the document
+   * tree.
+   * @param entityJson the EntityJSON to complete with the entities of the message, a new object if null
+   * @return the Markdown tree and the completed EntityJSON
+   */
+  public Pair<Document, ObjectNode> asMarkdownAndEntityJson(ObjectNode entityJson) throws InvalidInputException {
+    Document root = new Document();
+    if (entityJson == null) {
+      entityJson = new ObjectNode(JsonNodeFactory.instance);
+    }
+    buildMarkdownAndEntityJson(root, entityJson);
+    return Pair.of(root, entityJson);
+  }
 
-    out.openElement(PRESENTATIONML_TAG, ATTR_FORMAT, PRESENTATIONML_FORMAT, ATTR_VERSION, version);
+  /**
+   * Render the Markdown and build the EntityJSON representations of the message with a single traversal of the
+   * document tree, without building the Markdown tree.
+   * @param renderer the renderer receiving the Markdown nodes of the message
+   * @param entityJson the EntityJSON to complete with the entities of the message, a new object if null
+   * @return the completed EntityJSON
+   */
+  public ObjectNode asMarkdownAndEntityJson(MarkdownRenderer renderer, ObjectNode entityJson)
+      throws InvalidInputException {
+    if (entityJson == null) {
+      entityJson = new ObjectNode(JsonNodeFactory.instance);
+    }
+    render(null, null, renderer, entityJson);
+    return entityJson;
+  }
 
-    for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+  /**
+   * Produce any of the PresentationML, Markdown and EntityJSON representations of the message with a single traversal
+   * of the document tree. Each representation is skipped when its target is null.
+   * @param out the stream to print the PresentationML to
+   * @param context the context rendering the PresentationML
+   * @param renderer the renderer receiving the Markdown nodes of the message
+   * @param entityJson the EntityJSON to complete with the entities of the message
+   */
+  public void render(XmlPrintStream out, MessageMLContext context, MarkdownRenderer renderer, ObjectNode entityJson)
+      throws InvalidInputException {
+    checkNotReleased();
+    if (out == null) {
+      renderChildren(null, context, renderer, entityJson);
+      return;
     }
 
+    PresentationMLSigner signer = context.getPresentationMLSigner();
+    if (signer != null) {
+      PartPrintStream startTagOut = new PartPrintStream(out);
+      startTagOut.openElement(PRESENTATIONML_TAG, ATTR_FORMAT, PRESENTATIONML_FORMAT, ATTR_VERSION, version);
+      PartPrintStream contentOut = new PartPrintStream(out);
+      renderChildren(contentOut, context, renderer, entityJson);
+      String content = contentOut.getPart();
+      out.openElement(PRESENTATIONML_TAG, ATTR_FORMAT, PRESENTATIONML_FORMAT, ATTR_VERSION, version,
+          ATTR_SIGNATURE, signer.sign(startTagOut.getPart(), content, context.getEntityJson()));
+      out.printFragment(content, contentOut.getTextContent());
+      out.closeElement();
+      return;
+    }
+
+    out.openElement(PRESENTATIONML_TAG, ATTR_FORMAT, PRESENTATIONML_FORMAT, ATTR_VERSION, version);
+    renderChildren(out, context, renderer, entityJson);
     out.closeElement();
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
+  @Override
+  public void asPresentationML(XmlPrintStream out,
+      MessageMLContext context) {
+    try {
+      render(out, context, null, null);
+    } catch (InvalidInputException e) {
+      // only thrown while rendering Markdown
+      throw new IllegalStateException(e);
+    }
+  }
+
   @Override
   public ObjectNode asEntityJson(ObjectNode parent) {
     if (parent == null) {
@@ -185,11 +269,11 @@ public class MessageML extends Element {
    * dialog element with the same id.
    */
   private void validateTargetIdForUIActions() throws InvalidInputException {
-    List<Element> uiActionWithTargetId =
-        findElements(element -> element.getClass() == UIAction.class && element.getAttribute(TARGET_ID) != null);
-    for(Element uiAction: uiActionWithTargetId) {
-      Dialog dialog = findMatchingDialog((UIAction) uiAction);
-      uiAction.setAttribute(TARGET_ID, dialog.getPresentationMlIdAttribute());
+    for(Element uiAction: findElements(UIAction.class)) {
+      if (uiAction.getAttribute(TARGET_ID) != null) {
+        Dialog dialog = findMatchingDialog((UIAction) uiAction);
+        uiAction.setAttribute(TARGET_ID, dialog.getPresentationMlIdAttribute());
+      }
     }
   }
 
@@ -249,4 +333,31 @@ public class MessageML extends Element {
     return new ImmutablePair<>(resolution, tag);
   }
 
+  /**
+   * Stream rendering a part of the PresentationML of the message as printed to the given stream, to be signed by the
+   * {@link PresentationMLSigner}.
+   */
+  private static final class PartPrintStream extends XmlPrintStream {
+    private final ByteArrayOutputStream bout;
+
+    private PartPrintStream(XmlPrintStream out) {
+      this(new ByteArrayOutputStream(), out);
+    }
+
+    private PartPrintStream(ByteArrayOutputStream bout, XmlPrintStream out) {
+      super(bout);
+      this.bout = bout;
+      setNoIndent(out.isNoIndent());
+      setNoNl(out.isNoNl());
+      setRemoveNl(out.isRemoveNl());
+      if (out.getTextContent() != null) {
+        captureTextContent(0);
+      }
+    }
+
+    private String getPart() {
+      close();
+      return bout.toString();
+    }
+  }
 }
@@ -52,6 +52,11 @@ public class OrderedList extends Element {
     assertContainsChildOfType(Collections.<Class<? extends Element>>singleton(ListItem.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
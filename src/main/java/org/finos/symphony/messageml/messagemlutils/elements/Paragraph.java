@@ -33,6 +33,11 @@ public class Paragraph extends Element {
     super(parent, MESSAGEML_TAG);
   }
 
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     return "\n";
@@ -53,4 +58,9 @@ public class Paragraph extends Element {
     super.updateBiContext(context);
     context.updateItemCount(BiFields.PARAGRAPH.getValue());
   }
+
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
 }
@@ -52,6 +52,11 @@ public class PersonSelector extends FormElement implements LabelableElement, Too
     super(parent, MESSAGEML_TAG, messageFormat);
   }
 
+  @Override
+  boolean overridesBuildAll() {
+    return true;
+  }
+
   @Override
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element) throws InvalidInputException, ProcessingException {
     switch (getFormat()) {
@@ -93,6 +98,11 @@ public class PersonSelector extends FormElement implements LabelableElement, Too
     assertAttributeNotBlank(NAME_ATTR);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
                                MessageMLContext context) {
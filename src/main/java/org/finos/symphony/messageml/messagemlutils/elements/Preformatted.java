@@ -36,6 +36,11 @@ public class Preformatted extends Element {
     super(parent, MESSAGEML_TAG);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
@@ -58,6 +63,11 @@ public class Preformatted extends Element {
     assertPhrasingContent();
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
@@ -55,6 +55,11 @@ public class RoomSelector extends FormElement implements LabelableElement, Toolt
     MAPPER.configure(JsonParser.Feature.ALLOW_SINGLE_QUOTES, true);
   }
 
+  @Override
+  boolean overridesBuildAll() {
+    return true;
+  }
+
   @Override
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element)
       throws InvalidInputException, ProcessingException {
@@ -102,6 +107,11 @@ public class RoomSelector extends FormElement implements LabelableElement, Toolt
     assertAttributeNotBlank(NAME_ATTR);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
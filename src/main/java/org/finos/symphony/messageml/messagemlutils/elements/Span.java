@@ -78,6 +78,11 @@ public class Span extends Element {
     }
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
@@ -1,6 +1,5 @@
 package org.finos.symphony.messageml.messagemlutils.elements;
 
-import org.apache.commons.lang3.tuple.Pair;
 import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
 import org.finos.symphony.messageml.messagemlutils.MessageMLParser;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
@@ -9,7 +8,6 @@ import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -156,21 +154,7 @@ public interface SplittableElement {
   default void fillAttributes(MessageMLParser parser, org.w3c.dom.Node item,
       Map<String, String> attributes)
       throws InvalidInputException {
-    String id = getStringAttribute(item);
-    Optional<Map<Class<? extends SplittableElement>, Map<String, String>>> allSplittableAttributes =
-        parser.getAllSplittableAttributes(id);
-    if (allSplittableAttributes.isPresent()) {
-      for (Map<String, String> splittableAttributes : allSplittableAttributes.get().values()) {
-        attributes.putAll(splittableAttributes);
-      }
-    }
-    Optional<Map<Class<? extends SplittableElement>, Pair<String, String>>> allSplittableValues =
-        parser.getAllSplittableValues(id);
-    if (allSplittableValues.isPresent()) {
-      for (Pair<String, String> splittableValue : allSplittableValues.get().values()) {
-        attributes.put(splittableValue.getKey(), splittableValue.getValue());
-      }
-    }
+    parser.fillSplittableAttributes(getStringAttribute(item), attributes);
   }
 
   /**
@@ -38,4 +38,8 @@ public class Subscript extends Element {
     return new Emphasis(MARKDOWN);
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
 }
@@ -53,6 +53,11 @@ public class Table extends Element {
     assertContentModel(Arrays.asList(TableHeader.class, TableBody.class, TableFooter.class, TableRow.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
@@ -43,4 +43,9 @@ public class TableBody extends Element {
     assertNoText();
     assertContentModel(Collections.<Class<? extends Element>>singleton(TableRow.class));
   }
+
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
 }
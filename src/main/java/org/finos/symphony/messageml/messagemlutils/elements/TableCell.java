@@ -73,4 +73,9 @@ public class TableCell extends Element {
       context.updateItemCount(BiFields.TABLE_CELL_COL_SPAN.getValue());
     }
   }
+
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
 }
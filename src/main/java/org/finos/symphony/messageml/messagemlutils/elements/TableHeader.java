@@ -46,6 +46,11 @@ public class TableHeader extends Element {
     assertContentModel(Collections.<Class<? extends Element>>singleton(TableRow.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
@@ -53,6 +53,11 @@ public class TableRow extends Element {
     assertContentModel(Arrays.asList(TableHeaderCell.class, TableCell.class));
   }
 
+  @Override
+  boolean isValidationSkippedWhenTrusted() {
+    return true;
+  }
+
   @Override
   void updateBiContext(BiContext context) {
     super.updateBiContext(context);
@@ -21,7 +21,6 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import lombok.Getter;
-import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.commonmark.node.Node;
 import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
@@ -51,7 +50,6 @@ public class Tag extends Entity {
   private static final String LEGACY_ENTITY_VERSION = "1.0";
   @Getter
   private TagAttributes tagAttributes = new TagAttributes();
-  @Setter
   private Instrument instrument;
 
 
@@ -132,6 +130,11 @@ public class Tag extends Entity {
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     out.printElement(presentationMLTag, asText(), CLASS_ATTR, PRESENTATIONML_CLASS,
@@ -220,6 +223,16 @@ public class Tag extends Entity {
     return ENTITY_TYPE;
   }
 
+  public void setInstrument(Instrument instrument) {
+    this.instrument = instrument;
+    invalidateRenderCache();
+  }
+
+  @Override
+  boolean overridesAsText() {
+    return true;
+  }
+
   @Override
   public String asText() {
     String text = instrument == null ? tagAttributes.getFallbackTicker()
@@ -84,6 +84,11 @@ public class TextField extends FormElement implements RegexElement, LabelableEle
     validateMinAndMaxLengths();
   }
 
+  @Override
+  boolean overridesBuildAll() {
+    return true;
+  }
+
   @Override
   public void buildAll(MessageMLParser parser, org.w3c.dom.Element element)
       throws InvalidInputException, ProcessingException {
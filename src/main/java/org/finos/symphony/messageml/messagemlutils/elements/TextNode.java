@@ -23,58 +23,98 @@ import org.w3c.dom.Text;
 
 /**
  * Class representing text content.
+ * <p>
+ * The text is a range of a source string, written straight to the output by rendering and {@link #asText()}.
+ * {@link #getText()} returns the source itself when the range covers all of it, and a copy of the range otherwise.
+ * The parser always gives whole strings: the text of the DOM text nodes, or for the plain-text fast path the text of
+ * the message, which the Markdown of the message needs as a string anyway.
  *
  * @author lukasz
  * @since 3/27/17
  */
 public class TextNode extends Element {
-  private String text;
+  // the text is the range [start, end) of the source
+  private String source;
+  private int start;
+  private int end;
 
   public TextNode(Element parent, Text node) {
     this(parent, node.getTextContent());
   }
 
   public TextNode(Element parent, String text) {
+    this(parent, text, 0, text == null ? 0 : text.length());
+  }
+
+  /**
+   * Create a text node referring to a range of the source, which is copied each time the text is requested as a
+   * string.
+   */
+  public TextNode(Element parent, String source, int start, int end) {
     super(parent);
-    this.text = text;
+    setSource(source, start, end);
+  }
+
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
   }
 
   @Override
   public void asPresentationML(XmlPrintStream out,
       MessageMLContext context) {
-    String content = this.text;
-    if (out.isRemoveNl() && !(getParent() instanceof Code) && !(getParent() instanceof TextArea)) { // Do not remove newlines if the parent node is a code node or a text area node
-      content = XmlPrintStream.removeNewLines(content);
-    }
-    content = out.escape(content);
-    out.println(content);
+    // Do not remove newlines if the parent node is a code node or a text area node
+    boolean removeNewLines = out.isRemoveNl() && !(getParent() instanceof Code) && !(getParent() instanceof TextArea);
+    out.printlnEscaped(source == null ? "" : source, start, end, removeNewLines);
   }
 
   @Override
   public Node asMarkdown() {
-    return new org.commonmark.node.Text(this.text);
+    return new org.commonmark.node.Text(getText());
   }
 
   @Override
   protected void buildText(Text node) {
-    this.text = node.getTextContent();
+    String text = node.getTextContent();
+    setSource(text, 0, text == null ? 0 : text.length());
   }
 
   public String getText() {
-    return this.text;
+    return source == null ? null : source.substring(start, end);
   }
 
   public void setText(String text) {
-    this.text = text;
+    setSource(text, 0, text == null ? 0 : text.length());
+    invalidateRenderCache();
+  }
+
+  @Override
+  boolean overridesAsText() {
+    return true;
   }
 
   @Override
   public String asText() {
-    return this.text;
+    return getText();
+  }
+
+  @Override
+  void appendText(StringBuilder b) {
+    if (source == null) {
+      b.append((String) null);
+    } else {
+      b.append(source, start, end);
+    }
   }
 
   @Override
   public String toString() {
-    return "Text(" + this.text + ")";
+    return "Text(" + getText() + ")";
+  }
+
+  private void setSource(String source, int start, int end) {
+    this.source = source;
+    this.start = start;
+    this.end = end;
   }
 }
@@ -130,6 +130,11 @@ public class TimePicker extends FormElement implements LabelableElement, Tooltip
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out,
                                MessageMLContext context) {
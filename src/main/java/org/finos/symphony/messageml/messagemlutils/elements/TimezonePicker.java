@@ -139,6 +139,11 @@ public class TimezonePicker extends FormElement implements LabelableElement, Too
     }
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   public void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, Object> presentationAttrs = buildTimezonePickerInputAttributes();
@@ -134,12 +134,17 @@ public class UIAction extends Element {
     assertContainsAlwaysChildOfType(allowedChildren);
   }
 
+  @Override
+  boolean overridesAsPresentationML() {
+    return true;
+  }
+
   @Override
   void asPresentationML(XmlPrintStream out, MessageMLContext context) {
     Map<String, String> presentationAttrs = buildAUIActionAttributes();
     out.openElement(getPresentationMLTag(), presentationAttrs);
     for (Element child : getChildren()) {
-      child.asPresentationML(out, context);
+      child.renderPresentationML(out, context);
     }
     out.closeElement();
   }
@@ -23,13 +23,12 @@ import org.commonmark.parser.delimiter.DelimiterProcessor;
 import org.commonmark.parser.delimiter.DelimiterRun;
 import org.finos.symphony.messageml.messagemlutils.markdown.nodes.KeywordNode;
 import org.finos.symphony.messageml.messagemlutils.markdown.nodes.MentionNode;
-import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableCellNode;
 import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableNode;
-import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableRowNode;
 
 /**
  * Custom processor for entities (tags, mentions, urls). Supports text processed by the method
- * <i>enrich()</i> in {@link MarkdownParser}.
+ * <i>enrichMarkdown()</i> in {@link MarkdownIngestEngine}. Tables are created empty, referencing their rows in the
+ * media of the message by position.
  * @author lukasz
  * @since 4/11/17
  */
@@ -90,17 +89,11 @@ public class EntityDelimiterProcessor implements DelimiterProcessor {
           }
 
         case TABLE:
-          TableNode tableNode = new TableNode();
-          for (String row : text[1].split(String.valueOf(GROUP_DELIMITER))) {
-            TableRowNode rowNode = new TableRowNode();
-            for (String cell : row.split(String.valueOf(RECORD_DELIMITER))) {
-              TableCellNode cellNode = new TableCellNode();
-              cellNode.appendChild(new Text(cell));
-              rowNode.appendChild(cellNode);
-            }
-            tableNode.appendChild(rowNode);
+          try {
+            return new TableNode(Integer.parseInt(text[1]));
+          } catch (NumberFormatException e) {
+            return null;
           }
-          return tableNode;
 
         default:
           return null;
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.markdown;
+
+import static org.finos.symphony.messageml.messagemlutils.markdown.EntityDelimiterProcessor.ENTITY_DELIMITER;
+import static org.finos.symphony.messageml.messagemlutils.markdown.EntityDelimiterProcessor.FIELD_DELIMITER;
+import static org.finos.symphony.messageml.messagemlutils.markdown.EntityDelimiterProcessor.TABLE;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.commonmark.node.Block;
+import org.commonmark.node.BlockQuote;
+import org.commonmark.node.FencedCodeBlock;
+import org.commonmark.node.ListBlock;
+import org.commonmark.node.Node;
+import org.commonmark.node.ThematicBreak;
+import org.commonmark.parser.Parser;
+import org.finos.symphony.messageml.messagemlutils.elements.FormatEnum;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.elements.TextNode;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Converts legacy messages in Markdown and JSON entities to MessageMLV2 documents. The engine holds no state specific
+ * to a message: a single instance is shared by all the {@link MarkdownParser}s and can be used concurrently.
+ * <p>
+ * Messages are parsed with one of the preconfigured {@link Variant}s of the commonmark parser, selected from the
+ * content of the message.
+ */
+public final class MarkdownIngestEngine {
+  private static final MarkdownIngestEngine INSTANCE = new MarkdownIngestEngine();
+  private static final String INDEX = "index";
+  private static final String INDEX_START = "indexStart";
+  private static final String INDEX_END = "indexEnd";
+  private static final String TYPE = "type";
+  private static final String ID = "id";
+  private static final String TEXT = "text";
+  private static final String BLOCK_START_CHARACTERS = "-*_+`~>";
+  private static final String INLINE_SYNTAX_CHARACTERS = "\\`*_[]<&";
+
+  /**
+   * Preconfigured variants of the commonmark parser.
+   */
+  public enum Variant {
+    /** Parse thematic breaks, fenced code blocks, block quotes and lists along with inline content and entities. */
+    STANDARD,
+    /** Parse inline content and entities only, for messages without any line starting a block. */
+    INLINE_ONLY
+  }
+
+  private final Map<Variant, Parser> parsers = new EnumMap<>(Variant.class);
+
+  private MarkdownIngestEngine() {
+    Set<Class<? extends Block>> enabledBlockTypes = new HashSet<>();
+    enabledBlockTypes.add(ThematicBreak.class);
+    enabledBlockTypes.add(FencedCodeBlock.class);
+    enabledBlockTypes.add(BlockQuote.class);
+    enabledBlockTypes.add(ListBlock.class);
+
+    parsers.put(Variant.STANDARD, Parser.builder()
+        .enabledBlockTypes(enabledBlockTypes)
+        .customDelimiterProcessor(new EntityDelimiterProcessor())
+        .build());
+    parsers.put(Variant.INLINE_ONLY, Parser.builder()
+        .enabledBlockTypes(Collections.<Class<? extends Block>>emptySet())
+        .customDelimiterProcessor(new EntityDelimiterProcessor())
+        .build());
+  }
+
+  public static MarkdownIngestEngine getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Parse the Markdown message and entity JSON into a MessageML document.
+   */
+  public MessageML parse(String message, JsonNode entities, JsonNode media, IDataProvider dataProvider)
+      throws InvalidInputException {
+    message = message.replace((char) 160, (char) 32);
+    List<JsonNode> tables = new ArrayList<>();
+    String enriched = enrichMarkdown(message, entities, media, tables);
+    Node markdown = parse(enriched, selectVariant(enriched));
+
+    MarkdownIngestVisitor visitor = new MarkdownIngestVisitor(dataProvider, tables);
+    markdown.accept(visitor);
+    return visitor.getMessageML();
+  }
+
+  /**
+   * Build the MessageML document of a Markdown message made of a single line of text without Markdown syntax nor
+   * entities, as it would be built from its Markdown tree, or return null if the message has to be fully parsed.
+   */
+  public MessageML parsePlainText(String message, JsonNode entities, JsonNode media) {
+    message = message.replace((char) 160, (char) 32);
+    if (!isPlainText(message) || (entities != null && entities.findParent(INDEX_START) != null)
+        || (media != null && media.findParent(INDEX) != null)) {
+      return null;
+    }
+
+    MessageML messageML = new MessageML(FormatEnum.PRESENTATIONML, MessageML.MESSAGEML_VERSION);
+    messageML.addChild(new TextNode(messageML, message));
+    return messageML;
+  }
+
+  /**
+   * Whether the message is parsed as a single paragraph holding a single text node equal to the message.
+   */
+  private static boolean isPlainText(String message) {
+    if (message.isEmpty() || Character.isWhitespace(message.charAt(0))
+        || Character.isWhitespace(message.charAt(message.length() - 1))
+        || selectVariant(message.substring(0, 1)) != Variant.INLINE_ONLY) {
+      return false;
+    }
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      if (c < ' ' || (c >= '\u007F' && c <= '\u009F') || INLINE_SYNTAX_CHARACTERS.indexOf(c) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Parse the Markdown, enriched with entity markup, with the given variant of the parser.
+   */
+  public Node parse(String markdown, Variant variant) {
+    return parsers.get(variant).parse(markdown);
+  }
+
+  /**
+   * Select the variant of the parser producing the same document tree as the standard one for the Markdown, with the
+   * least work: block parsing is only needed when a line may start one of the blocks enabled in the standard variant.
+   */
+  public static Variant selectVariant(CharSequence markdown) {
+    boolean lineStart = true;
+    for (int i = 0; i < markdown.length(); i++) {
+      char c = markdown.charAt(i);
+      if (c == '\n' || c == '\r') {
+        lineStart = true;
+      } else if (lineStart && c != ' ' && c != '\t') {
+        if (mayStartBlock(markdown, i, c)) {
+          return Variant.STANDARD;
+        }
+        lineStart = false;
+      }
+    }
+    return Variant.INLINE_ONLY;
+  }
+
+  /**
+   * Whether the first character of a line may start a block. Emphasis delimiters only start a list item when followed
+   * by a blank, or a thematic break when the rest of the line is made of the same delimiter.
+   */
+  private static boolean mayStartBlock(CharSequence markdown, int i, char c) {
+    if (c == '_' || c == '*') {
+      boolean listItem = c == '*' && (i + 1 == markdown.length() || isBlank(markdown.charAt(i + 1)));
+      return listItem || isThematicBreak(markdown, i, c);
+    }
+    return BLOCK_START_CHARACTERS.indexOf(c) >= 0 || (c >= '0' && c <= '9');
+  }
+
+  private static boolean isThematicBreak(CharSequence markdown, int i, char delimiter) {
+    int delimiters = 0;
+    for (; i < markdown.length() && markdown.charAt(i) != '\n' && markdown.charAt(i) != '\r'; i++) {
+      char c = markdown.charAt(i);
+      if (c == delimiter) {
+        delimiters++;
+      } else if (c != ' ' && c != '\t') {
+        return false;
+      }
+    }
+    return delimiters >= 3;
+  }
+
+  private static boolean isBlank(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+
+  /**
+   * Generate intermediate markup to delimit custom nodes representing entities for further processing by the
+   * Markdown parser. The markup of a table only holds its position in the given list, to which the rows of the table
+   * are added.
+   */
+  private static String enrichMarkdown(String message, JsonNode entitiesNode, JsonNode mediaNode,
+      List<JsonNode> tables) throws InvalidInputException {
+    IndexedNodes entities = IndexedNodes.EMPTY;
+    IndexedNodes media = IndexedNodes.EMPTY;
+
+    if (entitiesNode != null) {
+      List<JsonNode> nodes = entitiesNode.findParents(INDEX_START);
+      validateEntities(nodes);
+      entities = new IndexedNodes(nodes, node -> node.get(INDEX_START).intValue(), node -> node);
+    }
+
+    if (mediaNode != null) {
+      List<JsonNode> nodes = mediaNode.findParents(INDEX);
+      validateMedia(nodes);
+      media = new IndexedNodes(nodes, node -> node.get(INDEX).intValue(), node -> node.get(TEXT));
+    }
+
+    // If entity indices are outside the message, the message is padded with spaces to the necessary length
+    int length = Math.max(message.length(), Math.max(entities.lastIndex(), media.lastIndex()) + 1);
+
+    StringBuilder output = new StringBuilder(length + 32 * (entities.size() + media.size()));
+    int e = 0;
+    int m = 0;
+    int i = 0;
+
+    while (i < length) {
+      // entities and media starting in a skipped range are ignored
+      while (e < entities.size() && entities.index(e) < i) {
+        e++;
+      }
+      while (m < media.size() && media.index(m) < i) {
+        m++;
+      }
+
+      int next = Math.min(e < entities.size() ? entities.index(e) : length, m < media.size() ? media.index(m) : length);
+      appendPadded(output, message, i, Math.min(next, length));
+      i = next;
+
+      if (i >= length) {
+        break;
+      } else if (e < entities.size() && entities.index(e) == i) {
+        JsonNode entity = entities.node(e);
+        String entityType = entity.get(TYPE).asText().toUpperCase();
+        String id = entity.get(ID).asText();
+
+        output.append(ENTITY_DELIMITER);
+        output.append(entityType).append(FIELD_DELIMITER);
+        output.append(id);
+        output.append(ENTITY_DELIMITER);
+
+        // We explicitly check the entity indices above, but make double sure that we don't get into an infinite loop here
+        int endIndex = entity.get(INDEX_END).intValue() - 1;
+        i = Math.max(endIndex, i) + 1;
+
+      } else {
+        output.append(ENTITY_DELIMITER);
+        output.append(TABLE).append(FIELD_DELIMITER);
+        output.append(tables.size());
+        output.append(ENTITY_DELIMITER);
+        tables.add(media.node(m));
+        appendPadded(output, message, i, i + 1);
+        i++;
+      }
+    }
+
+    return output.toString();
+  }
+
+  /**
+   * Append a range of the message, padded with spaces past its end.
+   */
+  private static void appendPadded(StringBuilder output, String message, int start, int end) {
+    int textEnd = Math.min(end, message.length());
+    if (start < textEnd) {
+      output.append(message, start, textEnd);
+    }
+    for (int i = Math.max(start, textEnd); i < end; i++) {
+      output.append(' ');
+    }
+  }
+
+  /**
+   * Verify that JSON entities contain the required fields and that entity indices are correct.
+   */
+  private static void validateEntities(List<JsonNode> nodes) throws InvalidInputException {
+    for (JsonNode node : nodes) {
+
+      for (String key : new String[] {INDEX_START, INDEX_END, ID, TYPE}) {
+        if (node.path(key).isMissingNode()) {
+          throw new InvalidInputException("Required field \"" + key + "\" missing from the entity payload");
+        }
+      }
+
+      int startIndex = node.get(INDEX_START).intValue();
+      int endIndex = node.get(INDEX_END).intValue();
+
+      if (endIndex <= startIndex) {
+        throw new InvalidInputException(String.format("Invalid entity payload: %s (start index: %s, end index: %s)",
+            node.get(ID).textValue(), startIndex, endIndex));
+      }
+
+    }
+  }
+
+  /**
+   * Verify that JSON media node contains valid table payload.
+   */
+  private static void validateMedia(List<JsonNode> nodes) throws InvalidInputException {
+    for (JsonNode node : nodes) {
+      JsonNode text = node.path(TEXT);
+      if (!text.isMissingNode() && (!text.isArray() || !text.get(0).isArray())) {
+        throw new InvalidInputException(String.format("Invalid table payload: %s (index: %s)", text.asText(), node.get(INDEX)));
+      }
+    }
+  }
+
+  /**
+   * JSON nodes sorted by their index in the message. When several nodes have the same index, the last one wins.
+   */
+  private static final class IndexedNodes {
+    private static final IndexedNodes EMPTY = new IndexedNodes();
+
+    private final int[] indices;
+    private final JsonNode[] nodes;
+
+    private IndexedNodes() {
+      this.indices = new int[0];
+      this.nodes = new JsonNode[0];
+    }
+
+    private IndexedNodes(List<JsonNode> source, ToIntFunction<JsonNode> index, Function<JsonNode, JsonNode> value) {
+      // sort by index then by position in the source, packed in a single long
+      long[] keys = new long[source.size()];
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = ((long) index.applyAsInt(source.get(i)) << 32) | i;
+      }
+      Arrays.sort(keys);
+
+      int[] sortedIndices = new int[keys.length];
+      JsonNode[] sortedNodes = new JsonNode[keys.length];
+      int size = 0;
+      for (int i = 0; i < keys.length; i++) {
+        int nodeIndex = (int) (keys[i] >> 32);
+        if (size > 0 && sortedIndices[size - 1] == nodeIndex) {
+          size--;
+        }
+        sortedIndices[size] = nodeIndex;
+        sortedNodes[size] = value.apply(source.get((int) keys[i]));
+        size++;
+      }
+      this.indices = Arrays.copyOf(sortedIndices, size);
+      this.nodes = Arrays.copyOf(sortedNodes, size);
+    }
+
+    private int size() {
+      return indices.length;
+    }
+
+    private int index(int i) {
+      return indices[i];
+    }
+
+    private JsonNode node(int i) {
+      return nodes[i];
+    }
+
+    private int lastIndex() {
+      return indices.length == 0 ? 0 : indices[indices.length - 1];
+    }
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.markdown;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.commonmark.node.AbstractVisitor;
+import org.commonmark.node.CustomBlock;
+import org.commonmark.node.CustomNode;
+import org.commonmark.node.Document;
+import org.commonmark.node.Emphasis;
+import org.commonmark.node.FencedCodeBlock;
+import org.commonmark.node.HardLineBreak;
+import org.commonmark.node.HtmlInline;
+import org.commonmark.node.Node;
+import org.commonmark.node.StrongEmphasis;
+import org.commonmark.node.Text;
+import org.finos.symphony.messageml.messagemlutils.elements.Bold;
+import org.finos.symphony.messageml.messagemlutils.elements.BulletList;
+import org.finos.symphony.messageml.messagemlutils.elements.CashTag;
+import org.finos.symphony.messageml.messagemlutils.elements.Code;
+import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.elements.FormatEnum;
+import org.finos.symphony.messageml.messagemlutils.elements.HashTag;
+import org.finos.symphony.messageml.messagemlutils.elements.Italic;
+import org.finos.symphony.messageml.messagemlutils.elements.LineBreak;
+import org.finos.symphony.messageml.messagemlutils.elements.Link;
+import org.finos.symphony.messageml.messagemlutils.elements.ListItem;
+import org.finos.symphony.messageml.messagemlutils.elements.Mention;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.elements.OrderedList;
+import org.finos.symphony.messageml.messagemlutils.elements.Table;
+import org.finos.symphony.messageml.messagemlutils.elements.TableCell;
+import org.finos.symphony.messageml.messagemlutils.elements.TableRow;
+import org.finos.symphony.messageml.messagemlutils.elements.TextNode;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.markdown.nodes.KeywordNode;
+import org.finos.symphony.messageml.messagemlutils.markdown.nodes.MentionNode;
+import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableCellNode;
+import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableNode;
+import org.finos.symphony.messageml.messagemlutils.markdown.nodes.TableRowNode;
+import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+
+import java.util.List;
+
+/**
+ * State of the conversion of a single Markdown document tree, parsed by {@link MarkdownIngestEngine}, to a MessageML
+ * document. A new instance is used for each message.
+ */
+class MarkdownIngestVisitor extends AbstractVisitor {
+  private final IDataProvider dataProvider;
+  private final List<JsonNode> tables;
+  private MessageML messageML;
+  private Element parent;
+  private int index;
+
+  MarkdownIngestVisitor(IDataProvider dataProvider, List<JsonNode> tables) {
+    this.dataProvider = dataProvider;
+    this.tables = tables;
+  }
+
+  /**
+   * Get the MessageML document built while visiting the Markdown document.
+   */
+  MessageML getMessageML() {
+    return messageML;
+  }
+
+  @Override
+  public void visit(Document document) {
+    messageML = new MessageML(FormatEnum.PRESENTATIONML, MessageML.MESSAGEML_VERSION);
+    parent = messageML;
+    visitChildren(document);
+  }
+
+  @Override
+  public void visit(Text text) {
+    TextNode node = new TextNode(parent, text.getLiteral());
+    parent.addChild(node);
+    visitChildren(text);
+  }
+
+  @Override
+  public void visit(HtmlInline tag) {
+    TextNode node = new TextNode(parent, tag.getLiteral());
+    parent.addChild(node);
+    visitChildren(tag);
+  }
+
+  @Override
+  public void visit(HardLineBreak hardLineBreak) {
+    LineBreak node = new LineBreak(parent);
+    parent.addChild(node);
+    visitChildren(hardLineBreak);
+  }
+
+  @Override
+  public void visit(org.commonmark.node.Paragraph paragraph) {
+    if (!(parent instanceof ListItem) && !(parent instanceof MessageML && paragraph.getPrevious() == null)) {
+      LineBreak node = new LineBreak(parent);
+      parent.addChild(node);
+    }
+    visitChildren(paragraph);
+  }
+
+  @Override
+  public void visit(Emphasis em) {
+    Italic node = new Italic(parent);
+    visitChildren(node, em);
+  }
+
+  @Override
+  public void visit(StrongEmphasis b) {
+    Bold node = new Bold(parent);
+    visitChildren(node, b);
+  }
+
+  @Override
+  public void visit(org.commonmark.node.Link a) {
+    try {
+      Link node = new Link(parent, a.getDestination(), dataProvider);
+      node.validate();
+      visitChildren(node, a);
+    } catch (InvalidInputException e) {
+      TextNode node = new TextNode(parent, a.getDestination());
+      visitChildren(node, a);
+    }
+  }
+
+  @Override
+  public void visit(org.commonmark.node.BulletList ul) {
+    BulletList node = new BulletList(parent);
+    visitChildren(node, ul);
+  }
+
+  @Override
+  public void visit(org.commonmark.node.OrderedList ol) {
+    OrderedList node = new OrderedList(parent);
+    visitChildren(node, ol);
+  }
+
+  @Override
+  public void visit(org.commonmark.node.ListItem li) {
+    ListItem node = new ListItem(parent);
+    visitChildren(node, li);
+  }
+
+  @Override
+  public void visit(FencedCodeBlock code) {
+    if (code.getFenceChar() == Code.MARKDOWN_DELIMITER_CHAR && code.getFenceLength() == Code.MARKDOWN_DELIMITER_LENGTH) {
+      Code node = new Code(parent, StringUtils.isNotEmpty(code.getInfo()) ? code.getInfo() : null);
+      TextNode text = new TextNode(node, code.getLiteral().trim());
+      node.addChild(text);
+      visitChildren(node, code);
+    } else {
+      String delimiter = StringUtils.repeat(code.getFenceChar(), code.getFenceLength());
+      Text node = new Text(delimiter + code.getLiteral().trim() + delimiter);
+      visit(node);
+    }
+  }
+
+  @Override
+  public void visit(org.commonmark.node.Code code) {
+    Code node = new Code(parent);
+    TextNode text = new TextNode(node, code.getLiteral().trim());
+    node.addChild(text);
+    visitChildren(node, code);
+  }
+
+  @Override
+  public void visit(CustomNode node) {
+    if (node instanceof KeywordNode) {
+      visit((KeywordNode) node);
+    } else if (node instanceof MentionNode) {
+      visit((MentionNode) node);
+    }
+  }
+
+  @Override
+  public void visit(CustomBlock block) {
+    if (block instanceof TableNode) {
+      visit((TableNode) block);
+    } else if (block instanceof TableRowNode) {
+      visit((TableRowNode) block);
+    } else if (block instanceof TableCellNode) {
+      visit((TableCellNode) block);
+    }
+  }
+
+  private void visit(KeywordNode keyword) {
+    switch (keyword.getPrefix()) {
+      case HashTag.PREFIX:
+        HashTag hashtag = new HashTag(parent, ++index, keyword.getText());
+        visitChildren(hashtag, keyword);
+        break;
+      case CashTag.PREFIX:
+        CashTag cashtag = new CashTag(parent, ++index, keyword.getText());
+        visitChildren(cashtag, keyword);
+        break;
+    }
+  }
+
+  private void visit(MentionNode mention) {
+    try {
+      Mention node = new Mention(parent, ++index, mention.getUid(), dataProvider);
+      node.validate();
+      visitChildren(node, mention);
+    } catch (InvalidInputException e) {
+      String text = ObjectUtils.firstNonNull(mention.getPrettyName(), mention.getScreenName(), mention.getEmail(),
+          String.valueOf(mention.getUid()));
+      TextNode node = new TextNode(parent, text);
+      visitChildren(node, mention);
+    }
+  }
+
+  private void visit(TableNode table) {
+    Table node = new Table(parent);
+    if (table.getMediaIndex() < 0) {
+      visitChildren(node, table);
+    } else if (table.getMediaIndex() < tables.size()) {
+      parent.addChild(node);
+      addRows(node, tables.get(table.getMediaIndex()));
+    } else {
+      parent.addChild(node);
+    }
+  }
+
+  /**
+   * Build the rows of a legacy table straight from its JSON array of arrays of cells.
+   */
+  private void addRows(Table table, JsonNode rows) {
+    for (JsonNode row : rows) {
+      TableRow rowNode = new TableRow(table);
+      table.addChild(rowNode);
+      for (JsonNode cell : row) {
+        TableCell cellNode = new TableCell(rowNode);
+        rowNode.addChild(cellNode);
+        cellNode.addChild(new TextNode(cellNode, cell.asText()));
+      }
+    }
+  }
+
+  private void visit(TableRowNode tr) {
+    TableRow node = new TableRow(parent);
+    visitChildren(node, tr);
+  }
+
+  private void visit(TableCellNode td) {
+    TableCell node = new TableCell(parent);
+    visitChildren(node, td);
+  }
+
+  private void visitChildren(Element element, Node node) {
+    parent.addChild(element);
+    parent = element;
+    visitChildren(node);
+    parent = element.getParent();
+  }
+}
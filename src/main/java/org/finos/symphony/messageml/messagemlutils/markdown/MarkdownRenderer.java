@@ -16,6 +16,7 @@
 
 package org.finos.symphony.messageml.messagemlutils.markdown;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
@@ -42,17 +43,22 @@ import org.finos.symphony.messageml.messagemlutils.markdown.nodes.form.SelectNod
 import org.finos.symphony.messageml.messagemlutils.markdown.nodes.form.TextAreaNode;
 import org.finos.symphony.messageml.messagemlutils.markdown.nodes.form.TextFieldNode;
 import org.finos.symphony.messageml.messagemlutils.util.XmlPrintStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.text.MessageFormat;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Used for converting MessageMLV2 to legacy formats. Renders Commonmark {@link Node}s generated by
  * {@link MessageML}.asMarkdown() as their text (Markdown) representation
- * and associated entity data in JSON format.
+ * and associated entity data in JSON format. Nodes can also be fed one by one while traversing the MessageML tree,
+ * in which case they are rendered without building the whole document tree.
  * @author lukasz
  * @since 3/30/17
  */
@@ -76,10 +82,13 @@ public class MarkdownRenderer extends AbstractVisitor {
   private static final String DATETIMES = "datetimes";
   private static final String INDENT = "  ";
 
-  private static final Pattern NOESCAPE_PATTERN = Pattern.compile("^\\s*([_*\\-+`])\\1*\\s*$");
+  private static final Logger logger = LoggerFactory.getLogger(MarkdownRenderer.class);
 
   private final TrackingWriter writer = new TrackingWriter(new StringBuilder());
-  private final ObjectNode json = new ObjectNode(JsonNodeFactory.instance);
+  private final Map<String, List<LegacyEntity>> entities = new LinkedHashMap<>();
+  private ObjectNode json;
+  private final Deque<State> states = new ArrayDeque<>();
+  private final boolean detachRendered;
 
   private boolean removeNewlines = true;
   private Character bulletListMarker;
@@ -93,138 +102,365 @@ public class MarkdownRenderer extends AbstractVisitor {
    * @param document the input document tree.
    */
   public MarkdownRenderer(Document document) {
+    this(false);
     visit(document);
   }
 
+  /**
+   * Create a renderer fed node by node through {@link #enter(Node)} and {@link #exit()}, as a document tree is
+   * traversed in document order. Nodes are rendered as soon as they are entered and released once their next sibling
+   * is known, so that the whole document tree is never held in memory.
+   */
+  public MarkdownRenderer() {
+    this(true);
+  }
+
+  private MarkdownRenderer(boolean detachRendered) {
+    this.detachRendered = detachRendered;
+    this.states.push(new State(new Document(), Mode.RENDER, false));
+  }
+
+  /**
+   * Append the node to the node being rendered and render it, along with the children it was created with.
+   * Nodes entered until the matching call to {@link #exit()} are appended to this node.
+   * @param node the node to render
+   */
+  public void enter(Node node) {
+    State parent = states.peek();
+    boolean attached = false;
+    if (parent.mode != Mode.SKIP) {
+      try {
+        parent.node.appendChild(node);
+        attached = true;
+      } catch (IllegalArgumentException ex) {
+        // minor issue that appears while parsing Markdown, this fix does not impact Markdown generation
+        logger.trace("{} cannot be appended to {}", node, parent.node, ex);
+      }
+    }
+
+    open(node, attached);
+    if (states.peek().mode != Mode.SKIP) {
+      renderNodes(node.getFirstChild(), true);
+    }
+  }
+
+  /**
+   * Complete the rendering of the node last entered.
+   */
+  public void exit() {
+    State state = close();
+    // render the nodes its parent may have added after the node when appending it, such as the line breaks of dialogs
+    renderNodes(state.node.getNext(), true);
+  }
+
   @Override
   public void visit(Document document) {
-    visitChildren(document);
+    renderNodes(document.getFirstChild(), true);
   }
 
   @Override
   public void visit(Text text) {
-    String content = text.getLiteral();
-    if (removeNewlines) {
-      content = XmlPrintStream.removeNewLines(content);
-    }
-    writer.write(addEscapeCharacter(content));
+    renderNodes(text, false);
   }
 
-
   @Override
   public void visit(HardLineBreak hardLineBreak) {
-    writer.line();
+    renderNodes(hardLineBreak, false);
   }
 
   @Override
   public void visit(Paragraph paragraph) {
-    writer.doubleLine();
-    if (paragraph.getFirstChild() != null) {
-      visitChildren(paragraph);
-      writer.doubleLine();
-    }
+    renderNodes(paragraph, false);
   }
 
   @Override
   public void visit(Emphasis em) {
-    visitDelimited(em);
+    renderNodes(em, false);
   }
 
   @Override
   public void visit(StrongEmphasis b) {
-    visitDelimited(b);
+    renderNodes(b, false);
   }
 
   @Override
   public void visit(Link a) {
-    String href = a.getDestination();
-    String title = StringUtils.defaultIfBlank(a.getTitle(), a.getDestination());
-    String markdown = MessageFormat.format("[ {0} ]({1})", title, href);
-
-    ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
-    node.put(ID, href);
-    node.put(TYPE, "URL");
-    node.put(INDEX_END, writer.length() + markdown.length());
-    node.put(INDEX_START, writer.length());
-    node.put(TEXT, title);
-    node.put(EXPANDED_URL, href);
-    putJsonObject(URLS, node);
-
-    writer.write(markdown);
+    renderNodes(a, false);
   }
 
   @Override
   public void visit(BulletList ul) {
-    writer.line();
-
-    Character previousMarker = bulletListMarker;
-    int previousLevel = bulletListLevel;
+    renderNodes(ul, false);
+  }
 
-    bulletListLevel += (ul.getParent() instanceof ListItem) ? 1 : 0;
+  @Override
+  public void visit(org.commonmark.node.OrderedList ol) {
+    renderNodes(ol, false);
+  }
 
-    bulletListMarker = ul.getBulletMarker();
-    visitChildren(ul);
-    writer.line();
+  @Override
+  public void visit(ListItem li) {
+    renderNodes(li, false);
+  }
 
-    bulletListMarker = previousMarker;
-    bulletListLevel = previousLevel;
+  @Override
+  public void visit(FencedCodeBlock code) {
+    renderNodes(code, false);
+  }
 
-    writer.line();
+  @Override
+  public void visit(CustomNode node) {
+    renderNodes(node, false);
   }
 
   @Override
-  public void visit(org.commonmark.node.OrderedList ol) {
-    writer.line();
+  public void visit(CustomBlock node) {
+    renderNodes(node, false);
+  }
 
-    Integer previousCounter = orderedListCounter;
-    Character previousDelimiter = orderedListDelimiter;
-    int previousLevel = orderedListLevel;
+  /**
+   * Render attached nodes along with their subtrees: the first node and, if requested, the siblings following it.
+   */
+  private void renderNodes(Node first, boolean siblings) {
+    int depth = states.size();
+    Node node = first;
+    while (node != null) {
+      open(node, true);
+      Node next = (states.peek().mode != Mode.SKIP) ? node.getFirstChild() : null;
+      while (next == null && states.size() > depth) {
+        State state = close();
+        next = (siblings || states.size() > depth) ? state.node.getNext() : null;
+      }
+      node = next;
+    }
+  }
 
-    orderedListLevel += (ol.getParent() instanceof ListItem) ? 1 : 0;
+  /**
+   * Start rendering the node, according to how the node being rendered renders its children.
+   */
+  private void open(Node node, boolean attached) {
+    State parent = states.peek();
+    State state;
+    if (!attached || parent.mode == Mode.SKIP) {
+      state = new State(node, Mode.SKIP, false);
+    } else if (parent.mode == Mode.TEXT_ONLY) {
+      // only text nodes are rendered, at any level, the other nodes are only traversed
+      if (node.getClass() == Text.class) {
+        writeText((Text) node);
+        state = new State(node, Mode.SKIP, false);
+      } else {
+        state = new State(node, Mode.TEXT_ONLY, false);
+      }
+    } else {
+      flushDelimiter(parent);
+      parent.hasChildren = true;
+      state = new State(node, Mode.RENDER, true);
+      openNode(state);
+    }
+    states.push(state);
 
-    orderedListCounter = ol.getStartNumber();
-    orderedListDelimiter = ol.getDelimiter();
-    visitChildren(ol);
-    writer.line();
+    if (detachRendered && attached) {
+      while (node.getPrevious() != null) {
+        node.getPrevious().unlink();
+      }
+    }
+  }
 
-    orderedListCounter = previousCounter;
-    orderedListDelimiter = previousDelimiter;
-    orderedListLevel = previousLevel;
+  /**
+   * Complete the rendering of the node on top of the stack and remove it.
+   */
+  private State close() {
+    State state = states.pop();
+    if (state.rendered) {
+      closeNode(state, states.peek());
+    }
+    return state;
+  }
 
-    writer.line();
+  private void openNode(State state) {
+    Node node = state.node;
+    if (node instanceof Text) {
+      writeText((Text) node);
+      state.mode = Mode.SKIP;
+    } else if (node instanceof HardLineBreak) {
+      writer.line();
+      state.mode = Mode.SKIP;
+    } else if (node instanceof Paragraph) {
+      writer.doubleLine();
+    } else if (node instanceof Emphasis || node instanceof StrongEmphasis) {
+      writer.write(((Delimited) node).getOpeningDelimiter());
+    } else if (node instanceof Link) {
+      writeLink((Link) node);
+      state.mode = Mode.SKIP;
+    } else if (node instanceof BulletList) {
+      writer.line();
+      state.previousMarker = bulletListMarker;
+      state.previousLevel = bulletListLevel;
+
+      bulletListLevel += (node.getParent() instanceof ListItem) ? 1 : 0;
+      bulletListMarker = ((BulletList) node).getBulletMarker();
+    } else if (node instanceof org.commonmark.node.OrderedList) {
+      writer.line();
+      state.previousCounter = orderedListCounter;
+      state.previousDelimiter = orderedListDelimiter;
+      state.previousLevel = orderedListLevel;
+
+      org.commonmark.node.OrderedList ol = (org.commonmark.node.OrderedList) node;
+      orderedListLevel += (ol.getParent() instanceof ListItem) ? 1 : 0;
+      orderedListCounter = ol.getStartNumber();
+      orderedListDelimiter = ol.getDelimiter();
+    } else if (node instanceof ListItem) {
+      if (orderedListCounter != null) {
+        writer.write(StringUtils.repeat(INDENT, orderedListLevel) + String.valueOf(orderedListCounter) +
+            orderedListDelimiter + " ");
+        state.ordered = true;
+      } else if (bulletListMarker != null) {
+        writer.write( StringUtils.repeat(INDENT, bulletListLevel) + bulletListMarker + " ");
+      } else {
+        state.mode = Mode.SKIP;
+        state.rendered = false;
+      }
+    } else if (node instanceof FencedCodeBlock) {
+      FencedCodeBlock code = (FencedCodeBlock) node;
+      writer.line();
+      writer.writeStripped(StringUtils.repeat(code.getFenceChar(), code.getFenceLength()));
+      if (code.getInfo() != null) {
+        writer.write(code.getInfo());
+      }
+      writer.line();
+      state.mode = Mode.TEXT_ONLY;
+    } else if (node instanceof CustomNode) {
+      writeCustomNode((CustomNode) node);
+      state.mode = Mode.SKIP;
+    } else if (node instanceof CustomBlock) {
+      openCustomBlock(state);
+    }
+    // other nodes only render their children
   }
 
-  @Override
-  public void visit(ListItem li) {
-    if (orderedListCounter != null) {
-      writer.write(StringUtils.repeat(INDENT, orderedListLevel) + String.valueOf(orderedListCounter) +
-          orderedListDelimiter + " ");
-      visitChildren(li);
+  private void openCustomBlock(State state) {
+    Node node = state.node;
+    if (node instanceof TableNode) {
+      writer.write(((TableNode) node).getOpeningDelimiter());
+    } else if (node instanceof TableRowNode || node instanceof TableCellNode) {
+      // delimiters are written after the content
+    } else if (node instanceof PreformattedNode) {
+      this.removeNewlines = false;
+      writer.write(((PreformattedNode) node).getOpeningDelimiter());
+    } else if (node instanceof FormNode) {
+      writer.write(((FormNode) node).getOpeningDelimiter());
+    } else if (node instanceof SelectNode) {
+      visit((SelectNode) node);
+    } else if (node instanceof OptionNode) {
+      writer.write(((OptionNode) node).getOpeningDelimiter());
+    } else if (node instanceof ButtonNode) {
+      writer.write(((ButtonNode) node).getOpeningDelimiter());
+    } else {
+      if (node instanceof TextFieldNode) {
+        visit((TextFieldNode) node);
+      } else if (node instanceof TextAreaNode) {
+        visit((TextAreaNode) node);
+      } else if (node instanceof PersonSelectorNode) {
+        visit((PersonSelectorNode) node);
+      } else if (node instanceof FormElementNode) {
+        visit((FormElementNode) node);
+      }
+      state.mode = Mode.SKIP;
+    }
+  }
+
+  private void closeNode(State state, State parent) {
+    Node node = state.node;
+    if (node instanceof Paragraph) {
+      if (state.hasChildren) {
+        writer.doubleLine();
+      }
+    } else if (node instanceof Emphasis || node instanceof StrongEmphasis) {
+      writer.write(((Delimited) node).getClosingDelimiter());
+    } else if (node instanceof BulletList) {
+      writer.line();
+      bulletListMarker = state.previousMarker;
+      bulletListLevel = state.previousLevel;
+      writer.line();
+    } else if (node instanceof org.commonmark.node.OrderedList) {
+      writer.line();
+      orderedListCounter = state.previousCounter;
+      orderedListDelimiter = state.previousDelimiter;
+      orderedListLevel = state.previousLevel;
+      writer.line();
+    } else if (node instanceof ListItem) {
       writer.line();
-      orderedListCounter++;
-    } else if (bulletListMarker != null) {
-      writer.write( StringUtils.repeat(INDENT, bulletListLevel) + bulletListMarker + " ");
-      visitChildren(li);
+      if (state.ordered) {
+        orderedListCounter++;
+      }
+    } else if (node instanceof FencedCodeBlock) {
+      FencedCodeBlock code = (FencedCodeBlock) node;
+      writer.line();
+      writer.writeStripped(StringUtils.repeat(code.getFenceChar(), code.getFenceLength()));
       writer.line();
+    } else if (node instanceof TableNode) {
+      writer.write(((TableNode) node).getClosingDelimiter());
+    } else if (node instanceof TableRowNode) {
+      writeDelimiter(parent, node, ((TableRowNode) node).getDelimiter());
+    } else if (node instanceof TableCellNode) {
+      writeDelimiter(parent, node, ((TableCellNode) node).getDelimiter());
+    } else if (node instanceof PreformattedNode) {
+      writer.write(((PreformattedNode) node).getClosingDelimiter());
+      writer.line();
+      this.removeNewlines = true;
+    } else if (node instanceof FormNode) {
+      writer.write(((FormNode) node).getClosingDelimiter());
+    } else if (node instanceof OptionNode) {
+      writer.write(((OptionNode) node).getClosingDelimiter());
+    } else if (node instanceof ButtonNode) {
+      writer.write(((ButtonNode) node).getClosingDelimiter());
     }
   }
 
-  @Override
-  public void visit(FencedCodeBlock code) {
-    writer.line();
-    writer.writeStripped(StringUtils.repeat(code.getFenceChar(), code.getFenceLength()));
-    if (code.getInfo() != null) {
-      writer.write(code.getInfo());
+  /**
+   * Write the delimiter following a table row or cell, unless it is the last one. When rendering nodes as they are
+   * entered, the next sibling may not be known yet: the delimiter is then written when the next node is entered.
+   */
+  private void writeDelimiter(State parent, Node node, String delimiter) {
+    if (node.getNext() != null) {
+      writer.write(delimiter);
+    } else {
+      parent.pendingNode = node;
+      parent.pendingDelimiter = delimiter;
     }
-    writer.line();
-    visitChildren(code, Collections.<Class<? extends Node>>singleton(Text.class));
-    writer.line();
-    writer.writeStripped(StringUtils.repeat(code.getFenceChar(), code.getFenceLength()));
-    writer.line();
   }
 
-  @Override
-  public void visit(CustomNode node) {
+  private void flushDelimiter(State parent) {
+    if (parent.pendingNode != null) {
+      if (parent.pendingNode.getNext() != null) {
+        writer.write(parent.pendingDelimiter);
+      }
+      parent.pendingNode = null;
+      parent.pendingDelimiter = null;
+    }
+  }
+
+  private void writeText(Text text) {
+    writer.writeEscaped(text.getLiteral(), removeNewlines);
+  }
+
+  private void writeLink(Link a) {
+    String href = a.getDestination();
+    String title = StringUtils.defaultIfBlank(a.getTitle(), a.getDestination());
+    int start = writer.length();
+    writer.writeLink(title, href);
+
+    LegacyEntity node = new LegacyEntity();
+    node.put(ID, href);
+    node.put(TYPE, "URL");
+    node.put(INDEX_END, writer.length());
+    node.put(INDEX_START, start);
+    node.put(TEXT, title);
+    node.put(EXPANDED_URL, href);
+    putJsonObject(URLS, node);
+  }
+
+  private void writeCustomNode(CustomNode node) {
     if (node instanceof KeywordNode) {
       visit((KeywordNode) node);
     } else if (node instanceof EmojiNode) {
@@ -238,35 +474,6 @@ public class MarkdownRenderer extends AbstractVisitor {
     }
   }
 
-  @Override
-  public void visit(CustomBlock node) {
-    if (node instanceof TableNode) {
-      visit((TableNode) node);
-    } else if (node instanceof TableRowNode) {
-      visit((TableRowNode) node);
-    } else if (node instanceof TableCellNode) {
-      visit((TableCellNode) node);
-    } else if (node instanceof PreformattedNode) {
-      visit((PreformattedNode) node);
-    } else if (node instanceof FormNode) {
-      visit((FormNode) node);
-    } else if (node instanceof SelectNode) {
-      visit((SelectNode) node);
-    } else if (node instanceof OptionNode) {
-      visit((OptionNode) node);
-    } else if (node instanceof ButtonNode) {
-      visit((ButtonNode) node);
-    } else if (node instanceof TextFieldNode) {
-      visit((TextFieldNode) node);
-    } else if (node instanceof TextAreaNode) {
-      visit((TextAreaNode) node);
-    } else if (node instanceof PersonSelectorNode) {
-      visit((PersonSelectorNode) node);
-    } else if (node instanceof FormElementNode) {
-      visit((FormElementNode) node);
-    }
-  }
-
   private void visit(EmojiNode emoji){
     writer.write(emoji.getOpeningDelimiter());
     writer.write(emoji.getShortcode());
@@ -275,57 +482,38 @@ public class MarkdownRenderer extends AbstractVisitor {
 
   private void visit(FormElementNode formElement) {
     writer.write(formElement.getOpeningDelimiter());
-    writer.write(addEscapeCharacter(formElement.getText()));
+    writer.writeEscaped(formElement.getText(), false);
     writer.write(formElement.getClosingDelimiter());
   }
 
-  private void visit(FormNode form) {
-    writer.write(form.getOpeningDelimiter());
-    visitChildren(form);
-    writer.write(form.getClosingDelimiter());
-  }
-
-  private void visit(ButtonNode button) {
-    writer.write(button.getOpeningDelimiter());
-    visitChildren(button);
-    writer.write(button.getClosingDelimiter());
-  }
-
   private void visit(SelectNode select) {
     writer.write(select.getOpeningDelimiter());
-    writer.write(addEscapeCharacter(select.getText()));
+    writer.writeEscaped(select.getText(), false);
     writer.write(select.getClosingDelimiter());
-    visitChildren(select);
   }
 
-  private void visit(OptionNode option) {
-    writer.write(option.getOpeningDelimiter());
-    visitChildren(option);
-    writer.write(option.getClosingDelimiter());
-  }
-  
   private void visit(TextFieldNode textField) {
     writer.write(textField.getOpeningDelimiter());
-    writer.write(addEscapeCharacter(textField.getText()));
+    writer.writeEscaped(textField.getText(), false);
     writer.write(textField.getClosingDelimiter());
   }
 
   private void visit(TextAreaNode textArea) {
     writer.write(textArea.getOpeningDelimiter());
-    writer.write(addEscapeCharacter(textArea.getText()));
+    writer.writeEscaped(textArea.getText(), false);
     writer.write(textArea.getClosingDelimiter());
   }
 
   private void visit(PersonSelectorNode personSelector) {
     writer.write(personSelector.getOpeningDelimiter());
-    writer.write(addEscapeCharacter(personSelector.getText()));
+    writer.writeEscaped(personSelector.getText(), false);
     writer.write(personSelector.getClosingDelimiter());
   }
   
   private void visit(KeywordNode keyword) {
     String text = keyword.getPrefix() + keyword.getText();
 
-    ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
+    LegacyEntity node = new LegacyEntity();
     node.put(ID, text);
     node.put(TEXT, text);
     node.put(INDEX_START, writer.length());
@@ -339,7 +527,7 @@ public class MarkdownRenderer extends AbstractVisitor {
   private void visit(MentionNode mention) {
     String text = mention.getText();
 
-    ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
+    LegacyEntity node = new LegacyEntity();
     node.put(ID, mention.getUid());
     node.put(SCREEN_NAME, mention.getScreenName());
     node.put(PRETTY_NAME, mention.getPrettyName());
@@ -352,38 +540,9 @@ public class MarkdownRenderer extends AbstractVisitor {
 
     writer.write(text);
   }
-  private void visit(TableNode table) {
-    writer.write(table.getOpeningDelimiter());
-    visitChildren(table);
-    writer.write(table.getClosingDelimiter());
-  }
-
-  private void visit(TableRowNode row) {
-    visitChildren(row);
-    if (row.getNext() != null) {
-      writer.write(row.getDelimiter());
-    }
-  }
-
-  private void visit(TableCellNode cell) {
-    visitChildren(cell);
-    if (cell.getNext() != null) {
-      writer.write(cell.getDelimiter());
-    }
-  }
-
-  private void visit(PreformattedNode pre) {
-    this.removeNewlines = false;
-    writer.write(pre.getOpeningDelimiter());
-    visitChildren(pre);
-    writer.write(pre.getClosingDelimiter());
-    writer.line();
-    this.removeNewlines = true;
-  }
-
   private void visit(TagNode tag) {
     String text = tag.getPrefix() + tag.getText();
-    ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
+    LegacyEntity node = new LegacyEntity();
     node.put(ID, text);
     node.put(TEXT, text);
     node.put(INDEX_START, writer.length());
@@ -398,7 +557,7 @@ public class MarkdownRenderer extends AbstractVisitor {
 
   private void visit(DateTimeNode dateTimeNode) {
     String text = dateTimeNode.getValue();
-    ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
+    LegacyEntity node = new LegacyEntity();
     node.put(ID, dateTimeNode.getEntityId());
     node.put(TEXT, text);
     node.put(INDEX_START, writer.length());
@@ -412,46 +571,83 @@ public class MarkdownRenderer extends AbstractVisitor {
     writer.write(text);
   }
 
-  private void visitDelimited(Delimited delimited) {
-    writer.write(delimited.getOpeningDelimiter());
-    visitChildren((Node) delimited);
-    writer.write(delimited.getClosingDelimiter());
+  public static String addEscapeCharacter(String content) {
+    if (!needsEscaping(content)) {
+      return content;
+    }
+    StringBuilder escaped = new StringBuilder(content.length() + 8);
+    appendEscaped(escaped, content, false);
+    return escaped.toString();
   }
 
   /**
-   * Recursively visit the children of the node, processing only those specified by the parameter "includeNodes".
+   * Append the content, escaping reserved Markdown characters to prevent them from being interpreted as Markdown,
+   * unless the content consists only of a repeated reserved character, and optionally replacing sequences of newlines
+   * with a single space, in a single scan of the content.
    */
-  private void visitChildren(Node parent, Collection<Class<? extends Node>> includeNodes) {
-    Node child = parent.getFirstChild();
-    while (child != null) {
-      // A subclass of this visitor might modify the node, resulting in getNext returning a different node or no
-      // node after visiting it. So get the next node before visiting.
-      Node next = child.getNext();
-      if (includeNodes.contains(child.getClass())) {
-        child.accept(this);
-      } else {
-        visitChildren(child, includeNodes);
+  private static void appendEscaped(StringBuilder out, String content, boolean removeNewlines) {
+    boolean escape = !isRepeatedReservedCharacter(content);
+    boolean inNl = false;
+    for (int i = 0; i < content.length(); i++) {
+      char c = content.charAt(i);
+      if (c == '\n' && removeNewlines) {
+        if (!inNl) {
+          out.append(' ');
+          inNl = true;
+        }
+        continue;
+      }
+      inNl = false;
+      if (escape && isReserved(c)) {
+        out.append('\\');
       }
-      child = next;
+      out.append(c);
     }
   }
 
-  public static String addEscapeCharacter(String content) {
-    // If the line consists only of repeated reserved Markdown characters, ignore it
-    Matcher matcher = NOESCAPE_PATTERN.matcher(content);
-    if (!matcher.matches()) {
-      // Otherwise, escape reserved Markdown characters in text nodes to prevent them from being interpreted as MD
-      content = StringUtils.replaceEach(content, new String[]{"_","*","-","+","`"}, new String[]{"\\_","\\*","\\-","\\+","\\`"});
+  private static boolean needsEscaping(String content) {
+    for (int i = 0; i < content.length(); i++) {
+      if (isReserved(content.charAt(i))) {
+        return !isRepeatedReservedCharacter(content);
+      }
     }
-    return content;
+    return false;
   }
 
-  private void putJsonObject(String field, JsonNode value) {
-    if (!json.has(field)) {
-      json.set(field, new ArrayNode(JsonNodeFactory.instance));
+  /**
+   * Whether the content consists only of a reserved character, repeated and surrounded by whitespaces.
+   */
+  private static boolean isRepeatedReservedCharacter(String content) {
+    int start = 0;
+    int end = content.length();
+    while (start < end && isWhitespace(content.charAt(start))) {
+      start++;
+    }
+    while (end > start && isWhitespace(content.charAt(end - 1))) {
+      end--;
+    }
+    if (start == end || !isReserved(content.charAt(start))) {
+      return false;
+    }
+    for (int i = start + 1; i < end; i++) {
+      if (content.charAt(i) != content.charAt(start)) {
+        return false;
+      }
     }
+    return true;
+  }
+
+  private static boolean isReserved(char c) {
+    return c == '_' || c == '*' || c == '-' || c == '+' || c == '`';
+  }
 
-    ((ArrayNode) json.get(field)).add(value);
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private void putJsonObject(String field, LegacyEntity value) {
+    entities.computeIfAbsent(field, f -> new ArrayList<>()).add(value);
+    json = null;
   }
 
   /**
@@ -468,9 +664,130 @@ public class MarkdownRenderer extends AbstractVisitor {
    * input documents.
    */
   public ObjectNode getJson() {
+    if (json == null) {
+      json = new ObjectNode(JsonNodeFactory.instance);
+      for (Map.Entry<String, List<LegacyEntity>> field : entities.entrySet()) {
+        ArrayNode array = json.putArray(field.getKey());
+        for (LegacyEntity entity : field.getValue()) {
+          array.add(entity.toJson());
+        }
+      }
+    }
     return json;
   }
 
+  /**
+   * Write the JSON representation of the input document, as returned by {@link #getJson()}, without building it as a
+   * tree.
+   * @param generator the generator to write to, with a codec to write the data of tags
+   */
+  public void writeJson(JsonGenerator generator) throws IOException {
+    generator.writeStartObject();
+    for (Map.Entry<String, List<LegacyEntity>> field : entities.entrySet()) {
+      generator.writeArrayFieldStart(field.getKey());
+      for (LegacyEntity entity : field.getValue()) {
+        entity.write(generator);
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  /**
+   * Entity of the legacy JSON format, kept as its fields in insertion order until it is written or converted to JSON.
+   */
+  private static final class LegacyEntity {
+    private final List<String> names = new ArrayList<>(9);
+    private final List<Object> values = new ArrayList<>(9);
+
+    private void put(String name, String value) {
+      names.add(name);
+      values.add(value);
+    }
+
+    private void put(String name, int value) {
+      names.add(name);
+      values.add(value);
+    }
+
+    private void put(String name, long value) {
+      names.add(name);
+      values.add(value);
+    }
+
+    private void set(String name, JsonNode value) {
+      names.add(name);
+      values.add(value);
+    }
+
+    private ObjectNode toJson() {
+      ObjectNode node = new ObjectNode(JsonNodeFactory.instance);
+      for (int i = 0; i < names.size(); i++) {
+        Object value = values.get(i);
+        if (value instanceof Integer) {
+          node.put(names.get(i), (Integer) value);
+        } else if (value instanceof Long) {
+          node.put(names.get(i), (Long) value);
+        } else if (value instanceof JsonNode) {
+          node.set(names.get(i), (JsonNode) value);
+        } else {
+          node.put(names.get(i), (String) value);
+        }
+      }
+      return node;
+    }
+
+    private void write(JsonGenerator generator) throws IOException {
+      generator.writeStartObject();
+      for (int i = 0; i < names.size(); i++) {
+        Object value = values.get(i);
+        if (value instanceof Integer) {
+          generator.writeNumberField(names.get(i), (Integer) value);
+        } else if (value instanceof Long) {
+          generator.writeNumberField(names.get(i), (Long) value);
+        } else if (value instanceof JsonNode) {
+          generator.writeFieldName(names.get(i));
+          generator.writeTree((JsonNode) value);
+        } else {
+          generator.writeStringField(names.get(i), (String) value);
+        }
+      }
+      generator.writeEndObject();
+    }
+  }
+
+  private enum Mode {
+    /** Render the children. */
+    RENDER,
+    /** Render only the text nodes among the descendants, as in code blocks. */
+    TEXT_ONLY,
+    /** Do not render the children. */
+    SKIP
+  }
+
+  /**
+   * Rendering state of a node whose rendering has started but is not complete.
+   */
+  private static final class State {
+    private final Node node;
+    private Mode mode;
+    private boolean rendered;
+    private boolean hasChildren;
+    private boolean ordered;
+    private Node pendingNode;
+    private String pendingDelimiter;
+    private Character previousMarker;
+    private Integer previousCounter;
+    private Character previousDelimiter;
+    private int previousLevel;
+
+    private State(Node node, Mode mode, boolean rendered) {
+      this.node = node;
+      this.mode = mode;
+      this.rendered = rendered;
+    }
+  }
+
   class TrackingWriter extends TextContentWriter {
 
     final StringBuilder out;
@@ -489,6 +806,40 @@ public class MarkdownRenderer extends AbstractVisitor {
       return (length != 0) ? out.charAt(length - 1) : 0;
     }
 
+    /**
+     * Write the content escaped as {@link #addEscapeCharacter(String)} does and, if requested, with sequences of
+     * newlines replaced as {@link XmlPrintStream#removeNewLines(String)} does, straight into the buffer.
+     */
+    void writeEscaped(String content, boolean removeNewlines) {
+      if (content == null) {
+        return;
+      }
+      int length = out.length();
+      appendEscaped(out, content, removeNewlines);
+      writeLastChar(length);
+    }
+
+    /**
+     * Write a link as "[ title ](href)".
+     */
+    void writeLink(String title, String href) {
+      int length = out.length();
+      out.append("[ ").append(title).append(" ](").append(href).append(')');
+      writeLastChar(length);
+    }
+
+    /**
+     * Pass the last character appended straight to the buffer since the given length through the writer, which keeps
+     * track of the last character written.
+     */
+    private void writeLastChar(int length) {
+      if (out.length() > length) {
+        char lastChar = out.charAt(out.length() - 1);
+        out.setLength(out.length() - 1);
+        write(lastChar);
+      }
+    }
+
     void doubleLine() {
       char lastChar = getLastChar();
       if (lastChar != 0 && lastChar != '\n') {
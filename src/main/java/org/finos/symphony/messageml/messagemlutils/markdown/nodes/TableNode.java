@@ -28,6 +28,27 @@ public class TableNode extends CustomBlock {
 
   private final static String DELIMITER = "   ";
 
+  private final int mediaIndex;
+
+  public TableNode() {
+    this(-1);
+  }
+
+  /**
+   * Create a table whose rows are not children of the node but a JSON array of arrays of cells, found at the given
+   * position in the media of a legacy message.
+   */
+  public TableNode(int mediaIndex) {
+    this.mediaIndex = mediaIndex;
+  }
+
+  /**
+   * Get the position of the rows of the table in the media of the message, or -1 if the rows are children of the node.
+   */
+  public int getMediaIndex() {
+    return mediaIndex;
+  }
+
   public String getOpeningDelimiter() {
     return "\n" + DELIMITER + "\n";
   }
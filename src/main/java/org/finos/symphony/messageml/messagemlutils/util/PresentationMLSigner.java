@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Signs the PresentationML generated by this library with an HMAC-SHA256 of its root element, so that PresentationML
+ * forwarded between parties sharing the key can be recognized and parsed without validating it again.
+ * <p>
+ * The signature covers the start tag of the root element without the signature attribute, the content of the root
+ * element and the EntityJSON sent along with the message, so that none of them can be changed without invalidating
+ * it.
+ * <p>
+ * The signer is immutable and thread-safe.
+ */
+public class PresentationMLSigner {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final String EMPTY_ENTITY_JSON = "{}";
+
+  private final SecretKeySpec key;
+
+  /**
+   * @param key the secret key shared by the parties generating and parsing signed PresentationML
+   */
+  public PresentationMLSigner(byte[] key) {
+    if (key == null || key.length == 0) {
+      throw new IllegalArgumentException("The signing key cannot be null or empty");
+    }
+    this.key = new SecretKeySpec(key, ALGORITHM);
+    createMac(); // fail early if the algorithm is not available
+  }
+
+  /**
+   * Compute the signature of a message, encoded in URL-safe Base64.
+   * @param startTag the start tag of the root element, without the signature attribute
+   * @param content the content of the root element
+   * @param entityJson the EntityJSON of the message, null being the same as an empty object
+   */
+  public String sign(String startTag, String content, JsonNode entityJson) {
+    String entities = entityJson == null ? EMPTY_ENTITY_JSON : entityJson.toString();
+    Mac mac = createMac();
+    for (String part : new String[] {startTag, content, entities}) {
+      // each part is prefixed by its length, so that no characters can be moved from one part to the next
+      byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+      mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+      mac.update(bytes);
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal());
+  }
+
+  /**
+   * Check in constant time that the signature is the one of the message.
+   * @see #sign(String, String, JsonNode)
+   */
+  public boolean verify(String startTag, String content, JsonNode entityJson, String signature) {
+    if (startTag == null || content == null || signature == null) {
+      return false;
+    }
+    return MessageDigest.isEqual(sign(startTag, content, entityJson).getBytes(StandardCharsets.US_ASCII),
+        signature.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  private Mac createMac() {
+    try {
+      // instances are not thread-safe, and cheap compared to the messages they sign
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Failed to initialize " + ALGORITHM, e);
+    }
+  }
+}
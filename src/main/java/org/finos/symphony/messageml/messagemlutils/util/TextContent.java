@@ -0,0 +1,116 @@
+/* ----------------------------------------------------------------------------
+ * Copyright (C) 2016
+ * Symphony Communication Services, LLC
+ * All Rights Reserved
+ * ---------------------------------------------------------------------------- */
+
+package org.finos.symphony.messageml.messagemlutils.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Text content of the XML printed by an {@link XmlPrintStream}, as a DOM parser would return it: the text of the whole
+ * document and the text of each node printed at a given depth, with adjacent text merged into a single node and line
+ * ends normalized.
+ */
+public class TextContent {
+  private final int nodeDepth;
+  private final StringBuilder text = new StringBuilder();
+  private final List<Integer> nodeStarts = new ArrayList<>();
+  private final BitSet textNodes = new BitSet();
+  private boolean inTextNode;
+  private boolean afterCr;
+
+  /**
+   * Constructor.
+   * @param nodeDepth number of elements enclosing the nodes whose text is kept separately, e.g. 1 for the child nodes
+   * of the root element
+   */
+  public TextContent(int nodeDepth) {
+    this.nodeDepth = nodeDepth;
+  }
+
+  /**
+   * Add the text of a range of characters printed inside the given number of elements.
+   */
+  void appendText(CharSequence s, int start, int end, int depth) {
+    if (start == end) {
+      return;
+    }
+    if (depth == nodeDepth && !inTextNode) {
+      textNodes.set(nodeStarts.size());
+      nodeStarts.add(text.length());
+      inTextNode = true;
+    }
+    appendChars(s, start, end);
+  }
+
+  private void appendChars(CharSequence s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = s.charAt(i);
+      if (c == '\r' || c == '\n') {
+        // XML parsers report any line end as a single line feed
+        text.append(s, start, i);
+        if (c == '\r' || !afterCr) {
+          text.append('\n');
+        }
+        start = i + 1;
+      }
+      afterCr = c == '\r';
+    }
+    text.append(s, start, end);
+  }
+
+  /**
+   * Add an element printed inside the given number of elements.
+   */
+  void startElement(int depth) {
+    if (depth == nodeDepth) {
+      nodeStarts.add(text.length());
+    }
+    inTextNode = false;
+    afterCr = false;
+  }
+
+  /**
+   * Add the text content of a fragment printed inside the given number of elements. The nodes of a fragment captured
+   * with a node depth of 0 are kept separately if they are at the node depth of this text.
+   */
+  void append(TextContent fragment, int depth) {
+    if (depth != nodeDepth || fragment.nodeDepth != 0) {
+      appendChars(fragment.text, 0, fragment.text.length());
+      return;
+    }
+    for (int i = 0; i < fragment.nodeStarts.size(); i++) {
+      int start = fragment.nodeStarts.get(i);
+      int end = i + 1 < fragment.nodeStarts.size() ? fragment.nodeStarts.get(i + 1) : fragment.text.length();
+      if (fragment.textNodes.get(i)) {
+        appendText(fragment.text, start, end, depth);
+      } else {
+        startElement(depth);
+        appendChars(fragment.text, start, end);
+      }
+    }
+  }
+
+  /**
+   * Return the text of the whole document.
+   */
+  public String getText() {
+    return text.toString();
+  }
+
+  /**
+   * Return the text of each node printed at the node depth, in document order.
+   */
+  public List<String> getNodeTexts() {
+    List<String> nodes = new ArrayList<>(nodeStarts.size());
+    for (int i = 0; i < nodeStarts.size(); i++) {
+      int end = i + 1 < nodeStarts.size() ? nodeStarts.get(i + 1) : text.length();
+      nodes.add(text.substring(nodeStarts.get(i), end));
+    }
+    return nodes;
+  }
+}
@@ -17,7 +17,11 @@ import java.util.Map.Entry;
  * A PrintStream based on IndentedPrintStream which adds functions to format XML.
  */
 public class XmlPrintStream extends IndentedPrintStream {
+  private static final int PRINT_CHUNK_SIZE = 8192;
+
   private final Deque<String> elementStack = new LinkedList<>();
+  private final StringBuilder escapeBuffer = new StringBuilder();
+  private TextContent textContent;
 
   /**
    * Constructor.
@@ -27,7 +31,24 @@ public class XmlPrintStream extends IndentedPrintStream {
     super(outputStream);
   }
 
+  /**
+   * Capture the text content of the XML printed from now on, as returned by {@link #getTextContent()}.
+   * @param nodeDepth number of elements enclosing the nodes whose text is kept separately
+   */
+  public void captureTextContent(int nodeDepth) {
+    textContent = new TextContent(nodeDepth);
+  }
+
+  /**
+   * Return the text content of the XML printed since {@link #captureTextContent(int)} was called, null if it is not
+   * captured.
+   */
+  public TextContent getTextContent() {
+    return textContent;
+  }
+
   private void startElement(String name, Object... attributes) {
+    addElement();
     println("<" + name);
     indent();
 
@@ -48,6 +69,7 @@ public class XmlPrintStream extends IndentedPrintStream {
    * @param name Name of the XML element to open.
    */
   public void openElement(String name) {
+    addElement();
     elementStack.push(name);
     println("<" + name + ">");
     indent();
@@ -63,6 +85,7 @@ public class XmlPrintStream extends IndentedPrintStream {
    * wrapping the attribute in a single quote
    */
   public void openElement(String name, Map<?, ?> attributes) {
+    addElement();
     elementStack.push(name);
     print("<" + name);
 
@@ -89,8 +112,8 @@ public class XmlPrintStream extends IndentedPrintStream {
    * avoid escaping of double quote, but wrapping the attribute in a single quote
    */
   public void openElement(String name, Object... attributes) {
-    elementStack.push(name);
     startElement(name, attributes);
+    elementStack.push(name);
     println(">");
 
   }
@@ -113,6 +136,10 @@ public class XmlPrintStream extends IndentedPrintStream {
    * @param value Content of element.
    */
   public void printElement(String elementName, Object value) {
+    addElement();
+    if (value != null) {
+      addText(value.toString(), 1);
+    }
     println("<" + elementName + ">" + (value == null ? "" : escape(value.toString())) + "</" + elementName + ">");
   }
 
@@ -128,6 +155,9 @@ public class XmlPrintStream extends IndentedPrintStream {
    */
   public void printElement(String name, String value, Object... attributes) {
     startElement(name, attributes);
+    if (value != null) {
+      addText(value, 1);
+    }
     if (value != null) { println(">" + escape(value) + "</" + name + ">"); } else { println("/>"); }
     outdent();
   }
@@ -154,6 +184,10 @@ public class XmlPrintStream extends IndentedPrintStream {
    * processed to avoid escaping of double quote, but wrapping the attribute in a single quote
    */
   public void printElement(String elementName, String value, Map<?, ?> attributes) {
+    addElement();
+    if (value != null) {
+      addText(value, 1);
+    }
     print("<" + elementName);
 
     for (Entry<?, ?> entry : attributes.entrySet()) {
@@ -172,6 +206,7 @@ public class XmlPrintStream extends IndentedPrintStream {
    * @param name Name of element.
    */
   public void printElement(String name) {
+    addElement();
     println("<" + name + "/>");
   }
 
@@ -197,9 +232,23 @@ public class XmlPrintStream extends IndentedPrintStream {
    * @param format Input format. The Json format does not escape ", but it escapes ' !
    */
   public String escape(String in, XMLAttribute.Format format) {
-    StringBuilder out = new StringBuilder();
+    boolean json = XMLAttribute.Format.JSON.equals(format);
+    int length = in.length();
+    int i = 0;
+    while (i < length && !needsEscape(in.charAt(i), json)) {
+      i++;
+    }
+    if (i == length) {
+      return in;
+    }
 
-    for (char c : in.toCharArray()) {
+    // the buffer is shared by all the calls made while printing a document
+    StringBuilder out = escapeBuffer;
+    out.setLength(0);
+    out.append(in, 0, i);
+
+    for (; i < length; i++) {
+      char c = in.charAt(i);
       switch (c) {
         case '<':
           out.append("&lt;");
@@ -211,14 +260,14 @@ public class XmlPrintStream extends IndentedPrintStream {
           out.append("&amp;");
           break;
         case '"':
-          if(XMLAttribute.Format.JSON.equals(format)){
+          if (json) {
             out.append(c);
           } else {
             out.append("&quot;");
           }
           break;
         case '\'':
-          if(XMLAttribute.Format.JSON.equals(format)){
+          if (json) {
             out.append("&apos;");
           } else {
             out.append(c);
@@ -232,6 +281,101 @@ public class XmlPrintStream extends IndentedPrintStream {
     return out.toString();
   }
 
+  /**
+   * Translate reserved XML characters of a range of the text to XML entities and print the result with a line break,
+   * without copying the whole range.
+   * @param text Input text.
+   * @param start Start of the range.
+   * @param end End of the range.
+   * @param removeNewLines Whether multiple newline characters are replaced with a single space.
+   */
+  public void printlnEscaped(String text, int start, int end, boolean removeNewLines) {
+    int runStart = start;
+    boolean inNl = false;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (!needsEscape(c, false) && !(removeNewLines && c == '\n')) {
+        inNl = false;
+        continue;
+      }
+
+      printRange(text, runStart, i);
+      runStart = i + 1;
+      switch (c) {
+        case '<':
+          print("&lt;");
+          break;
+        case '>':
+          print("&gt;");
+          break;
+        case '&':
+          print("&amp;");
+          break;
+        case '"':
+          print("&quot;");
+          break;
+        default:
+          if (!inNl) {
+            print(' ');
+            addText(" ", 0);
+          }
+      }
+      if (textContent != null && c != '\n') {
+        textContent.appendText(text, i, i + 1, elementStack.size());
+      }
+      inNl = c == '\n';
+    }
+    printRange(text, runStart, end);
+    println("");
+  }
+
+  private void printRange(String text, int start, int end) {
+    // large ranges are printed in chunks so that no copy of the whole range is made
+    for (int i = start; i < end; i += PRINT_CHUNK_SIZE) {
+      print(text.substring(i, Math.min(end, i + PRINT_CHUNK_SIZE)));
+    }
+    if (textContent != null) {
+      textContent.appendText(text, start, end, elementStack.size());
+    }
+  }
+
+  /**
+   * Translate reserved XML characters of the text to XML entities and print the result.
+   * @param text Input text.
+   */
+  public void printText(String text) {
+    print(escape(text));
+    addText(text, 0);
+  }
+
+  /**
+   * Print a fragment of XML rendered separately, along with its text content if captured.
+   * @param xml The fragment.
+   * @param text The text content of the fragment, as captured with a node depth of 0.
+   */
+  public void printFragment(String xml, TextContent text) {
+    print(xml);
+    if (textContent != null && text != null) {
+      textContent.append(text, elementStack.size());
+    }
+  }
+
+  private void addElement() {
+    if (textContent != null) {
+      textContent.startElement(elementStack.size());
+    }
+  }
+
+  private void addText(CharSequence text, int depth) {
+    if (textContent != null) {
+      textContent.appendText(text, 0, text.length(), elementStack.size() + depth);
+    }
+  }
+
+  private static boolean needsEscape(char c, boolean json) {
+    return c == '<' || c == '>' || c == '&' || (json ? c == '\'' : c == '"');
+  }
+
   /**
    * Replace multiple newline characters with a single space.
    * @param textContent input String
@@ -0,0 +1,54 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+
+public class DocumentBuilderPoolTest {
+  private static final String MESSAGE = "<messageML>Hello <b>world</b>"
+      + "<span class=\"entity\" data-entity-id=\"entity\">entity</span></messageML>";
+  private static final String ENTITY_JSON = "{\"entity\":{\"type\":\"com.symphony.test\",\"value\":1}}";
+  private static final String EXPECTED = "<div data-format=\"PresentationML\" data-version=\"2.0\">Hello <b>world</b>"
+      + "<span class=\"entity\" data-entity-id=\"entity\">entity</span></div>";
+
+  @Test
+  public void testDocumentBuilderPoolKeepsBoundedIdleBuilders() throws Exception {
+    DocumentBuilderPool pool = new DocumentBuilderPool(2);
+    List<DocumentBuilder> builders = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      builders.add(pool.acquire());
+    }
+    assertNotSame("New builder when none is idle", builders.get(0), builders.get(1));
+
+    for (DocumentBuilder builder : builders) {
+      pool.release(builder);
+    }
+    assertEquals("Idle builders", 2, pool.getIdleCount());
+
+    DocumentBuilder builder = pool.acquire();
+    assertTrue("Idle builder reused", builder == builders.get(0) || builder == builders.get(1));
+    assertEquals("Idle builders", 1, pool.getIdleCount());
+  }
+
+  @Test
+  public void testDocumentBuilderPoolReusesBuilderAfterError() throws Exception {
+    MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+    try {
+      context.parseMessageML("<messageML><b>unclosed</messageML>", null, MessageML.MESSAGEML_VERSION);
+    } catch (Exception e) {
+      // the builder is given back to the pool on errors as well
+    }
+
+    context.parseMessageML(MESSAGE, ENTITY_JSON, MessageML.MESSAGEML_VERSION);
+    assertEquals("PresentationML", EXPECTED, context.getPresentationML());
+  }
+}
@@ -0,0 +1,107 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Bold;
+import org.finos.symphony.messageml.messagemlutils.elements.CustomElement;
+import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Map;
+
+public class ElementFactoryRegistryTest {
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void testDefaultRegistry() {
+    ElementFactoryRegistry registry = ElementFactoryRegistry.getDefault();
+    assertTrue("Header tag", registry.getTags().contains("h6"));
+    assertTrue("Card tag", registry.getTags().contains("card"));
+    assertNull("Unknown tag", registry.get("h7"));
+    assertFalse("No creation counts", registry.isCountingCreations());
+  }
+
+  @Test
+  public void testCustomElement() throws Exception {
+    ElementFactoryRegistry registry = ElementFactoryRegistry.getDefault()
+        .with("strong", (parser, element, parent) -> new Bold(parent))
+        .withCreationCounts();
+    MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+    context.setElementFactoryRegistry(registry);
+    assertSame("Registry", registry, context.getElementFactoryRegistry());
+
+    context.parseMessageML("<messageML>Hello <strong>world</strong> and <strong>all</strong></messageML>", null,
+        MessageML.MESSAGEML_VERSION);
+    assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + "Hello <b>world</b> and <b>all</b></div>", context.getPresentationML());
+
+    Map<String, Long> counts = registry.getCreationCounts();
+    assertEquals("Custom elements created", Long.valueOf(2), counts.get("strong"));
+    assertEquals("Bold elements created", Long.valueOf(0), counts.get("b"));
+    assertTrue("Default registry does not count", ElementFactoryRegistry.getDefault().getCreationCounts().isEmpty());
+  }
+
+  @Test
+  public void testCustomElementSubclass() throws Exception {
+    MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+    context.setElementFactoryRegistry(ElementFactoryRegistry.getDefault()
+        .with("ticker", (parser, element, parent) -> new Ticker(parent)));
+
+    context.parseMessageML("<messageML>Buy <ticker data-exchange=\"NYSE\">IBM</ticker></messageML>", null,
+        MessageML.MESSAGEML_VERSION);
+    assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + "Buy <span class=\"ticker\" data-exchange=\"NYSE\">IBM</span></div>", context.getPresentationML());
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("Ticker must not be empty");
+    context.parseMessageML("<messageML>Buy <ticker data-exchange=\"NYSE\"></ticker></messageML>", null,
+        MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testCustomElementNotInDefaultRegistry() throws Exception {
+    ElementFactoryRegistry.getDefault().with("strong", (parser, element, parent) -> new Bold(parent));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("Invalid MessageML content at element \"strong\"");
+    new MessageMLContext(new NoOpDataProvider()).parseMessageML("<messageML><strong>world</strong></messageML>",
+        null, MessageML.MESSAGEML_VERSION);
+  }
+
+  /**
+   * Custom element defined outside of the elements package.
+   */
+  private static class Ticker extends CustomElement {
+    private Ticker(Element parent) {
+      super(parent, "ticker");
+      getAttributes().put(CLASS_ATTR, "ticker");
+    }
+
+    @Override
+    public String getPresentationMLTag() {
+      return "span";
+    }
+
+    @Override
+    protected boolean isAllowedAttribute(String name) {
+      return "data-exchange".equals(name);
+    }
+
+    @Override
+    protected void validateContent() throws InvalidInputException {
+      if (getChildren().isEmpty()) {
+        throw new InvalidInputException("Ticker must not be empty");
+      }
+    }
+  }
+}
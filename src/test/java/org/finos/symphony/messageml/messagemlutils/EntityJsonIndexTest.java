@@ -0,0 +1,41 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.List;
+
+public class EntityJsonIndexTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Test
+  public void testSameLookupsAsPayload() throws Exception {
+    JsonNode entityJson = MAPPER.readTree("{"
+        + "\"first\":{\"type\":\"com.symphony.first\",\"id\":[{\"type\":\"sub\",\"value\":\"1\"}]},"
+        + "\"list\":[{\"first\":{\"type\":\"nested\"}},{\"second\":{\"first\":\"deep\"}}],"
+        + "\"second\":{\"type\":\"com.symphony.second\",\"data\":{\"type\":{\"type\":\"hidden\"}}}"
+        + "}");
+    EntityJsonIndex index = new EntityJsonIndex(entityJson);
+
+    for (String fieldName : new String[] {"first", "second", "type", "id", "value", "data", "missing"}) {
+      List<JsonNode> expected = entityJson.findValues(fieldName);
+      List<JsonNode> values = index.findValues(fieldName);
+      assertEquals("Value count of " + fieldName, expected.size(), values.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertSame("Value of " + fieldName, expected.get(i), values.get(i));
+      }
+      assertEquals("Path of " + fieldName, entityJson.findPath(fieldName), index.findPath(fieldName));
+    }
+  }
+
+  @Test
+  public void testEmptyIndex() {
+    assertTrue("No values", EntityJsonIndex.EMPTY.findValues("type").isEmpty());
+    assertTrue("Missing path", EntityJsonIndex.EMPTY.findPath("type").isMissingNode());
+  }
+}
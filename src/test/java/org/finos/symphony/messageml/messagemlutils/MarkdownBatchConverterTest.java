@@ -0,0 +1,120 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MarkdownBatchConverterTest {
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testConvertInOrder() throws Exception {
+    JsonNode entities = MAPPER.readTree("{\"hashtags\":[{\"id\":\"#tag\",\"text\":\"#tag\",\"indexStart\":0,"
+        + "\"indexEnd\":4,\"type\":\"KEYWORD\"}]}");
+    List<MarkdownBatchConverter.Message> messages = IntStream.range(0, 100)
+        .mapToObj(i -> new MarkdownBatchConverter.Message("#tag **message " + i + "**", entities, null))
+        .collect(Collectors.toList());
+
+    List<MarkdownBatchConverter.Result> results = new ArrayList<>();
+    new MarkdownBatchConverter(new NoOpDataProvider(), executor, 8).convert(messages, results::add);
+
+    assertEquals("Result count", messages.size(), results.size());
+    for (int i = 0; i < messages.size(); i++) {
+      MarkdownBatchConverter.Result result = results.get(i);
+      MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+      context.parseMarkdown(messages.get(i).getMarkdown(), entities, null);
+
+      assertEquals("Index", i, result.getIndex());
+      assertTrue("Successful", result.isSuccessful());
+      assertEquals("Message", messages.get(i), result.getMessage());
+      assertEquals("PresentationML", context.getPresentationML(), result.getPresentationML());
+      assertEquals("EntityJSON", context.getEntityJson(), result.getEntityJson());
+    }
+  }
+
+  @Test
+  public void testConvertWithReusedContext() throws Exception {
+    JsonNode entities = MAPPER.readTree("{\"hashtags\":[{\"id\":\"#tag\",\"text\":\"#tag\",\"indexStart\":0,"
+        + "\"indexEnd\":4,\"type\":\"KEYWORD\"}]}");
+    List<MarkdownBatchConverter.Message> messages = Arrays.asList(
+        new MarkdownBatchConverter.Message("#tag first", entities, null),
+        new MarkdownBatchConverter.Message("second", null, null));
+
+    // a single message in flight, converted with the context of the previous one
+    List<MarkdownBatchConverter.Result> results = new ArrayList<>();
+    new MarkdownBatchConverter(new NoOpDataProvider(), executor, 1).convert(messages, results::add);
+
+    MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+    context.parseMarkdown("second", null, null);
+    assertEquals("PresentationML", context.getPresentationML(), results.get(1).getPresentationML());
+    assertEquals("No entities of the previous message", context.getEntityJson(), results.get(1).getEntityJson());
+  }
+
+  @Test
+  public void testConvertWithInvalidMessage() throws Exception {
+    JsonNode invalidEntities = MAPPER.readTree("{\"hashtags\":[{\"id\":\"#tag\",\"text\":\"#tag\",\"indexStart\":4,"
+        + "\"indexEnd\":0,\"type\":\"KEYWORD\"}]}");
+
+    List<MarkdownBatchConverter.Result> results = new ArrayList<>();
+    new MarkdownBatchConverter(new NoOpDataProvider(), executor, 2).convert(IntStream.range(0, 3)
+        .mapToObj(i -> new MarkdownBatchConverter.Message("#tag " + i, i == 1 ? invalidEntities : null, null)),
+        results::add);
+
+    assertEquals("Result count", 3, results.size());
+    assertTrue("First message converted", results.get(0).isSuccessful());
+    assertFalse("Second message failed", results.get(1).isSuccessful());
+    assertEquals("Error", InvalidInputException.class, results.get(1).getError().getClass());
+    assertNull("No PresentationML", results.get(1).getPresentationML());
+    assertTrue("Third message converted", results.get(2).isSuccessful());
+  }
+
+  @Test
+  public void testConvertWithBoundedMessagesInFlight() throws Exception {
+    int maxInFlight = 3;
+    AtomicInteger pulled = new AtomicInteger();
+    Iterable<MarkdownBatchConverter.Message> messages = () -> new Iterator<MarkdownBatchConverter.Message>() {
+      @Override
+      public boolean hasNext() {
+        return pulled.get() < 50;
+      }
+
+      @Override
+      public MarkdownBatchConverter.Message next() {
+        return new MarkdownBatchConverter.Message("message " + pulled.getAndIncrement(), null, null);
+      }
+    };
+
+    AtomicInteger consumed = new AtomicInteger();
+    new MarkdownBatchConverter(new NoOpDataProvider(), executor, maxInFlight).convert(messages, result -> {
+      assertTrue("Messages in flight", pulled.get() - consumed.get() <= maxInFlight);
+      consumed.incrementAndGet();
+    });
+
+    assertEquals("Consumed results", 50, consumed.get());
+  }
+}
@@ -0,0 +1,64 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.apache.commons.io.IOUtils;
+import org.commonmark.node.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingException;
+import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownRenderer;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class MarkdownRendererBenchmark {
+
+  @State(Scope.Thread)
+  public static class MessageContent {
+    @Param({"templated_message_all_tags", "complex_message_with_styles"})
+    public String payload;
+
+    public MessageML messageML;
+    public Document document;
+
+    @Setup(Level.Trial)
+    public void doSetup() throws IOException, InvalidInputException, ProcessingException {
+      FileInputStream messageFile = new FileInputStream("src/test/resources/payloads/" + payload + ".messageml");
+      String message = IOUtils.toString(messageFile, StandardCharsets.UTF_8);
+      FileInputStream entityFile = new FileInputStream("src/test/resources/payloads/" + payload + ".json");
+      String entityJson = IOUtils.toString(entityFile, StandardCharsets.UTF_8);
+
+      MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+      messageMLContext.parseMessageML(message, entityJson, null);
+      messageML = messageMLContext.getMessageML();
+      document = messageML.asMarkdown();
+    }
+  }
+
+  @Benchmark
+  public void renderDocument(MessageContent messageContent, Blackhole bh) {
+    MarkdownRenderer renderer = new MarkdownRenderer(messageContent.document);
+
+    // the legacy formats sent along with the message
+    bh.consume(renderer.getText());
+    bh.consume(renderer.getJson());
+  }
+
+  @Benchmark
+  public void renderMessageML(MessageContent messageContent, Blackhole bh) throws InvalidInputException {
+    MarkdownRenderer renderer = new MarkdownRenderer();
+    bh.consume(messageContent.messageML.asMarkdownAndEntityJson(renderer, null));
+
+    // the legacy formats sent along with the message
+    bh.consume(renderer.getText());
+    bh.consume(renderer.getJson());
+  }
+}
@@ -0,0 +1,141 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Element;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the heap kept by parsed messages, which the JMH benchmarks do not report. Run with {@code table} to print
+ * the bytes retained per node by the document trees of large tables, with {@code platform} or {@code virtual} to print
+ * the heap used by concurrent parses on platform or virtual threads.
+ * <p>
+ * Run with a fixed heap and the serial collector for stable numbers, e.g. {@code -Xms1g -Xmx1g -XX:+UseSerialGC}.
+ */
+public class MemoryFootprint {
+  private static final int ROWS = 500;
+  private static final int TREES = 50;
+  private static final int PARSES = 10_000;
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : "table";
+    if ("table".equals(mode)) {
+      measureTable();
+    } else if ("platform".equals(mode) || "virtual".equals(mode)) {
+      measureConcurrentParses("virtual".equals(mode));
+    } else {
+      throw new IllegalArgumentException("Unknown measurement " + mode);
+    }
+  }
+
+  /**
+   * Print the heap retained per node by the document trees of the table parsed by
+   * {@link MessageMLContextBenchmark#parseLargeTable}, measured after full collections while the trees are reachable.
+   */
+  private static void measureTable() throws Exception {
+    StringBuilder table = new StringBuilder("<messageML><table>");
+    for (int i = 0; i < ROWS; i++) {
+      table.append("<tr><td>").append(i).append("</td><td class=\"cell\"><b>bold</b></td>")
+          .append("<td style=\"color:red\">red</td><td>text<br/>text</td></tr>");
+    }
+    String messageML = table.append("</table></messageML>").toString();
+    // loads the classes and static caches before measuring
+    parseTree(messageML);
+
+    List<Element> trees = new ArrayList<>(TREES);
+    long before = usedHeap();
+    for (int i = 0; i < TREES; i++) {
+      trees.add(parseTree(messageML));
+    }
+    long retained = usedHeap() - before;
+
+    int nodes = countNodes(trees.get(0));
+    System.out.printf("%d nodes per table, %d bytes retained per table, %.1f bytes per node%n", nodes,
+        retained / TREES, (double) retained / TREES / nodes);
+  }
+
+  /**
+   * Print the peak heap and the duration of parses started at once on as many threads, then the heap still used once
+   * they are done while their threads are alive.
+   */
+  private static void measureConcurrentParses(boolean virtual) throws Exception {
+    ExecutorService executor;
+    if (virtual) {
+      // virtual threads are only available from Java 21, this project still builds for Java 8
+      executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } else {
+      executor = Executors.newFixedThreadPool(PARSES);
+    }
+
+    CountDownLatch started = new CountDownLatch(PARSES);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<String>> results = new ArrayList<>(PARSES);
+    for (int i = 0; i < PARSES; i++) {
+      results.add(executor.submit(() -> {
+        started.countDown();
+        start.await();
+        MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+        context.parseMessageML("<messageML>Hello <b>world</b></messageML>", null, null);
+        return context.getPresentationML();
+      }));
+    }
+    started.await();
+
+    long before = usedHeap();
+    ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    long startTime = System.nanoTime();
+    start.countDown();
+    for (Future<String> result : results) {
+      result.get();
+    }
+    long duration = System.nanoTime() - startTime;
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    long after = usedHeap();
+    executor.shutdown();
+
+    System.out.printf("%d parses in %d ms, peak heap %d MB, %d MB still used after the parses%n", PARSES,
+        duration / 1_000_000, peak >> 20, (after - before) >> 20);
+  }
+
+  private static Element parseTree(String messageML) throws Exception {
+    MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+    context.parseMessageML(messageML, null, null);
+    return context.getMessageML();
+  }
+
+  private static int countNodes(Element root) {
+    int nodes = 0;
+    Deque<Element> stack = new ArrayDeque<>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      Element element = stack.pop();
+      nodes++;
+      element.getChildren().forEach(stack::push);
+    }
+    return nodes;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,95 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class MessageMLBatchProcessorTest {
+
+  @Test
+  public void testProcessAllOutputs() throws Exception {
+    List<MessageMLBatchProcessor.Message> messages = IntStream.range(0, 50)
+        .mapToObj(i -> new MessageMLBatchProcessor.Message("<messageML>Message <b>" + i + "</b>"
+            + "<span class=\"entity\" data-entity-id=\"e" + i + "\">entity</span></messageML>",
+            "{\"e" + i + "\":{\"type\":\"com.symphony.test\",\"value\":" + i + "}}", MessageML.MESSAGEML_VERSION))
+        .collect(Collectors.toList());
+
+    List<MessageMLBatchProcessor.Result> results = new ArrayList<>();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    MessageMLBatchProcessor.Metrics metrics;
+    try {
+      metrics = new MessageMLBatchProcessor(new NoOpDataProvider(), EnumSet.allOf(MessageMLBatchProcessor.Output.class),
+          pool, 8).process(messages, results::add);
+    } finally {
+      pool.shutdown();
+    }
+
+    assertEquals("Result count", messages.size(), results.size());
+    for (int i = 0; i < messages.size(); i++) {
+      MessageMLBatchProcessor.Result result = results.get(i);
+      MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+      context.parseMessageML(messages.get(i).getMessageML(), messages.get(i).getEntityJson(),
+          MessageML.MESSAGEML_VERSION);
+
+      assertEquals("Index", i, result.getIndex());
+      assertTrue("Successful", result.isSuccessful());
+      assertEquals("PresentationML", context.getPresentationML(), result.getPresentationML());
+      assertEquals("Text", context.getText(), result.getText());
+      assertEquals("Markdown", context.getMarkdown(), result.getMarkdown());
+      assertEquals("EntityJSON", context.getEntityJson(), result.getEntityJson());
+      assertEquals("BI items", context.getBiContext().getItems(), result.getBiItems());
+    }
+
+    assertEquals("Message count", messages.size(), metrics.getMessageCount());
+    assertEquals("Error count", 0, metrics.getErrorCount());
+    assertTrue("Elapsed time", metrics.getElapsedNanos() > 0);
+    assertTrue("Max latency", metrics.getMaxLatencyNanos() >= metrics.getMeanLatencyNanos());
+  }
+
+  @Test
+  public void testProcessRequestedOutputsOnly() throws Exception {
+    List<MessageMLBatchProcessor.Result> results = new ArrayList<>();
+    new MessageMLBatchProcessor(new NoOpDataProvider(), EnumSet.of(MessageMLBatchProcessor.Output.MARKDOWN))
+        .process(IntStream.range(0, 3).mapToObj(i -> new MessageMLBatchProcessor.Message(
+            "<messageML><i>" + i + "</i></messageML>", null, null)), results::add);
+
+    assertEquals("Result count", 3, results.size());
+    assertEquals("Markdown", "_1_", results.get(1).getMarkdown());
+    assertNull("PresentationML", results.get(1).getPresentationML());
+    assertNull("Text", results.get(1).getText());
+    assertNull("EntityJSON", results.get(1).getEntityJson());
+    assertNull("BI items", results.get(1).getBiItems());
+  }
+
+  @Test
+  public void testProcessWithInvalidMessage() throws Exception {
+    List<MessageMLBatchProcessor.Result> results = new ArrayList<>();
+    MessageMLBatchProcessor.Metrics metrics = new MessageMLBatchProcessor(new NoOpDataProvider(),
+        EnumSet.of(MessageMLBatchProcessor.Output.PRESENTATIONML)).process(IntStream.range(0, 3)
+        .mapToObj(i -> new MessageMLBatchProcessor.Message(i == 1 ? "<messageML><invalid/></messageML>"
+            : "<messageML>Message " + i + "</messageML>", null, null)), results::add);
+
+    assertEquals("Result count", 3, results.size());
+    assertTrue("First message processed", results.get(0).isSuccessful());
+    assertFalse("Second message failed", results.get(1).isSuccessful());
+    assertEquals("Error", InvalidInputException.class, results.get(1).getError().getClass());
+    assertNull("No PresentationML", results.get(1).getPresentationML());
+    assertEquals("Third message processed", "<div data-format=\"PresentationML\" data-version=\"2.0\">Message 2</div>",
+        results.get(2).getPresentationML());
+    assertEquals("Message count", 3, metrics.getMessageCount());
+    assertEquals("Error count", 1, metrics.getErrorCount());
+  }
+}
@@ -3,9 +3,12 @@ package org.finos.symphony.messageml.messagemlutils;
 import org.apache.commons.io.IOUtils;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.infra.Blackhole;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
 import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingException;
@@ -14,6 +17,13 @@ import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MessageMLContextBenchmark {
 
@@ -21,14 +31,44 @@ public class MessageMLContextBenchmark {
   public static class MessageContent {
     public String messageML;
     public String entityJson;
+    public String presentationML;
+    public String presentationEntityJson;
 
     @Setup(Level.Trial)
-    public void doSetup() throws IOException {
+    public void doSetup() throws IOException, InvalidInputException, ProcessingException {
       FileInputStream messageFile =
           new FileInputStream("src/test/resources/payloads/complex_message_with_styles.messageml");
       messageML = IOUtils.toString(messageFile, StandardCharsets.UTF_8);
       FileInputStream entityFile = new FileInputStream("src/test/resources/payloads/complex_message_with_styles.json");
       entityJson = IOUtils.toString(entityFile, StandardCharsets.UTF_8);
+
+      // PresentationML received from other pods is mostly made of nested divs
+      MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+      messageMLContext.parseMessageML(messageML, entityJson, null);
+      presentationML = messageMLContext.getPresentationML();
+      presentationEntityJson = messageMLContext.getEntityJson().toString();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class FormContent {
+    private static final int FIELDS = 500;
+
+    public String presentationML;
+
+    @Setup(Level.Trial)
+    public void doSetup() throws IOException, InvalidInputException, ProcessingException {
+      // form.xml-style form where each field has a label and a tooltip, split in PresentationML
+      StringBuilder messageML = new StringBuilder("<messageML><form id=\"form\">");
+      for (int i = 0; i < FIELDS; i++) {
+        messageML.append("<text-field name=\"field").append(i).append("\" label=\"Field ").append(i)
+            .append("\" title=\"Tooltip of field ").append(i).append("\" placeholder=\"Value\"/>");
+      }
+      messageML.append("<button name=\"submit\" type=\"action\">Submit</button></form></messageML>");
+
+      MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+      messageMLContext.parseMessageML(messageML.toString(), null, null);
+      presentationML = messageMLContext.getPresentationML();
     }
   }
 
@@ -42,6 +82,18 @@ public class MessageMLContextBenchmark {
     bh.consume(messageMLContext.getPresentationML());
   }
 
+  @Benchmark
+  public void parseSimpleMessageMLWithoutFastPath(Blackhole bh)
+      throws InvalidInputException, ProcessingException, IOException {
+    MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+    messageMLContext.setPlainTextFastPathEnabled(false);
+    messageMLContext.parseMessageML("<messageML>Hello</messageML>", "", null);
+
+    // those calls are usually made by the agent when sending a message
+    bh.consume(messageMLContext.getText());
+    bh.consume(messageMLContext.getPresentationML());
+  }
+
   @Benchmark
   public void parseComplexMessageMLWithEntities(MessageContent messageContent, Blackhole bh)
       throws InvalidInputException, ProcessingException, IOException {
@@ -52,4 +104,147 @@ public class MessageMLContextBenchmark {
     bh.consume(messageMLContext.getText());
     bh.consume(messageMLContext.getPresentationML());
   }
+
+  @Benchmark
+  public void parseComplexMessageMLWithAllOutputs(MessageContent messageContent, Blackhole bh)
+      throws InvalidInputException, ProcessingException, IOException {
+    MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+    messageMLContext.setOutputs(EnumSet.allOf(MessageMLContext.Output.class));
+    messageMLContext.parseMessageML(messageContent.messageML, messageContent.entityJson, null);
+
+    // the outputs are built in a single traversal of the tree, when the message is parsed
+    bh.consume(messageMLContext.getText());
+    bh.consume(messageMLContext.getPresentationML());
+  }
+
+  @State(Scope.Thread)
+  public static class TableContent {
+    private static final int ROWS = 500;
+
+    public String messageML;
+
+    @Setup(Level.Trial)
+    public void doSetup() {
+      StringBuilder table = new StringBuilder("<messageML><table>");
+      for (int i = 0; i < ROWS; i++) {
+        table.append("<tr><td>").append(i).append("</td><td class=\"cell\"><b>bold</b></td>")
+            .append("<td style=\"color:red\">red</td><td>text<br/>text</td></tr>");
+      }
+      messageML = table.append("</table></messageML>").toString();
+    }
+  }
+
+  /**
+   * Run with the GC profiler (-prof gc) to get the bytes allocated per table. The bytes retained by its document tree
+   * are measured by {@link MemoryFootprint}.
+   */
+  @Benchmark
+  public void parseLargeTable(TableContent tableContent, Blackhole bh)
+      throws InvalidInputException, ProcessingException, IOException {
+    MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+    messageMLContext.parseMessageML(tableContent.messageML, null, null);
+
+    bh.consume(messageMLContext.getMessageML());
+  }
+
+  @State(Scope.Thread)
+  public static class ReusedContext {
+    public MessageMLContext context;
+    public MessageMLContext pooledContext;
+
+    @Setup(Level.Trial)
+    public void doSetup() {
+      context = new MessageMLContext(new NoOpDataProvider());
+      pooledContext = new MessageMLContext(new NoOpDataProvider());
+      pooledContext.setStoragePoolEnabled(true);
+    }
+  }
+
+  /**
+   * Baseline of {@link #parseComplexMessageMLWithStoragePool}, compare the allocations per operation with -prof gc.
+   */
+  @Benchmark
+  public void parseComplexMessageMLReusingContext(MessageContent messageContent, ReusedContext reusedContext,
+      Blackhole bh) throws InvalidInputException, ProcessingException, IOException {
+    reusedContext.context.parseMessageML(messageContent.messageML, messageContent.entityJson, null);
+
+    bh.consume(reusedContext.context.getPresentationML());
+  }
+
+  @Benchmark
+  public void parseComplexMessageMLWithStoragePool(MessageContent messageContent, ReusedContext reusedContext,
+      Blackhole bh) throws InvalidInputException, ProcessingException, IOException {
+    reusedContext.pooledContext.parseMessageML(messageContent.messageML, messageContent.entityJson, null);
+
+    bh.consume(reusedContext.pooledContext.getPresentationML());
+  }
+
+  @State(Scope.Benchmark)
+  public static class ConcurrentParses {
+    private static final int PARSES = 1_000;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    public ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void doSetup() throws ReflectiveOperationException {
+      if ("virtual".equals(threads)) {
+        // virtual threads are only available from Java 21, this project still builds for Java 8
+        executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      } else {
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void doTearDown() {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Parses a batch of simple messages concurrently on platform or virtual threads, all of them sharing the pool of
+   * document builders. Run with the GC profiler (-prof gc) to compare the allocations per batch, the peak heap of 10k
+   * concurrent parses is printed by {@link MemoryFootprint}.
+   */
+  @Benchmark
+  @OperationsPerInvocation(ConcurrentParses.PARSES)
+  public void parseConcurrently(ConcurrentParses concurrentParses, Blackhole bh) throws Exception {
+    Callable<String> parse = () -> {
+      MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+      messageMLContext.parseMessageML("<messageML>Hello <b>world</b></messageML>", null, null);
+      return messageMLContext.getPresentationML();
+    };
+
+    List<Future<String>> results = new ArrayList<>(ConcurrentParses.PARSES);
+    for (int i = 0; i < ConcurrentParses.PARSES; i++) {
+      results.add(concurrentParses.executor.submit(parse));
+    }
+    for (Future<String> result : results) {
+      bh.consume(result.get());
+    }
+  }
+
+  @Benchmark
+  public void parsePresentationMLRoundTrip(MessageContent messageContent, Blackhole bh)
+      throws InvalidInputException, ProcessingException, IOException {
+    MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+    messageMLContext.parseMessageML(messageContent.presentationML, messageContent.presentationEntityJson, null);
+
+    bh.consume(messageMLContext.getPresentationML());
+  }
+
+  /**
+   * Run with the GC profiler (-prof gc) to get the allocation rate of the reassembly of labels and tooltips.
+   */
+  @Benchmark
+  public void parsePresentationMLFormWithLabelledFields(FormContent formContent, Blackhole bh)
+      throws InvalidInputException, ProcessingException, IOException {
+    MessageMLContext messageMLContext = new MessageMLContext(new NoOpDataProvider());
+    messageMLContext.parseMessageML(formContent.presentationML, null, null);
+
+    bh.consume(messageMLContext.getMessageML());
+  }
 }
@@ -19,6 +19,8 @@ package org.finos.symphony.messageml.messagemlutils;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.anyLong;
@@ -48,7 +50,9 @@ import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
 import org.finos.symphony.messageml.messagemlutils.elements.TextNode;
 import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
 import org.finos.symphony.messageml.messagemlutils.exceptions.ProcessingException;
+import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownRenderer;
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
+import org.finos.symphony.messageml.messagemlutils.util.PresentationMLSigner;
 import org.finos.symphony.messageml.messagemlutils.util.UserPresentation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
@@ -56,10 +60,13 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -958,6 +965,22 @@ public class MessageMLContextTest {
     assertEquals("Markdown", expectedMarkdown, context.getMarkdown());
   }
 
+  @Test
+  public void testParseMarkdownUnsortedEntities() throws Exception {
+    String message = "Hello #one and #two";
+    JsonNode entities = MAPPER.readTree("{\"hashtags\": ["
+        + "{\"id\": \"#two\", \"indexStart\": 15, \"indexEnd\": 19, \"type\": \"KEYWORD\"},"
+        + "{\"id\": \"#one\", \"indexStart\": 6, \"indexEnd\": 10, \"type\": \"KEYWORD\"}"
+        + "]}");
+
+    context.parseMarkdown(message, entities, null);
+
+    assertEquals("Generated PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">Hello "
+            + "<span class=\"entity\" data-entity-id=\"keyword1\">#one</span> and "
+            + "<span class=\"entity\" data-entity-id=\"keyword2\">#two</span></div>",
+        context.getPresentationML());
+  }
+
   @Test
   public void testParseMarkdownMissingEntityId() throws Exception {
     String message = "Hello #world";
@@ -1112,6 +1135,19 @@ public class MessageMLContextTest {
     assertEquals("value", context.getEntityJson().get("key").asText());
   }
 
+  @Test
+  public void testParserEntityJsonCompletedWithEntities() throws Exception {
+    String message = "<messageML>Hello <hash tag=\"world\"/>!</messageML>";
+    MessageMLParser parser = new MessageMLParser(dataProvider);
+
+    parser.parse(message, "{\"key\":\"value\"}", MessageML.MESSAGEML_VERSION);
+
+    context.parseMessageML(message, "{\"key\":\"value\"}", MessageML.MESSAGEML_VERSION);
+    assertEquals("EntityJSON", context.getEntityJson(), parser.getEntityJson());
+    assertEquals("value", parser.getEntityJson().get("key").asText());
+    assertEquals("world", parser.getEntityJson().get("keyword1").get("id").get(0).get("value").asText());
+  }
+
   @Test
   public void testFailOnMismatchedEntities() throws Exception {
     String message = "<messageML><div class=\"entity\" data-entity-id=\"obj123\">This will fail</div></messageML>";
@@ -1206,6 +1242,32 @@ public class MessageMLContextTest {
     assertEquals("Message as text, trim whitespace", "foo bar baz qux", context.getText(false));
   }
 
+  @Test
+  public void testOutputsBuiltOnParse() throws Exception {
+    String message = getPayload("payloads/templated_message_all_tags.messageml");
+    String data = getPayload("payloads/templated_message_all_tags.json");
+    MessageMLContext lazyContext = new MessageMLContext(dataProvider);
+    lazyContext.setOutputs(EnumSet.noneOf(MessageMLContext.Output.class));
+    context.setOutputs(EnumSet.allOf(MessageMLContext.Output.class));
+
+    context.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+    lazyContext.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+    assertSameOutputs(message, lazyContext, context);
+  }
+
+  @Test
+  public void testTextOutput() throws Exception {
+    String message = "<messageML><span>\nfoo</span>bar<span>\n</span> baz<span>qux\n</span></messageML>";
+    context.setOutputs(EnumSet.of(MessageMLContext.Output.TEXT));
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+
+    assertEquals("Message as text", " foobar  bazqux ", context.getText());
+    assertEquals("Message as text, preserve whitespace", " foo bar    baz qux ", context.getText(true));
+    assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\"><span> foo</span>bar"
+        + "<span> </span> baz<span>qux </span></div>", context.getPresentationML());
+    assertEquals("Message as text", " foobar  bazqux ", context.getText());
+  }
+
   @Test
   public void testEscapeReservedCharsFromMessageML() throws Exception {
     String messageML = "½ ¼ ¾ [ ] \\ ; ' , . / ~ ! @ # $ % - = ^ &amp; * ( ) _ + { } | : \" &lt; &gt; ? "
@@ -1340,6 +1402,281 @@ public class MessageMLContextTest {
     // nothing should be thrown
   }
 
+  @Test
+  public void testRenderCache() throws Exception {
+    final String message = getPayload("payloads/templated_message_all_tags.messageml");
+    final String data = getPayload("payloads/templated_message_all_tags.json");
+    final String expectedPresentationML = getPayload("payloads/expanded_single_jira_ticket.presentationml");
+
+    context.setRenderCacheEnabled(true);
+    context.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+
+    String presentationML = context.getPresentationML();
+    assertEquals("PresentationML", prettyPrintXml(expectedPresentationML), prettyPrintXml(presentationML));
+    assertSame("Unchanged tree is not rendered again", presentationML, context.getPresentationML());
+  }
+
+  @Test
+  public void testRenderCacheAfterUpdate() throws Exception {
+    final String message = "<messageML><p>Hello <b>world</b></p><p>Second</p></messageML>";
+
+    context.setRenderCacheEnabled(true);
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+    assertEquals("<div data-format=\"PresentationML\" data-version=\"2.0\"><p>Hello <b>world</b></p><p>Second</p></div>",
+        context.getPresentationML());
+
+    TextNode second = (TextNode) context.getMessageML().getChild(1).getChild(0);
+    second.setText("Changed");
+    assertEquals("<div data-format=\"PresentationML\" data-version=\"2.0\"><p>Hello <b>world</b></p><p>Changed</p></div>",
+        context.getPresentationML());
+
+    context.getMessageML().getChild(0).addChild(new TextNode(context.getMessageML().getChild(0), "!"));
+    assertEquals("<div data-format=\"PresentationML\" data-version=\"2.0\"><p>Hello <b>world</b>!</p><p>Changed</p></div>",
+        context.getPresentationML());
+  }
+
+  @Test
+  public void testRenderCacheWithGeneratedIds() throws Exception {
+    final String message = "<messageML><form id=\"form_id\"><text-field name=\"name\" label=\"Name\"/>"
+        + "<button name=\"submit\">Submit</button></form></messageML>";
+
+    context.setRenderCacheEnabled(true);
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+
+    String first = context.getPresentationML();
+    assertTrue(first.contains("<label for=\"textfield-"));
+    assertSame("Unchanged tree is not rendered again", first, context.getPresentationML());
+
+    context.getMessageML().getChild(0).invalidateRenderCache();
+    String second = context.getPresentationML();
+    assertNotSame("Changed tree is rendered again", first, second);
+    assertFalse("Generated ids are not cached", first.equals(second));
+  }
+
+  @Test
+  public void testDeeplyNestedMessage() throws Exception {
+    final int depth = 1000;
+    final String message = "<messageML>" + StringUtils.repeat("<span>", depth) + "Hello <b>world</b>!"
+        + StringUtils.repeat("</span>", depth) + "</messageML>";
+
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+
+    assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + StringUtils.repeat("<span>", depth) + "Hello <b>world</b>!" + StringUtils.repeat("</span>", depth)
+        + "</div>", context.getPresentationML());
+    assertEquals("Text", "Hello world!", context.getMessageML().asText());
+    assertEquals("Markdown", "Hello **world**!", context.getMarkdown());
+  }
+
+  @Test
+  public void testMaxNestingDepth() throws Exception {
+    final String message = "<messageML><p><span><b>Hello</b></span></p></messageML>";
+    context.setLimits(MessageMLLimits.NONE.withMaxDepth(2));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the message exceeds the maximum nesting depth of 2 elements");
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMarkdownRenderedWithoutDocumentTree() throws Exception {
+    final String message = "<messageML>"
+        + "<p>Hello <b>world</b> <a href=\"https://symphony.com\">link</a> <hash tag=\"tag\"/></p>"
+        + "<table><tr><td>1</td><td>2</td></tr><tr><td>3</td><td><b>4</b></td></tr></table>"
+        + "<ul><li>one<ol><li>two</li><li>three</li></ol></li><li>four</li></ul>"
+        + "<pre>line 1\nline_2</pre><code>code <i>block</i></code><hr/>"
+        + "<form id=\"form-id\"><select name=\"select\"><option value=\"o\">Option</option></select>"
+        + "<button name=\"submit\" type=\"action\">Submit</button>"
+        + "<dialog id=\"dialog-id\"><title>title</title><body>body</body></dialog></form>"
+        + "</messageML>";
+
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+    MarkdownRenderer treeRenderer = new MarkdownRenderer(context.getMessageML().asMarkdown());
+
+    assertEquals("Markdown", treeRenderer.getText(), context.getMarkdown());
+    assertEquals("Legacy entities", MAPPER.writeValueAsString(treeRenderer.getJson()),
+        MAPPER.writeValueAsString(context.getEntities()));
+  }
+
+  @Test
+  public void testWriteEntities() throws Exception {
+    final String message = getPayload("payloads/templated_message_all_tags.messageml");
+    final String data = getPayload("payloads/templated_message_all_tags.json");
+    final JsonNode expectedEntities = MAPPER.readTree(getPayload("payloads/expanded_single_jira_ticket.entities"));
+
+    context.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    context.writeEntities(out);
+
+    assertEquals("Legacy entities", MAPPER.writeValueAsString(expectedEntities),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals("Legacy entities", MAPPER.writeValueAsString(context.getEntities()),
+        new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testPlainTextFastPath() throws Exception {
+    final String[] messages = {"<messageML>Hello world</messageML>",
+        "<messageML>a > b\n\tc \"d\" 'e' _f_ *g* -h- $ { } #</messageML>", "<messageML></messageML>",
+        "<messageML> </messageML>"};
+    MessageMLContext fullContext = new MessageMLContext(dataProvider);
+    fullContext.setPlainTextFastPathEnabled(false);
+
+    for (String message : messages) {
+      assertTrue(message, MessageScan.of(message).isPlainText());
+      context.parseMessageML(message, null, null);
+      fullContext.parseMessageML(message, null, null);
+      assertSameOutputs(message, fullContext, context);
+    }
+
+    for (String markdown : new String[] {"Hello world!", "Price: 5 $ (approx.) #1 ~ | = \" '"}) {
+      context.parseMarkdown(markdown, null, null);
+      fullContext.parseMarkdown(markdown, null, null);
+      assertSameOutputs(markdown, fullContext, context);
+    }
+  }
+
+  @Test
+  public void testPlainTextFastPathWithLargeText() throws Exception {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      text.append("line ").append(i).append(" > \"quoted\"\n\n");
+    }
+    String message = "<messageML>" + text + "</messageML>";
+    MessageMLContext fullContext = new MessageMLContext(dataProvider);
+    fullContext.setPlainTextFastPathEnabled(false);
+
+    context.parseMessageML(message, null, null);
+    fullContext.parseMessageML(message, null, null);
+    assertSameOutputs(message, fullContext, context);
+    assertEquals("Text", text.toString().replaceAll("\\s+", " "), context.getText());
+  }
+
+  @Test
+  public void testPresentationMLEntityWithNestedEntityJson() throws Exception {
+    String presentationML = "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + "<span class=\"entity\" data-entity-id=\"mention1\">@User</span></div>";
+    String entityJson = "{\"other\":{\"type\":\"com.symphony.test\",\"mention1\":{\"nested\":true}},"
+        + "\"mention1\":{\"type\":\"com.symphony.user.mention\",\"version\":\"1.0\","
+        + "\"id\":[{\"type\":\"com.symphony.user.userId\",\"value\":\"123456789\"}]}}";
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("Duplicate \"data-entity-id\"=\"mention1\" in entityJSON");
+    context.parseMessageML(presentationML, entityJson, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testPlainTextFastPathNotApplicable() {
+    final String[] messages = {"<messageML>a &amp; b</messageML>", "<messageML>${entity}</messageML>",
+        "<messageML>#{entity}</messageML>", "<messageML><b>bold</b></messageML>", "<messageML>a]]>b</messageML>",
+        "<messageML>a\rb</messageML>", "<messageML data-x=\"1\">a</messageML>", "<div>a</div>",
+        " <messageML>a</messageML>"};
+    for (String message : messages) {
+      assertFalse(message, MessageScan.of(message).isPlainText());
+    }
+  }
+
+  @Test
+  public void testSignedPresentationMLRoundTrip() throws Exception {
+    final String message = "<messageML>Hello <mention uid=\"123456789\"/> <hash tag=\"tag\"/>"
+        + "<card><header>Header</header><body><b>Body</b></body></card></messageML>";
+    final PresentationMLSigner signer = new PresentationMLSigner("key".getBytes(StandardCharsets.UTF_8));
+    context.setPresentationMLSigner(signer);
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+    final String presentationML = context.getPresentationML();
+    final String entityJson = context.getEntityJson().toString();
+    assertTrue("Signature", presentationML.contains(" data-signature=\""));
+
+    MessageMLContext receiver = new MessageMLContext(dataProvider);
+    receiver.setPresentationMLSigner(new PresentationMLSigner("key".getBytes(StandardCharsets.UTF_8)));
+    receiver.parseMessageML(presentationML, entityJson, MessageML.MESSAGEML_VERSION);
+    assertTrue("Trusted", receiver.isTrustedPresentationML());
+    assertEquals("PresentationML", presentationML, receiver.getPresentationML());
+    assertEquals("Markdown", context.getMarkdown(), receiver.getMarkdown());
+
+    MessageMLContext other = new MessageMLContext(dataProvider);
+    other.setPresentationMLSigner(new PresentationMLSigner("other".getBytes(StandardCharsets.UTF_8)));
+    other.parseMessageML(presentationML, entityJson, MessageML.MESSAGEML_VERSION);
+    assertFalse("Trusted with another key", other.isTrustedPresentationML());
+
+    MessageMLContext unsigned = new MessageMLContext(dataProvider);
+    unsigned.parseMessageML(presentationML, entityJson, MessageML.MESSAGEML_VERSION);
+    assertFalse("Trusted without signer", unsigned.isTrustedPresentationML());
+    assertFalse("Signature", unsigned.getPresentationML().contains(" data-signature=\""));
+  }
+
+  @Test
+  public void testSignedPresentationMLCoversRootAndEntityJson() throws Exception {
+    final String message = "<messageML>Hello <span class=\"entity\" data-entity-id=\"entity\">entity</span>"
+        + "</messageML>";
+    final String entityJson = "{\"entity\":{\"type\":\"com.symphony.test\",\"value\":1}}";
+    final PresentationMLSigner signer = new PresentationMLSigner("key".getBytes(StandardCharsets.UTF_8));
+    context.setPresentationMLSigner(signer);
+    context.parseMessageML(message, entityJson, MessageML.MESSAGEML_VERSION);
+    final String presentationML = context.getPresentationML();
+
+    MessageMLContext receiver = new MessageMLContext(dataProvider);
+    receiver.setPresentationMLSigner(signer);
+    receiver.parseMessageML(presentationML, entityJson, MessageML.MESSAGEML_VERSION);
+    assertTrue("Trusted", receiver.isTrustedPresentationML());
+
+    receiver.parseMessageML(presentationML, entityJson.replace("1", "2"), MessageML.MESSAGEML_VERSION);
+    assertFalse("Trusted with modified EntityJSON", receiver.isTrustedPresentationML());
+
+    receiver.parseMessageML(presentationML.replace("data-version=\"2.0\"", "data-version=\"2.1\""), entityJson,
+        MessageML.MESSAGEML_VERSION);
+    assertFalse("Trusted with modified root attributes", receiver.isTrustedPresentationML());
+  }
+
+  @Test
+  public void testParseMessageMLWithStoragePool() throws Exception {
+    final String message = getPayload("payloads/complex_message_with_styles.messageml");
+    final String data = getPayload("payloads/complex_message_with_styles.json");
+    context.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+    final String expectedPresentationML = context.getPresentationML();
+    final String expectedMarkdown = context.getMarkdown();
+
+    MessageMLContext pooledContext = new MessageMLContext(dataProvider);
+    pooledContext.setStoragePoolEnabled(true);
+    for (int i = 0; i < 3; i++) {
+      pooledContext.parseMessageML(message, data, MessageML.MESSAGEML_VERSION);
+      assertEquals("PresentationML", expectedPresentationML, pooledContext.getPresentationML());
+      assertEquals("Markdown", expectedMarkdown, pooledContext.getMarkdown());
+
+      pooledContext.parseMessageML("<messageML><p class=\"a\">Small <b>message</b></p></messageML>", null,
+          MessageML.MESSAGEML_VERSION);
+      assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+          + "<p class=\"a\">Small <b>message</b></p></div>", pooledContext.getPresentationML());
+    }
+  }
+
+  @Test
+  public void testParseMessageMLWithStoragePoolReleasesPreviousTree() throws Exception {
+    MessageMLContext pooledContext = new MessageMLContext(dataProvider);
+    pooledContext.setStoragePoolEnabled(true);
+    pooledContext.parseMessageML("<messageML>First <b>message</b></messageML>", null, MessageML.MESSAGEML_VERSION);
+    final MessageML first = pooledContext.getMessageML();
+    assertEquals("Text", "First message", first.asText());
+
+    pooledContext.parseMessageML("<messageML><i>Second</i></messageML>", null, MessageML.MESSAGEML_VERSION);
+    assertEquals("Text", "Second", pooledContext.getMessageML().asText());
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("released by the storage pool of its parser");
+    first.getChildren();
+  }
+
+  @Test
+  public void testSignedPresentationMLModified() throws Exception {
+    context.setPresentationMLSigner(new PresentationMLSigner("key".getBytes(StandardCharsets.UTF_8)));
+    context.parseMessageML("<messageML><p>Hello</p></messageML>", null, MessageML.MESSAGEML_VERSION);
+    final String presentationML = context.getPresentationML().replace("<p>Hello</p>", "<p><li>Hello</li></p>");
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("Element \"li\" can only be a child of the following elements: [orderedlist, bulletlist]");
+    context.parseMessageML(presentationML, null, MessageML.MESSAGEML_VERSION);
+  }
+
   @Test
   public void testParseRichTextArea() throws Exception{
     final String message = "<messageML>\n"
@@ -1355,6 +1692,17 @@ public class MessageMLContextTest {
     System.out.printf(PML);
   }
 
+  private void assertSameOutputs(String message, MessageMLContext expected, MessageMLContext actual) throws Exception {
+    assertEquals(message, expected.getPresentationML(), actual.getPresentationML());
+    assertEquals(message, expected.getText(), actual.getText());
+    assertEquals(message, expected.getMarkdown(), actual.getMarkdown());
+    assertEquals(message, MAPPER.writeValueAsString(expected.getEntityJson()),
+        MAPPER.writeValueAsString(actual.getEntityJson()));
+    assertEquals(message, MAPPER.writeValueAsString(expected.getEntities()),
+        MAPPER.writeValueAsString(actual.getEntities()));
+    assertEquals(message, expected.getBiContext().getItems(), actual.getBiContext().getItems());
+  }
+
   private String getPayload(String filename) throws IOException {
     ClassLoader classLoader = getClass().getClassLoader();
     try (Scanner scanner = new Scanner(classLoader.getResourceAsStream(filename))) {
@@ -0,0 +1,126 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.finos.symphony.messageml.messagemlutils.elements.Checkbox;
+import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.finos.symphony.messageml.messagemlutils.util.NoOpDataProvider;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class MessageMLLimitsTest {
+  private static final String MESSAGE =
+      "<messageML><p class=\"a=b\" style='color: red'>Hello <b>world</b><br/></p></messageML>";
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private final MessageMLContext context = new MessageMLContext(new NoOpDataProvider());
+
+  @Test
+  public void testMessageWithinLimits() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxMessageBytes(MESSAGE.length()).withMaxElements(4).withMaxDepth(2)
+        .withMaxAttributesPerElement(2));
+
+    context.parseMessageML(MESSAGE, null, MessageML.MESSAGEML_VERSION);
+    assertEquals("Max elements", 4, context.getLimits().getMaxElements());
+    assertEquals("Text", "Hello world", context.getText());
+  }
+
+  @Test
+  public void testOnlyElementsCounted() throws Exception {
+    String message = "<messageML><p class=\"a=b\">a=b &lt;i a=b&gt;<br/><br/></p></messageML>";
+    context.setLimits(MessageMLLimits.NONE.withMaxElements(4).withMaxDepth(2).withMaxAttributesPerElement(1));
+
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+    assertEquals("Text", "a=b <i a=b>", context.getText());
+  }
+
+  @Test
+  public void testPresentationMLWrappersNotCounted() throws Exception {
+    String message = "<div data-format=\"PresentationML\" data-version=\"2.0\"><form id=\"form-id\">"
+        + "<div class=\"checkbox-group\"><input type=\"checkbox\" name=\"check\" value=\"on\"/>"
+        + "<label>Check</label></div><button type=\"action\" name=\"send\">Send</button></form></div>";
+    context.setLimits(MessageMLLimits.NONE.withMaxElements(4).withMaxDepth(2));
+
+    context.parseMessageML(message, null, MessageML.MESSAGEML_VERSION);
+    assertEquals("Checkbox", Checkbox.class, context.getMessageML().getChild(0).getChild(0).getClass());
+  }
+
+  @Test
+  public void testDocumentTypeRejected() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxElements(1));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("DOCTYPE is disallowed");
+    context.parseMessageML("<!DOCTYPE messageML><messageML>Hello</messageML>", null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxMessageBytes() throws Exception {
+    assertFalse("ASCII", MessageMLLimits.exceedsBytes("abc", 3));
+    assertTrue("Accents", MessageMLLimits.exceedsBytes("abé", 3));
+    assertFalse("Emoji", MessageMLLimits.exceedsBytes("😀", 4));
+    context.setLimits(MessageMLLimits.NONE.withMaxMessageBytes(MESSAGE.length() - 1));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the message exceeds the maximum size of " + (MESSAGE.length() - 1) + " bytes");
+    context.parseMessageML(MESSAGE, null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxElements() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxElements(3));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the message exceeds the maximum number of 3 elements");
+    context.parseMessageML(MESSAGE, null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxDepth() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxDepth(1));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the message exceeds the maximum nesting depth of 1 elements");
+    context.parseMessageML(MESSAGE, null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxAttributesPerElement() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxAttributesPerElement(1));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("an element exceeds the maximum number of 1 attributes");
+    context.parseMessageML(MESSAGE, null, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxEntities() throws Exception {
+    String entityJson = "{\"a\":{\"type\":\"com.symphony.test\"},\"b\":{\"type\":\"com.symphony.test\"}}";
+    context.setLimits(MessageMLLimits.NONE.withMaxEntities(1));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the EntityJSON exceeds the maximum number of 1 entities");
+    context.parseMessageML(MESSAGE, entityJson, MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testMaxEntityJsonBytes() throws Exception {
+    context.setLimits(MessageMLLimits.NONE.withMaxEntityJsonBytes(10));
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("the EntityJSON exceeds the maximum size of 10 bytes");
+    context.parseMessageML(MESSAGE, "{\"a\":{\"b\":\"c\"}}", MessageML.MESSAGEML_VERSION);
+  }
+
+  @Test
+  public void testInvalidLimit() {
+    expectedException.expect(IllegalArgumentException.class);
+    MessageMLLimits.NONE.withMaxElements(0);
+  }
+}
@@ -0,0 +1,50 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MessageScanTest {
+
+  @Test
+  public void testPlainMessage() {
+    MessageScan scan = MessageScan.of("<messageML>a\n\tb\r <b data-x=\"$ { # @\">c</b> data-entity</messageML>");
+    assertFalse("Control characters", scan.hasControlCharacters());
+    assertFalse("Freemarker tags", scan.hasFreemarkerTags());
+    assertFalse("Entity ids", scan.hasEntityIds());
+  }
+
+  @Test
+  public void testControlCharacters() {
+    assertTrue("Control characters", MessageScan.of("<messageML>a\u0001b</messageML>").hasControlCharacters());
+  }
+
+  @Test
+  public void testFreemarkerTags() {
+    for (String tag : new String[] {"<#list>", "<@macro/>", "${entity.id}", "#{entity.id}"}) {
+      assertTrue(tag, MessageScan.of("<messageML>" + tag + "</messageML>").hasFreemarkerTags());
+    }
+  }
+
+  @Test
+  public void testEntityIds() {
+    assertTrue("Entity ids",
+        MessageScan.of("<messageML><div class=\"entity\" data-entity-id=\"a\"/></messageML>").hasEntityIds());
+  }
+
+  @Test
+  public void testBytes() {
+    assertEquals("ASCII", 3, MessageScan.of("abc").getBytes());
+    assertEquals("Accents", 4, MessageScan.of("abé").getBytes());
+    assertEquals("Emoji", 4, MessageScan.of("😀").getBytes());
+  }
+
+  @Test
+  public void testRootStartTagEnd() {
+    String startTag = "<div data-format=\"PresentationML\" data-x=\"a>b\">";
+    assertEquals("Start tag", startTag.length(), MessageScan.of(startTag + "<b>c</b></div>").getRootStartTagEnd());
+    assertEquals("No start tag", -1, MessageScan.of("<div data-x=\"a>b\"").getRootStartTagEnd());
+  }
+}
@@ -15,6 +15,8 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.finos.symphony.messageml.messagemlutils.elements.MessageML;
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
 import org.finos.symphony.messageml.messagemlutils.util.TestDataProvider;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
 import org.xmlunit.builder.Input;
 import org.xmlunit.diff.Comparison;
 import org.xmlunit.diff.ComparisonResult;
@@ -79,6 +81,30 @@ public class Mml2Pml2Pml {
     diff.compare(Input.fromString(pml1).build(), Input.fromString(pml2).build());
   }
 
+  /**
+   * The text captured while rendering the PresentationML, as returned by {@link MessageMLContext#getText()}, must be
+   * the same as the text content of its DOM tree.
+   */
+  @ParameterizedTest(name = "File {0}")
+  @MethodSource("examples")
+  void textContentMatchesDom(String file, String message, String entityJson) throws Exception {
+    MessageMLContext context = parse(message, entityJson);
+    Element document = new MessageMLParser(createDataProvider()).parseDocument(context.getPresentationML());
+
+    StringBuilder childNodes = new StringBuilder();
+    NodeList nodes = document.getChildNodes();
+    for (int i = 0; i < nodes.getLength(); i++) {
+      String text = nodes.item(i).getTextContent();
+      // child nodes are separated by a space, as done by getText(boolean)
+      if (i > 0 && !text.isEmpty()) {
+        childNodes.append(' ');
+      }
+      childNodes.append(text);
+    }
+    assertEquals(document.getTextContent(), context.getText());
+    assertEquals(childNodes.toString(), context.getText(true));
+  }
+
   /**
    * For some elements, the id attribute is prefixed with a random value. We want to fail only for other differences.
    */
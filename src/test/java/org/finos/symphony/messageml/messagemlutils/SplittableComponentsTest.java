@@ -0,0 +1,51 @@
+package org.finos.symphony.messageml.messagemlutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.finos.symphony.messageml.messagemlutils.SplittableComponents.Slot;
+import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SplittableComponentsTest {
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void testLabelsAndTooltipsOfManyElements() throws Exception {
+    SplittableComponents components = new SplittableComponents();
+    for (int i = 0; i < 500; i++) {
+      components.create("field" + i, Slot.LABEL, "Label " + i);
+      components.create("field" + i, Slot.TOOLTIP, null);
+      components.addAttribute("field" + i, Slot.TOOLTIP, "title", "Tooltip " + i);
+    }
+
+    for (int i = 0; i < 500; i++) {
+      Map<String, String> attributes = new LinkedHashMap<>();
+      components.fillAttributes("field" + i, attributes);
+      assertEquals("Attributes", "{title=Tooltip " + i + ", label=Label " + i + "}", attributes.toString());
+      assertTrue("Label", components.contains("field" + i, Slot.LABEL));
+    }
+
+    Map<String, String> attributes = new LinkedHashMap<>();
+    components.fillAttributes("other", attributes);
+    assertTrue("No attributes", attributes.isEmpty());
+    assertFalse("No label", components.contains("other", Slot.LABEL));
+  }
+
+  @Test
+  public void testDuplicateLabel() throws Exception {
+    SplittableComponents components = new SplittableComponents();
+    components.create("field", Slot.LABEL, "Label");
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("Invalid MessageML content, multiple splittable elements with the same id created");
+    components.create("field", Slot.LABEL, "Other label");
+  }
+}
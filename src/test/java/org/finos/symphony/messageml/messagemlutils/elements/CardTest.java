@@ -83,6 +83,30 @@ public class CardTest extends ElementTest {
     verifyCard(card);
   }
 
+  @Test
+  public void testCardByPresentationMLWithSeveralClasses() throws Exception {
+    String input = "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + "<div class=\"cardBody label\tcard\">"
+        + "<div class=\"cardHeader\">Hello</div>"
+        + "<div class=\"cardBody\">world!</div>"
+        + "</div>"
+        + "</div>";
+
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    Element card = context.getMessageML().getChildren().get(0);
+
+    assertEquals("Element class", Card.class, card.getClass());
+    assertEquals("Remaining classes", "cardBody label", card.getAttribute("class"));
+    assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+            + "<div class=\"card cardBody label\">"
+            + "<div class=\"cardHeader\">Hello</div>"
+            + "<div class=\"cardBody\">world!</div>"
+            + "</div>"
+            + "</div>",
+        context.getPresentationML());
+  }
+
   @Test
   public void testCardInvalidAttr() throws Exception {
     String invalidAttr = "<messageML><card title=\"label\">"
@@ -30,6 +30,24 @@ public class CodeTest extends ElementTest {
     assertEquals("Entities", new ObjectNode(JsonNodeFactory.instance), context.getEntities());
   }
 
+  @Test
+  public void testLargeCode() throws Exception {
+    StringBuilder code = new StringBuilder();
+    StringBuilder escapedCode = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      code.append("if (a < b && c > d) {\n  log(\"").append(i).append("\");\n}\n");
+      escapedCode.append("if (a &lt; b &amp;&amp; c &gt; d) {\n  log(&quot;").append(i).append("&quot;);\n}\n");
+    }
+    String input = "<messageML><code>" + escapedCode + "</code></messageML>";
+    String expectedPresentationML = "<div data-format=\"PresentationML\" data-version=\"2.0\">"
+        + "<code>" + escapedCode + "</code></div>";
+
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    assertEquals("PresentationML", expectedPresentationML, context.getPresentationML());
+    assertEquals("Text", code.toString(), context.getText());
+  }
+
   @Test
   public void testCodeWithEmbeddedMarkdown() throws Exception {
     String input = "<messageML><code>_Hello_ **world!**</code></messageML>";
@@ -0,0 +1,36 @@
+package org.finos.symphony.messageml.messagemlutils.elements;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class ElementStoragePoolTest {
+  private final ElementStoragePool pool = new ElementStoragePool();
+
+  @Test
+  public void testStorageReused() {
+    List<Element> list = pool.newList();
+    list.add(null);
+    String[] array = pool.copyOf(new String[] {"a", "b"}, 2, 4);
+
+    pool.reset();
+    assertSame("List", list, pool.newList());
+    assertSame("Array", array, pool.copyOf(new String[2], 2, 4));
+  }
+
+  @Test
+  public void testLargeStorageNotKept() {
+    List<Element> list = pool.newList();
+    for (int i = 0; i < 100; i++) {
+      list.add(null);
+    }
+    String[] array = pool.copyOf(new String[128], 128, 256);
+
+    pool.reset();
+    assertNotSame("List", list, pool.newList());
+    assertNotSame("Array", array, pool.copyOf(new String[128], 128, 256));
+  }
+}
@@ -36,7 +36,9 @@ import org.finos.symphony.messageml.messagemlutils.exceptions.InvalidInputExcept
 import org.finos.symphony.messageml.messagemlutils.util.IDataProvider;
 import org.finos.symphony.messageml.messagemlutils.util.TestDataProvider;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.stream.Collectors;
 
 /**
  * Base class for unit tests of MessageML elements. Sets up fields used across all other tests and verifies general cases.
@@ -95,6 +97,66 @@ public class ElementTest {
     assertEquals("Legacy entities", new ObjectNode(JsonNodeFactory.instance), context.getEntities());
   }
 
+  @Test
+  public void testFindElements() throws Exception {
+    String input = "<messageML><div class=\"outer\"><p>Hello <b>world</b></p><div class=\"inner\"><b>!</b></div></div>"
+        + "<b>Bye</b></messageML>";
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    Element messageML = context.getMessageML();
+    Element outer = messageML.getChildren().get(0);
+    Element bye = messageML.getChildren().get(1);
+
+    assertEquals("Bold count", 3, messageML.findElements(Bold.class).size());
+    assertEquals("Div count", Integer.valueOf(2), messageML.countChildrenOfType(Div.class));
+    assertEquals("Outer div in document order", Arrays.asList("world", "!"),
+        outer.findElements(Bold.class).stream().map(Element::asText).collect(Collectors.toList()));
+    assertEquals("Inner div", 1, outer.findElements("class", "inner").size());
+    assertEquals("Inner div from bold", 0, bye.findElements("class", "inner").size());
+
+    bye.setAttribute(Element.CLASS_ATTR, "inner");
+    assertEquals("Updated attribute", Arrays.asList(outer.getChildren().get(1), bye),
+        messageML.findElements("class", "inner"));
+  }
+
+  @Test
+  public void testFindElementsAfterAttributesChange() throws Exception {
+    String input = "<messageML><div class=\"outer\"><b>Hello</b></div><b>Bye</b></messageML>";
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    Element messageML = context.getMessageML();
+    Element outer = messageML.getChildren().get(0);
+    Element bye = messageML.getChildren().get(1);
+
+    bye.getAttributes().put(Element.CLASS_ATTR, "outer");
+    assertEquals("Attribute put", Arrays.asList(outer, bye), messageML.findElements("class", "outer"));
+
+    outer.getAttributes().remove(Element.CLASS_ATTR);
+    assertEquals("Attribute removed", Collections.singletonList(bye), messageML.findElements("class", "outer"));
+
+    bye.getAttributes().put(Element.CLASS_ATTR, null);
+    assertEquals("Attribute set to null", Collections.emptyList(), messageML.findElements("class", "outer"));
+
+    outer.getAttributes().put(Element.ID_ATTR, "first");
+    outer.getAttributes().entrySet().iterator().next().setValue("second");
+    assertEquals("Id replaced", Collections.emptyList(), messageML.findElements(Element.ID_ATTR, "first"));
+    assertEquals("Id set through entry", Collections.singletonList(outer),
+        messageML.findElements(Element.ID_ATTR, "second"));
+
+    outer.getAttributes().clear();
+    assertEquals("Attributes cleared", Collections.emptyList(), messageML.findElements(Element.ID_ATTR, "second"));
+  }
+
+  @Test
+  public void testGetChildrenOfTypeOrder() throws Exception {
+    String input = "<messageML><div><p>Hello <b>world</b></p><div><b>!</b></div></div><b>Bye</b></messageML>";
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    // the last children are visited first, as they always were
+    assertEquals("Bold elements", Arrays.asList("Bye", "!", "world"), context.getMessageML()
+        .getChildrenOfType(Bold.class).stream().map(Element::asText).collect(Collectors.toList()));
+  }
+
   @Test
   public void testMessageMLInvalidAttr() throws Exception {
     String invalidAttr = "<messageML class=\"label\"></messageML>";
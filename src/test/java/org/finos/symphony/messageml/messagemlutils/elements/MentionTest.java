@@ -227,10 +227,13 @@ public class MentionTest extends ElementTest {
     String invalidAttr = "<messageML>Hello <mention email=\"invalid@email.com\" strict=\"false\">"
         + "Bot User01</mention>!</messageML>";
     context.parseMessageML(invalidAttr, null, MessageML.MESSAGEML_VERSION);
+    int revision = context.getMessageML().getRevision();
 
     assertEquals("PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">"
             + "Hello <a href=\"mailto:invalid@email.com\">Bot User01</a>!</div>",
         context.getPresentationML());
+    assertEquals("Revision", revision, context.getMessageML().getRevision());
+    assertTrue("Links", context.getMessageML().findElements(Link.class).isEmpty());
     assertEquals("EntityJSON", new ObjectNode(JsonNodeFactory.instance), context.getEntityJson());
     assertEquals("Markdown", "Hello invalid@email.com!", context.getMarkdown());
     assertEquals("Legacy entities", new ObjectNode(JsonNodeFactory.instance), context.getEntities());
@@ -170,6 +170,32 @@ public class TableTest extends ElementTest {
         context.getMarkdown());
   }
 
+  @Test
+  public void testParseMarkdownTableCellsVerbatim() throws Exception {
+    ObjectNode media = new ObjectNode(JsonNodeFactory.instance);
+    ObjectNode content = new ObjectNode(JsonNodeFactory.instance);
+    content.put("index", 6);
+    content.put("type", "excel-rcp");
+
+    ArrayNode text = new ArrayNode(JsonNodeFactory.instance);
+    ArrayNode r1 = new ArrayNode(JsonNodeFactory.instance);
+    r1.add("*A1*");
+    r1.add("_B1_");
+    ArrayNode r2 = new ArrayNode(JsonNodeFactory.instance);
+    r2.add("A2");
+    r2.add("");
+    text.add(r1);
+    text.add(r2);
+    content.set("text", text);
+    media.set("content", content);
+
+    context.parseMarkdown("Table:", new ObjectNode(JsonNodeFactory.instance), media);
+
+    assertEquals("Generated PresentationML", "<div data-format=\"PresentationML\" data-version=\"2.0\">Table:"
+            + "<table><tr><td>*A1*</td><td>_B1_</td></tr><tr><td>A2</td><td></td></tr></table></div>",
+        context.getPresentationML());
+  }
+
   @Test
   public void testTableInvalidAttr() throws Exception {
     String invalidAttr = "<messageML><table title=\"label\">"
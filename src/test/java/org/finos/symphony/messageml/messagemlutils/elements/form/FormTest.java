@@ -40,6 +40,43 @@ public class FormTest extends ElementTest {
     }
   }
 
+  @Test
+  public void testActionButtonNestedInTable() throws Exception {
+    String input = "<messageML><form id=\"form-id\"><table><tr><td><div>"
+        + "<button name=\"submit\" type=\"action\">Submit</button>"
+        + "</div></td></tr></table></form></messageML>";
+
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    Element form = context.getMessageML().getChildren().get(0);
+    assertEquals("Button count", 1, form.findElements(Button.class).size());
+  }
+
+  @Test
+  public void testCountsAfterChildRemoved() throws Exception {
+    String input = "<messageML><form id=\"form-id\"><div><checkbox name=\"a\">A</checkbox></div>"
+        + "<checkbox name=\"b\">B</checkbox><button name=\"submit\" type=\"action\">Submit</button></form></messageML>";
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+
+    Element form = context.getMessageML().getChild(0);
+    assertEquals("Checkboxes", 2, (int) form.countChildrenOfType(Checkbox.class));
+    Element div = form.getChild(0);
+    div.getChildren().remove(0);
+    div.invalidateRenderCache();
+
+    assertEquals("Checkboxes after removal", 1, (int) form.countChildrenOfType(Checkbox.class));
+    assertEquals("Checkboxes in message", 1, (int) context.getMessageML().countChildrenOfType(Checkbox.class));
+  }
+
+  @Test
+  public void testFormWithoutActionButton() throws Exception {
+    String input = "<messageML><form id=\"form-id\"><div><button type=\"reset\">Reset</button></div></form></messageML>";
+
+    expectedException.expect(InvalidInputException.class);
+    expectedException.expectMessage("The form with id 'form-id' should have at least one action button");
+    context.parseMessageML(input, null, MessageML.MESSAGEML_VERSION);
+  }
+
   @Test
   public void testFormWithoutId() throws Exception {
     String input = "<messageML><form></form></messageML>";
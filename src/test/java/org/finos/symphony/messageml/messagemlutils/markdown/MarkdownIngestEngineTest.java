@@ -0,0 +1,57 @@
+package org.finos.symphony.messageml.messagemlutils.markdown;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.commonmark.node.Document;
+import org.finos.symphony.messageml.messagemlutils.MessageMLContext;
+import org.finos.symphony.messageml.messagemlutils.markdown.MarkdownIngestEngine.Variant;
+import org.finos.symphony.messageml.messagemlutils.util.TestDataProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class MarkdownIngestEngineTest {
+
+  @ParameterizedTest
+  @CsvSource({
+      "Hello world, INLINE_ONLY",
+      "_italic_ and **bold**, INLINE_ONLY",
+      "**bold** first, INLINE_ONLY",
+      "a - b + c > d, INLINE_ONLY",
+      "- item, STANDARD",
+      "  * item, STANDARD",
+      "1. item, STANDARD",
+      "> quote, STANDARD",
+      "```code```, STANDARD",
+      "---, STANDARD",
+      "_ _ _, STANDARD"
+  })
+  void testSelectVariant(String markdown, Variant expected) {
+    assertEquals(expected, MarkdownIngestEngine.selectVariant(markdown));
+    assertEquals(expected, MarkdownIngestEngine.selectVariant("text\n" + markdown));
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+      "Hello world",
+      "_Some text in italic with `code formatting`_",
+      "Hello **world**!",
+      "a - b + c > d"
+  })
+  void testInlineOnlyVariantParsesLikeStandard(String markdown) {
+    MarkdownIngestEngine engine = MarkdownIngestEngine.getInstance();
+    String standard = new MarkdownRenderer((Document) engine.parse(markdown, Variant.STANDARD)).getText();
+    String inlineOnly = new MarkdownRenderer((Document) engine.parse(markdown, Variant.INLINE_ONLY)).getText();
+
+    assertEquals(standard, inlineOnly);
+  }
+
+  @Test
+  void testParseMarkdown() throws Exception {
+    MessageMLContext context = new MessageMLContext(new TestDataProvider());
+    context.parseMarkdown("Hello world", null, null);
+
+    assertEquals("<div data-format=\"PresentationML\" data-version=\"2.0\">Hello world</div>",
+        context.getPresentationML());
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2017 MessageML - Symphony LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.finos.symphony.messageml.messagemlutils.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TextContentTest {
+
+  @Test
+  public void testTextCaptured() {
+    XmlPrintStream out = newCompactStream();
+    out.captureTextContent(1);
+    out.openElement("div", Collections.emptyMap());
+    out.printlnEscaped("Hello <", 0, 7, true);
+    out.openElement("b", Collections.emptyMap());
+    out.printText("world");
+    out.closeElement();
+    out.printlnEscaped(" & ", 0, 3, true);
+    out.printElement("span", "@bot", Collections.singletonMap("class", "entity"));
+    out.printlnEscaped("\r\n", 0, 2, false);
+    out.printElement("br");
+    out.closeElement();
+
+    assertEquals("Hello <world & @bot\n", out.getTextContent().getText());
+    assertEquals(Arrays.asList("Hello <", "world", " & ", "@bot", "\n", ""), out.getTextContent().getNodeTexts());
+  }
+
+  @Test
+  public void testAdjacentTextMerged() {
+    XmlPrintStream out = newCompactStream();
+    out.captureTextContent(1);
+    out.openElement("div", Collections.emptyMap());
+    out.printlnEscaped("a\n\nb", 0, 4, true);
+    out.printText("c");
+    out.closeElement();
+
+    assertEquals("a bc", out.getTextContent().getText());
+    assertEquals(Collections.singletonList("a bc"), out.getTextContent().getNodeTexts());
+  }
+
+  @Test
+  public void testFragmentNodesKept() {
+    XmlPrintStream fragment = newCompactStream();
+    fragment.captureTextContent(0);
+    fragment.printText("b");
+    fragment.printElement("i", "c", Collections.emptyMap());
+
+    XmlPrintStream out = newCompactStream();
+    out.captureTextContent(1);
+    out.openElement("div", Collections.emptyMap());
+    out.printText("a");
+    out.printFragment("b<i>c</i>", fragment.getTextContent());
+    out.closeElement();
+
+    assertEquals("abc", out.getTextContent().getText());
+    assertEquals(Arrays.asList("ab", "c"), out.getTextContent().getNodeTexts());
+  }
+
+  @Test
+  public void testTextNotCaptured() {
+    XmlPrintStream out = newCompactStream();
+    out.printText("a");
+    assertNull(out.getTextContent());
+  }
+
+  private static XmlPrintStream newCompactStream() {
+    XmlPrintStream out = new XmlPrintStream(new ByteArrayOutputStream());
+    out.setNoIndent(true);
+    out.setNoNl(true);
+    return out;
+  }
+}